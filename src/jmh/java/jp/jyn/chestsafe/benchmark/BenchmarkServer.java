@@ -0,0 +1,357 @@
+package jp.jyn.chestsafe.benchmark;
+
+import jp.jyn.chestsafe.ChestSafe;
+import net.md_5.bungee.api.ChatMessageType;
+import net.md_5.bungee.api.chat.BaseComponent;
+import org.bukkit.Bukkit;
+import org.bukkit.GameMode;
+import org.bukkit.Location;
+import org.bukkit.Material;
+import org.bukkit.Server;
+import org.bukkit.World;
+import org.bukkit.block.Block;
+import org.bukkit.block.BlockFace;
+import org.bukkit.block.data.type.Chest;
+import org.bukkit.entity.Player;
+import org.bukkit.inventory.Inventory;
+import org.bukkit.plugin.PluginDescriptionFile;
+import org.bukkit.plugin.PluginManager;
+import org.bukkit.plugin.java.JavaPluginLoader;
+import org.bukkit.scheduler.BukkitScheduler;
+import org.bukkit.scheduler.BukkitTask;
+
+import java.io.File;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.Collections;
+import java.util.List;
+import java.util.Queue;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ForkJoinPool;
+import java.util.logging.Logger;
+
+/**
+ * <p>Minimal Bukkit environment for benchmarks.</p>
+ * <p>Server, World and Block are dynamic proxies, only the methods used by ChestSafe return meaningful values.
+ * Synchronous tasks are queued and run by {@link #tick()} on the calling thread (= main thread),
+ * asynchronous tasks are run in the common pool.</p>
+ * <p>Blocks of the world are given by {@link Terrain}, everything is air by default.</p>
+ */
+public final class BenchmarkServer {
+    public final static String WORLD = "world";
+    private final static UUID WORLD_UUID = new UUID(0, 1);
+
+    private static World world = null;
+    private static volatile Terrain terrain = (x, y, z) -> block(Material.AIR, x, y, z);
+
+    private final static Queue<Runnable> tasks = new ConcurrentLinkedQueue<>();
+    private final static List<Runnable> timers = new CopyOnWriteArrayList<>();
+    // The default implementation throws UnsupportedOperationException.
+    private final static Player.Spigot SPIGOT = new Player.Spigot() {
+        @Override
+        public void sendMessage(BaseComponent component) {
+        }
+
+        @Override
+        public void sendMessage(BaseComponent... components) {
+        }
+
+        @Override
+        public void sendMessage(UUID sender, BaseComponent component) {
+        }
+
+        @Override
+        public void sendMessage(UUID sender, BaseComponent... components) {
+        }
+
+        @Override
+        public void sendMessage(ChatMessageType position, BaseComponent component) {
+        }
+
+        @Override
+        public void sendMessage(ChatMessageType position, BaseComponent... components) {
+        }
+
+        @Override
+        public void sendMessage(ChatMessageType position, UUID sender, BaseComponent component) {
+        }
+
+        @Override
+        public void sendMessage(ChatMessageType position, UUID sender, BaseComponent... components) {
+        }
+    };
+
+    @FunctionalInterface
+    public interface Terrain {
+        Block getBlockAt(int x, int y, int z);
+    }
+
+    private BenchmarkServer() {
+    }
+
+    /**
+     * Install server and plugin instance. (only the first call)
+     *
+     * @return world
+     */
+    public static synchronized World init() {
+        if (world != null) {
+            return world;
+        }
+
+        Logger logger = Logger.getLogger("ChestSafe");
+        world = proxy(World.class, (proxy, method, args) -> {
+            switch (method.getName()) {
+                case "getName":
+                    return WORLD;
+                case "getUID":
+                    return WORLD_UUID;
+                case "getMaxHeight":
+                    return 256;
+                case "getBlockAt":
+                    if (args.length == 1) {
+                        Location l = (Location) args[0];
+                        return terrain.getBlockAt(l.getBlockX(), l.getBlockY(), l.getBlockZ());
+                    }
+                    return terrain.getBlockAt((int) args[0], (int) args[1], (int) args[2]);
+                default:
+                    return defaultValue(proxy, method, args);
+            }
+        });
+        PluginManager pluginManager = proxy(PluginManager.class, BenchmarkServer::defaultValue);
+        BukkitScheduler scheduler = proxy(BukkitScheduler.class, (proxy, method, args) -> {
+            if (args == null || args.length < 2 || !(args[1] instanceof Runnable)) {
+                return defaultValue(proxy, method, args);
+            }
+
+            Runnable runnable = (Runnable) args[1];
+            switch (method.getName()) {
+                case "runTask":
+                    tasks.add(runnable);
+                    return task(() -> tasks.remove(runnable));
+                case "runTaskTimer":
+                    timers.add(runnable);
+                    return task(() -> timers.remove(runnable));
+                case "runTaskAsynchronously":
+                    ForkJoinPool.commonPool().execute(runnable);
+                    return task(() -> { });
+                default:
+                    return defaultValue(proxy, method, args);
+            }
+        });
+
+        Bukkit.setServer(proxy(Server.class, (proxy, method, args) -> {
+            switch (method.getName()) {
+                case "getLogger":
+                    return logger;
+                case "getName":
+                case "getVersion":
+                case "getBukkitVersion":
+                    return "Benchmark";
+                case "getWorlds":
+                    return Collections.singletonList(world);
+                case "getOnlinePlayers":
+                    return Collections.emptyList();
+                case "getWorld":
+                    return WORLD.equals(args[0]) || WORLD_UUID.equals(args[0]) ? world : null;
+                case "getPluginManager":
+                    return pluginManager;
+                case "getScheduler":
+                    return scheduler;
+                case "isPrimaryThread":
+                    return true;
+                default:
+                    return defaultValue(proxy, method, args);
+            }
+        }));
+
+        // Initialization constructor of JavaPlugin, it sets ChestSafe.getInstance().
+        File dataFolder = new File("target", "benchmark");
+        //noinspection ResultOfMethodCallIgnored
+        dataFolder.mkdirs();
+        PluginDescriptionFile description = new PluginDescriptionFile("ChestSafe", "benchmark", ChestSafe.class.getName());
+        @SuppressWarnings("deprecation")
+        JavaPluginLoader loader = new JavaPluginLoader(Bukkit.getServer());
+        new ChestSafe(loader, description, dataFolder, new File(dataFolder, "ChestSafe.jar")) {
+        };
+        return world;
+    }
+
+    /**
+     * Run one server tick on the calling thread. (queued tasks, then repeating tasks)
+     */
+    public static void tick() {
+        Runnable task;
+        while ((task = tasks.poll()) != null) {
+            task.run();
+        }
+        for (Runnable timer : timers) {
+            timer.run();
+        }
+    }
+
+    /**
+     * Set blocks of the world.
+     *
+     * @param terrain terrain, or null to fill with air.
+     */
+    public static void setTerrain(Terrain terrain) {
+        BenchmarkServer.terrain = terrain != null ? terrain : (x, y, z) -> block(Material.AIR, x, y, z);
+    }
+
+    /**
+     * Create player without any permissions, messages sent to the player are discarded.
+     *
+     * @param name name
+     * @param uuid uuid
+     * @return player
+     */
+    public static Player player(String name, UUID uuid) {
+        return proxy(Player.class, (proxy, method, args) -> {
+            switch (method.getName()) {
+                case "getName":
+                    return name;
+                case "getUniqueId":
+                    return uuid;
+                case "getGameMode":
+                    return GameMode.SURVIVAL;
+                case "getWorld":
+                    return world;
+                case "getLocale":
+                    return "en_us";
+                case "spigot":
+                    return SPIGOT;
+                default:
+                    return defaultValue(proxy, method, args);
+            }
+        });
+    }
+
+    /**
+     * Create inventory of the block. (e.g. chest, hopper)
+     *
+     * @param block block
+     * @return inventory
+     */
+    public static Inventory inventory(Block block) {
+        return proxy(Inventory.class, (proxy, method, args) -> {
+            if (method.getName().equals("getLocation")) {
+                return block.getLocation();
+            }
+            return defaultValue(proxy, method, args);
+        });
+    }
+
+    public static Block block(Material type, int x, int y, int z) {
+        return block(type, null, x, y, z);
+    }
+
+    /**
+     * Create chest block.
+     *
+     * @param type   single or the side of double chest
+     * @param facing facing
+     * @param x      x
+     * @param y      y
+     * @param z      z
+     * @return chest
+     */
+    public static Block chest(Chest.Type type, BlockFace facing, int x, int y, int z) {
+        Chest data = proxy(Chest.class, (proxy, method, args) -> {
+            switch (method.getName()) {
+                case "getType":
+                    return type;
+                case "getFacing":
+                    return facing;
+                case "getMaterial":
+                    return Material.CHEST;
+                default:
+                    return defaultValue(proxy, method, args);
+            }
+        });
+        return block(Material.CHEST, data, x, y, z);
+    }
+
+    private static Block block(Material type, Object data, int x, int y, int z) {
+        return proxy(Block.class, (proxy, method, args) -> {
+            switch (method.getName()) {
+                case "getType":
+                    return type;
+                case "getBlockData":
+                    return data;
+                case "getX":
+                    return x;
+                case "getY":
+                    return y;
+                case "getZ":
+                    return z;
+                case "getWorld":
+                    return world;
+                case "getLocation":
+                    if (args == null) {
+                        return new Location(world, x, y, z);
+                    }
+                    break;
+                case "getRelative":
+                    if (args.length == 1 && args[0] instanceof BlockFace) {
+                        BlockFace face = (BlockFace) args[0];
+                        return terrain.getBlockAt(x + face.getModX(), y + face.getModY(), z + face.getModZ());
+                    }
+                    break;
+                case "toString":
+                    return "Block{" + type + "," + x + "," + y + "," + z + "}";
+            }
+            return defaultValue(proxy, method, args);
+        });
+    }
+
+    private static BukkitTask task(Runnable cancel) {
+        return proxy(BukkitTask.class, (proxy, method, args) -> {
+            if (method.getName().equals("cancel")) {
+                cancel.run();
+                return null;
+            }
+            return defaultValue(proxy, method, args);
+        });
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T> T proxy(Class<T> clazz, InvocationHandler handler) {
+        return (T) Proxy.newProxyInstance(BenchmarkServer.class.getClassLoader(), new Class<?>[]{clazz}, handler);
+    }
+
+    private static Object defaultValue(Object proxy, Method method, Object[] args) {
+        switch (method.getName()) {
+            case "equals":
+                return proxy == args[0];
+            case "hashCode":
+                return System.identityHashCode(proxy);
+            case "toString":
+                return method.getDeclaringClass().getSimpleName() + "@" + Integer.toHexString(System.identityHashCode(proxy));
+        }
+
+        Class<?> type = method.getReturnType();
+        if (type == boolean.class) {
+            return false;
+        } else if (type == int.class) {
+            return 0;
+        } else if (type == long.class) {
+            return 0L;
+        } else if (type == double.class) {
+            return 0d;
+        } else if (type == float.class) {
+            return 0f;
+        } else if (type == short.class) {
+            return (short) 0;
+        } else if (type == byte.class) {
+            return (byte) 0;
+        } else if (type == char.class) {
+            return '\0';
+        }
+        return null;
+    }
+
+}
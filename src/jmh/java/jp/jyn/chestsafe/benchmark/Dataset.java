@@ -0,0 +1,178 @@
+package jp.jyn.chestsafe.benchmark;
+
+import com.zaxxer.hikari.HikariConfig;
+import com.zaxxer.hikari.HikariDataSource;
+import jp.jyn.chestsafe.db.driver.IDDriver;
+import jp.jyn.chestsafe.db.driver.IDDriver.IntLocation;
+import jp.jyn.chestsafe.db.driver.ProtectionDriver;
+import jp.jyn.chestsafe.db.driver.ProtectionDriver.NewProtection;
+import jp.jyn.chestsafe.db.driver.sqlite.IDSqlite;
+import jp.jyn.chestsafe.db.driver.sqlite.ProtectionSqlite;
+import jp.jyn.chestsafe.protection.Protection;
+import jp.jyn.chestsafe.util.metrics.Metrics;
+import org.bukkit.Location;
+import org.bukkit.World;
+import org.bukkit.block.Block;
+import org.bukkit.block.BlockFace;
+import org.bukkit.block.data.type.Chest;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.UUID;
+import java.util.logging.Logger;
+import java.util.stream.Stream;
+
+/**
+ * <p>Database filled with protections for benchmarks.</p>
+ * <p>Protection i is a single chest at {@link #location(int)}, on a grid spaced 2 blocks apart. (never a double chest)
+ * Every 4th protection has a member, every 8th has a flag.</p>
+ */
+public final class Dataset implements Closeable {
+    public enum Database {
+        SQLITE
+    }
+
+    public final static int Y = 64;
+    private final static int BATCH = 10000;
+
+    public final Metrics metrics = new Metrics();
+    public final HikariDataSource hikari;
+    public final IDDriver idDriver;
+    public final ProtectionDriver protectionDriver;
+    public final World world;
+    public final int size;
+    public final int worldId;
+    public final int owner;
+    /**
+     * id of protection i.
+     */
+    public final int[] ids;
+
+    private final Path directory;
+    private final int side;
+
+    private Dataset(Database database, int size) throws IOException {
+        this.world = BenchmarkServer.init();
+        this.size = size;
+        this.side = (int) Math.ceil(Math.sqrt(size));
+        this.directory = Files.createTempDirectory("chestsafe-benchmark");
+
+        HikariConfig config = new HikariConfig();
+        config.setPoolName("chestsafe-benchmark");
+        config.setAutoCommit(true);
+        switch (database) {
+            case SQLITE:
+                config.setJdbcUrl("jdbc:sqlite:" + directory.resolve("chestsafe.db"));
+                config.setConnectionInitSql("PRAGMA `foreign_keys`=`ON`");
+                hikari = new HikariDataSource(config);
+                idDriver = new IDSqlite(hikari, metrics);
+                protectionDriver = new ProtectionSqlite(hikari, metrics);
+                break;
+            default:
+                throw new IllegalArgumentException(database.name());
+        }
+
+        worldId = idDriver.worldToId(world.getName());
+        owner = idDriver.UUIDToId(new UUID(1, 1));
+        ids = new int[size];
+        fill();
+    }
+
+    /**
+     * Create database with protections.
+     *
+     * @param database database
+     * @param size     number of protections
+     * @return dataset
+     */
+    public static Dataset create(Database database, int size) {
+        try {
+            return new Dataset(database, size);
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    private void fill() {
+        long start = System.nanoTime();
+        int member = idDriver.UUIDToId(new UUID(1, 2));
+        int[] members = {member};
+        int flags = Protection.Flag.HOPPER.set(0, true);
+
+        for (int offset = 0; offset < size; offset += BATCH) {
+            int end = Math.min(size, offset + BATCH);
+            List<IntLocation> locations = new ArrayList<>(end - offset);
+            for (int i = offset; i < end; i++) {
+                locations.add(intLocation(i));
+            }
+
+            int[] added = idDriver.addAll(locations);
+            List<NewProtection> protections = new ArrayList<>(added.length);
+            for (int i = 0; i < added.length; i++) {
+                int index = offset + i;
+                ids[index] = added[i];
+                protections.add(new NewProtection(
+                    added[i], owner, Protection.Type.PRIVATE.id,
+                    index % 4 == 0 ? members : new int[0],
+                    index % 8 == 0 ? flags : 0,
+                    0
+                ));
+            }
+            protectionDriver.addAll(protections);
+        }
+
+        Logger.getLogger("ChestSafe").info(String.format("Dataset: %d protections in %d ms",
+            size, (System.nanoTime() - start) / 1000_000));
+    }
+
+    public int x(int i) {
+        return (i % side) * 2;
+    }
+
+    public int z(int i) {
+        return (i / side) * 2;
+    }
+
+    /**
+     * Get the protection at the coordinates.
+     *
+     * @param x x
+     * @param z z
+     * @return index of the protection, or -1 if there is no protection. (y is always {@link #Y})
+     */
+    public int index(int x, int z) {
+        if (x < 0 || z < 0 || (x & 1) != 0 || (z & 1) != 0 || x / 2 >= side) {
+            return -1;
+        }
+        int i = (z / 2) * side + x / 2;
+        return i < size ? i : -1;
+    }
+
+    public Location location(int i) {
+        return new Location(world, x(i), Y, z(i));
+    }
+
+    public IntLocation intLocation(int i) {
+        return new IntLocation(worldId, x(i), Y, z(i));
+    }
+
+    public Block block(int i) {
+        return BenchmarkServer.chest(Chest.Type.SINGLE, BlockFace.NORTH, x(i), Y, z(i));
+    }
+
+    @Override
+    public void close() {
+        hikari.close();
+        try (Stream<Path> files = Files.walk(directory)) {
+            files.sorted(Comparator.reverseOrder()).map(Path::toFile).forEach(File::delete);
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+}
@@ -0,0 +1,56 @@
+package jp.jyn.chestsafe.benchmark;
+
+import jp.jyn.chestsafe.protection.Protection;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Add a protection (id_protection and protection_info) to the database that already has protections.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+public class DriverBenchmark {
+    @Param({"SQLITE"})
+    public Dataset.Database database;
+    @Param({"100000", "1000000"})
+    public int protections;
+
+    private Dataset dataset;
+    private int next;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        dataset = Dataset.create(database, protections);
+        // New protections are placed after the dataset.
+        next = protections;
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        dataset.close();
+    }
+
+    @Benchmark
+    public int add() {
+        int id = dataset.idDriver.add(dataset.intLocation(next++));
+        dataset.protectionDriver.add(id, dataset.owner, Protection.Type.PRIVATE.id, new int[0], 0, 0);
+        return id;
+    }
+}
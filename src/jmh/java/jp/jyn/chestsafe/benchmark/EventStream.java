@@ -0,0 +1,228 @@
+package jp.jyn.chestsafe.benchmark;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.SplittableRandom;
+
+/**
+ * <p>Sequence of events replayed against the listeners.</p>
+ * <p>Recorded stream is a text file, one event per line: <code>kind actor x y z</code>.
+ * Blank lines and lines starting with # are ignored.</p>
+ * <ul>
+ * <li>kind: interact, break, place, push (hopper to chest), pull (chest to hopper), explode</li>
+ * <li>actor: owner, member, stranger (ignored by push, pull and explode)</li>
+ * <li>x y z: target chest (explode: center of 3x3x3 blocks)</li>
+ * </ul>
+ * <p>Hoppers are at y+1 (push) and y-1 (pull) of the chest.</p>
+ */
+public final class EventStream {
+    public enum Kind {
+        INTERACT, BREAK, PLACE, PUSH, PULL, EXPLODE
+    }
+
+    public enum Actor {
+        OWNER, MEMBER, STRANGER
+    }
+
+    public enum Scenario {
+        /**
+         * Right click random chests. (mostly strangers)
+         */
+        INTERACT,
+        /**
+         * Strangers try to break random chests.
+         */
+        BREAK,
+        /**
+         * Mass chest placement, then break them all.
+         */
+        PLACE,
+        /**
+         * Hoppers push into / pull from a fixed set of chests.
+         */
+        HOPPER,
+        /**
+         * Explosions around random chests.
+         */
+        EXPLOSION,
+        /**
+         * Mix of the above.
+         */
+        MIXED
+    }
+
+    private final static int HOPPERS = 4096;
+    private final static int PLACE_BATCH = 1024;
+    private final static int PLACE_WIDTH = 64;
+
+    public final static class Event {
+        public final Kind kind;
+        public final Actor actor;
+        public final int x, y, z;
+
+        public Event(Kind kind, Actor actor, int x, int y, int z) {
+            this.kind = kind;
+            this.actor = actor;
+            this.x = x;
+            this.y = y;
+            this.z = z;
+        }
+    }
+
+    private final List<Event> events;
+
+    private EventStream(List<Event> events) {
+        if (events.isEmpty()) {
+            throw new IllegalArgumentException("Empty event stream");
+        }
+        this.events = Collections.unmodifiableList(events);
+    }
+
+    public List<Event> getEvents() {
+        return events;
+    }
+
+    /**
+     * Is it a cell of the placement area? (chests placed by {@link Scenario#PLACE}, outside of the dataset)
+     *
+     * @param x x
+     * @param z z
+     * @return result
+     */
+    public static boolean isPlacement(int x, int z) {
+        return z < 0 && x >= 0 && x < PLACE_WIDTH * 2 && (x & 1) == 0 && (z & 1) == 0;
+    }
+
+    /**
+     * Generate synthetic stream.
+     *
+     * @param scenario scenario
+     * @param dataset  dataset (target of events)
+     * @param length   approximate number of events
+     * @param seed     random seed
+     * @return stream
+     */
+    public static EventStream synthetic(Scenario scenario, Dataset dataset, int length, long seed) {
+        SplittableRandom random = new SplittableRandom(seed);
+        List<Event> events = new ArrayList<>(length + PLACE_BATCH * 2);
+        int placed = 0;
+        while (events.size() < length) {
+            switch (scenario) {
+                case INTERACT:
+                    interact(events, dataset, random);
+                    break;
+                case BREAK:
+                    events.add(event(Kind.BREAK, Actor.STRANGER, dataset, random.nextInt(dataset.size)));
+                    break;
+                case PLACE:
+                    place(events, 0, PLACE_BATCH);
+                    break;
+                case HOPPER:
+                    hopper(events, dataset, random);
+                    break;
+                case EXPLOSION:
+                    explode(events, dataset, random);
+                    break;
+                case MIXED:
+                    int r = random.nextInt(100);
+                    if (r < 50) {
+                        hopper(events, dataset, random);
+                    } else if (r < 80) {
+                        interact(events, dataset, random);
+                    } else if (r < 90) {
+                        events.add(event(Kind.BREAK, Actor.STRANGER, dataset, random.nextInt(dataset.size)));
+                    } else if (r < 95) {
+                        place(events, placed, 1);
+                        placed = (placed + 1) % PLACE_BATCH;
+                    } else {
+                        explode(events, dataset, random);
+                    }
+                    break;
+                default:
+                    throw new IllegalArgumentException(scenario.name());
+            }
+        }
+        return new EventStream(events);
+    }
+
+    private static Event event(Kind kind, Actor actor, Dataset dataset, int i) {
+        return new Event(kind, actor, dataset.x(i), Dataset.Y, dataset.z(i));
+    }
+
+    private static void interact(List<Event> events, Dataset dataset, SplittableRandom random) {
+        int i = random.nextInt(dataset.size);
+        int r = random.nextInt(10);
+        Actor actor;
+        if (r < 7) {
+            actor = Actor.STRANGER;
+        } else if (r < 9 || i % 4 != 0) { // only every 4th protection has a member.
+            actor = Actor.OWNER;
+        } else {
+            actor = Actor.MEMBER;
+        }
+        events.add(event(Kind.INTERACT, actor, dataset, i));
+    }
+
+    private static void hopper(List<Event> events, Dataset dataset, SplittableRandom random) {
+        // Hoppers keep transferring at the same place, the same chests are hit again and again.
+        int i = random.nextInt(Math.min(HOPPERS, dataset.size));
+        events.add(event(random.nextBoolean() ? Kind.PUSH : Kind.PULL, Actor.STRANGER, dataset, i));
+    }
+
+    private static void explode(List<Event> events, Dataset dataset, SplittableRandom random) {
+        int i = random.nextInt(dataset.size);
+        // 3x3x3 blocks contains up to 4 chests.
+        events.add(new Event(Kind.EXPLODE, Actor.STRANGER, dataset.x(i) + 1, Dataset.Y, dataset.z(i) + 1));
+    }
+
+    private static void place(List<Event> events, int offset, int count) {
+        // place and break, the number of protections does not change when the stream is repeated.
+        for (int k = offset; k < offset + count; k++) {
+            events.add(new Event(Kind.PLACE, Actor.OWNER, (k % PLACE_WIDTH) * 2, Dataset.Y, -2 - (k / PLACE_WIDTH) * 2));
+        }
+        for (int k = offset; k < offset + count; k++) {
+            events.add(new Event(Kind.BREAK, Actor.OWNER, (k % PLACE_WIDTH) * 2, Dataset.Y, -2 - (k / PLACE_WIDTH) * 2));
+        }
+    }
+
+    /**
+     * Load recorded stream.
+     *
+     * @param file file
+     * @return stream
+     */
+    public static EventStream load(Path file) {
+        List<Event> events = new ArrayList<>();
+        try (BufferedReader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            String line;
+            int number = 0;
+            while ((line = reader.readLine()) != null) {
+                number += 1;
+                line = line.trim();
+                if (line.isEmpty() || line.startsWith("#")) {
+                    continue;
+                }
+
+                String[] s = line.split("\\s+");
+                if (s.length != 5) {
+                    throw new IllegalArgumentException(String.format("%s:%d: kind actor x y z expected", file, number));
+                }
+                events.add(new Event(
+                    Kind.valueOf(s[0].toUpperCase(Locale.ENGLISH)),
+                    Actor.valueOf(s[1].toUpperCase(Locale.ENGLISH)),
+                    Integer.parseInt(s[2]), Integer.parseInt(s[3]), Integer.parseInt(s[4])
+                ));
+            }
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+        return new EventStream(events);
+    }
+}
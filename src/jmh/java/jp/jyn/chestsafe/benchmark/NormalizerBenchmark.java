@@ -0,0 +1,57 @@
+package jp.jyn.chestsafe.benchmark;
+
+import jp.jyn.chestsafe.util.normalizer.ChestNormalizer;
+import org.bukkit.Location;
+import org.bukkit.block.Block;
+import org.bukkit.block.BlockFace;
+import org.bukkit.block.data.type.Chest;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Note: Blocks are dynamic proxies, the result includes the reflection cost of the stubs.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class NormalizerBenchmark {
+    private Block single;
+    private Block left;
+    private Block right;
+
+    @Setup
+    public void setup() {
+        BenchmarkServer.init();
+        single = BenchmarkServer.chest(Chest.Type.SINGLE, BlockFace.NORTH, 0, 64, 0);
+        left = BenchmarkServer.chest(Chest.Type.LEFT, BlockFace.NORTH, 10, 64, 0);
+        right = BenchmarkServer.chest(Chest.Type.RIGHT, BlockFace.NORTH, 11, 64, 0);
+    }
+
+    @Benchmark
+    public Location single() {
+        return ChestNormalizer.getInstance().normalize(single);
+    }
+
+    @Benchmark
+    public Location doubleLeft() {
+        return ChestNormalizer.getInstance().normalize(left);
+    }
+
+    @Benchmark
+    public Location doubleRight() {
+        return ChestNormalizer.getInstance().normalize(right);
+    }
+}
@@ -0,0 +1,51 @@
+package jp.jyn.chestsafe.config;
+
+import jp.jyn.jbukkitlib.config.locale.BukkitLocale;
+import jp.jyn.jbukkitlib.config.locale.SingleLocale;
+import org.bukkit.configuration.file.YamlConfiguration;
+
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Load the bundled config.yml and locale for benchmarks.
+ */
+public final class BenchmarkConfig {
+    private BenchmarkConfig() {
+    }
+
+    /**
+     * Load default config.
+     *
+     * @param resident cache.resident
+     * @return config
+     */
+    public static MainConfig load(boolean resident) {
+        YamlConfiguration config = resource("/config.yml");
+
+        // Drivers are created by Dataset, database section is not used. (mysql does not touch the file system)
+        config.set("database.type", "mysql");
+        config.set("cache.resident", resident);
+        return new MainConfig(config);
+    }
+
+    /**
+     * Load default locale. (en_us)
+     *
+     * @return locale
+     */
+    public static BukkitLocale<MessageConfig> message() {
+        String locale = "en_us";
+        return new SingleLocale<>(locale, new MessageConfig(locale, resource("/locale/" + locale + ".yml")));
+    }
+
+    private static YamlConfiguration resource(String name) {
+        try (Reader reader = new InputStreamReader(MainConfig.class.getResourceAsStream(name), StandardCharsets.UTF_8)) {
+            return YamlConfiguration.loadConfiguration(reader);
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+}
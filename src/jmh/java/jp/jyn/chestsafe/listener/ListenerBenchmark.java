@@ -0,0 +1,253 @@
+package jp.jyn.chestsafe.listener;
+
+import jp.jyn.chestsafe.ChestSafe;
+import jp.jyn.chestsafe.benchmark.BenchmarkServer;
+import jp.jyn.chestsafe.benchmark.Dataset;
+import jp.jyn.chestsafe.benchmark.EventStream;
+import jp.jyn.chestsafe.config.BenchmarkConfig;
+import jp.jyn.chestsafe.config.MainConfig;
+import jp.jyn.chestsafe.config.MessageConfig;
+import jp.jyn.chestsafe.protection.ProtectionRepository;
+import jp.jyn.chestsafe.util.PlayerAction;
+import jp.jyn.chestsafe.util.WorkScheduler;
+import jp.jyn.jbukkitlib.config.locale.BukkitLocale;
+import jp.jyn.jbukkitlib.uuid.UUIDRegistry;
+import org.bukkit.Location;
+import org.bukkit.Material;
+import org.bukkit.block.Block;
+import org.bukkit.block.BlockFace;
+import org.bukkit.block.data.type.Chest;
+import org.bukkit.entity.Player;
+import org.bukkit.event.block.Action;
+import org.bukkit.event.block.BlockBreakEvent;
+import org.bukkit.event.block.BlockPlaceEvent;
+import org.bukkit.event.entity.EntityExplodeEvent;
+import org.bukkit.event.inventory.InventoryMoveItemEvent;
+import org.bukkit.event.player.PlayerInteractEvent;
+import org.bukkit.inventory.EquipmentSlot;
+import org.bukkit.inventory.Inventory;
+import org.bukkit.inventory.ItemStack;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * <p>Replay a stream of events against the listeners, one event per operation.</p>
+ * <p>Throughput is events per microsecond, sample time gives percentiles of the handler latency.
+ * Allocation rate is reported by the gc profiler. (-prof gc)</p>
+ * <p>A server tick is run every {@link #EVENTS_PER_TICK} events, so the latency includes work deferred to the main thread.
+ * (applying loaded chunks, delayed chest protection, hopper destroy)</p>
+ * <p>Players have no permissions. Messages are built from the bundled locale (en_us), and discarded by the player stub.</p>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+public class ListenerBenchmark {
+    private final static int EVENTS_PER_TICK = 1000;
+    private final static int STREAM_LENGTH = 1 << 16;
+    private final static ItemStack ITEM = new ItemStack(Material.COBBLESTONE);
+    private final static ItemStack CHEST = new ItemStack(Material.CHEST);
+
+    @Param({"MIXED", "INTERACT", "BREAK", "PLACE", "HOPPER", "EXPLOSION"})
+    public EventStream.Scenario scenario;
+    /**
+     * Recorded stream, replaces the scenario if not empty.
+     */
+    @Param({""})
+    public String replay;
+    @Param({"SQLITE"})
+    public Dataset.Database database;
+    @Param({"100000"})
+    public int protections;
+    @Param({"false", "true"})
+    public boolean resident;
+
+    private Dataset dataset;
+    private ProtectionRepository repository;
+    private WorkScheduler scheduler;
+    private PlayerListener playerListener;
+    private BlockListener blockListener;
+
+    private Replay[] events;
+    private int index = 0;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        dataset = Dataset.create(database, protections);
+        BenchmarkServer.setTerrain(this::terrain);
+        MainConfig config = BenchmarkConfig.load(resident);
+
+        repository = new ProtectionRepository(config, dataset.idDriver, dataset.protectionDriver, dataset.metrics);
+        scheduler = new WorkScheduler(ChestSafe.getInstance(), config.scheduler.budget, config.scheduler.mspt, TimeUnit.MILLISECONDS);
+        BukkitLocale<MessageConfig> message = BenchmarkConfig.message();
+        // Version checker is only used on join.
+        playerListener = new PlayerListener(
+            config, message, UUIDRegistry.getSharedCacheRegistry(ChestSafe.getInstance()), null,
+            repository, new PlayerAction()
+        );
+        blockListener = new BlockListener(config, repository, message, scheduler);
+
+        EventStream stream = replay.isEmpty()
+            ? EventStream.synthetic(scenario, dataset, STREAM_LENGTH, 0)
+            : EventStream.load(Paths.get(replay));
+        events = prepare(stream);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        BenchmarkServer.tick();
+        scheduler.close();
+        repository.close();
+        dataset.close();
+        BenchmarkServer.setTerrain(null);
+    }
+
+    /**
+     * Handle an event.
+     *
+     * @return the event is cancelled
+     */
+    @Benchmark
+    public boolean replay() {
+        Replay event = events[index];
+        if (++index == events.length) {
+            index = 0;
+        }
+        if (index % EVENTS_PER_TICK == 0) {
+            BenchmarkServer.tick();
+        }
+
+        // Create the event every time as the server does, listeners may change it.
+        switch (event.kind) {
+            case INTERACT: {
+                PlayerInteractEvent e = new PlayerInteractEvent(event.player, Action.RIGHT_CLICK_BLOCK, null, event.block, BlockFace.UP);
+                playerListener.onPlayerInteract(e);
+                return e.isCancelled();
+            }
+            case BREAK: {
+                BlockBreakEvent e = new BlockBreakEvent(event.block, event.player);
+                playerListener.onBlockBreak(e);
+                return e.isCancelled();
+            }
+            case PLACE: {
+                BlockPlaceEvent e = new BlockPlaceEvent(event.block, null, event.against, CHEST, event.player, true, EquipmentSlot.HAND);
+                playerListener.onBlockPlace(e);
+                return e.isCancelled();
+            }
+            case PUSH:
+            case PULL: {
+                InventoryMoveItemEvent e = new InventoryMoveItemEvent(event.source, ITEM, event.destination, event.kind == EventStream.Kind.PUSH);
+                blockListener.onInventoryMoveItem(e);
+                return e.isCancelled();
+            }
+            case EXPLODE: {
+                EntityExplodeEvent e = new EntityExplodeEvent(null, event.location, new ArrayList<>(event.blocks), 4f);
+                blockListener.onEntityExplode(e);
+                return e.isCancelled();
+            }
+            default:
+                throw new IllegalStateException(event.kind.name());
+        }
+    }
+
+    private Block terrain(int x, int y, int z) {
+        int i = dataset.index(x, z);
+        if (y == Dataset.Y && (i != -1 || EventStream.isPlacement(x, z))) {
+            return BenchmarkServer.chest(Chest.Type.SINGLE, BlockFace.NORTH, x, y, z);
+        }
+        if ((y == Dataset.Y + 1 || y == Dataset.Y - 1) && i != -1) {
+            return BenchmarkServer.block(Material.HOPPER, x, y, z);
+        }
+        return BenchmarkServer.block(Material.AIR, x, y, z);
+    }
+
+    /**
+     * Resolve blocks, players and inventories in advance, so that the stubs are not measured.
+     *
+     * @param stream stream
+     * @return events
+     */
+    private Replay[] prepare(EventStream stream) {
+        Map<EventStream.Actor, Player> players = new HashMap<>();
+        players.put(EventStream.Actor.OWNER, BenchmarkServer.player("owner", new UUID(1, 1)));
+        players.put(EventStream.Actor.MEMBER, BenchmarkServer.player("member", new UUID(1, 2)));
+        players.put(EventStream.Actor.STRANGER, BenchmarkServer.player("stranger", new UUID(1, 3)));
+        // The same block has the same inventory. (the hopper listener compares the instance)
+        Map<Location, Inventory> inventories = new HashMap<>();
+
+        List<EventStream.Event> list = stream.getEvents();
+        Replay[] result = new Replay[list.size()];
+        for (int i = 0; i < result.length; i++) {
+            EventStream.Event e = list.get(i);
+            Replay r = new Replay(e.kind);
+            r.player = players.get(e.actor);
+            r.block = terrain(e.x, e.y, e.z);
+            switch (e.kind) {
+                case PLACE:
+                    r.against = terrain(e.x, e.y - 1, e.z);
+                    break;
+                case PUSH:
+                    r.source = inventories.computeIfAbsent(new Location(dataset.world, e.x, e.y + 1, e.z), l -> inventory(l));
+                    r.destination = inventories.computeIfAbsent(new Location(dataset.world, e.x, e.y, e.z), l -> inventory(l));
+                    break;
+                case PULL:
+                    r.source = inventories.computeIfAbsent(new Location(dataset.world, e.x, e.y, e.z), l -> inventory(l));
+                    r.destination = inventories.computeIfAbsent(new Location(dataset.world, e.x, e.y - 1, e.z), l -> inventory(l));
+                    break;
+                case EXPLODE:
+                    r.location = new Location(dataset.world, e.x, e.y, e.z);
+                    r.blocks = new ArrayList<>(27);
+                    for (int x = -1; x <= 1; x++) {
+                        for (int y = -1; y <= 1; y++) {
+                            for (int z = -1; z <= 1; z++) {
+                                r.blocks.add(terrain(e.x + x, e.y + y, e.z + z));
+                            }
+                        }
+                    }
+                    break;
+            }
+            result[i] = r;
+        }
+        return result;
+    }
+
+    private Inventory inventory(Location location) {
+        return BenchmarkServer.inventory(terrain(location.getBlockX(), location.getBlockY(), location.getBlockZ()));
+    }
+
+    private final static class Replay {
+        private final EventStream.Kind kind;
+        private Player player;
+        private Block block;
+        private Block against;
+        private Inventory source;
+        private Inventory destination;
+        private Location location;
+        private List<Block> blocks;
+
+        private Replay(EventStream.Kind kind) {
+            this.kind = kind;
+        }
+    }
+}
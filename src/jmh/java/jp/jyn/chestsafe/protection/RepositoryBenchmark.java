@@ -0,0 +1,103 @@
+package jp.jyn.chestsafe.protection;
+
+import jp.jyn.chestsafe.benchmark.Dataset;
+import jp.jyn.chestsafe.config.BenchmarkConfig;
+import jp.jyn.chestsafe.config.MainConfig;
+import jp.jyn.chestsafe.db.driver.ProtectionDriver.ProtectionData;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.Optional;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * <p>Lookups in random order. (cache hit ratio depends on cache size and dataset size)</p>
+ * <p>Repositories are main thread only, so it is single-threaded.</p>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+public class RepositoryBenchmark {
+    private final static int HYDRATE_BATCH = 500;
+
+    @Param({"SQLITE"})
+    public Dataset.Database database;
+    @Param({"100000", "1000000"})
+    public int protections;
+    @Param({"false", "true"})
+    public boolean resident;
+
+    private Dataset dataset;
+    private ProtectionRepository repository;
+    private IDRepository idRepository;
+    private ProtectionJournal journal;
+    private GroupRepository groupRepository;
+
+    private final SplittableRandom random = new SplittableRandom(0);
+
+    @Setup(Level.Trial)
+    public void setup() {
+        dataset = Dataset.create(database, protections);
+        MainConfig config = BenchmarkConfig.load(resident);
+
+        repository = new ProtectionRepository(config, dataset.idDriver, dataset.protectionDriver, dataset.metrics);
+        idRepository = new IDRepository(config.cache, dataset.idDriver, dataset.metrics);
+        if (resident) {
+            idRepository.loadAll();
+        }
+        journal = new ProtectionJournal(dataset.protectionDriver);
+        groupRepository = new GroupRepository(dataset.protectionDriver, journal, idRepository);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        journal.close();
+        repository.close();
+        dataset.close();
+    }
+
+    @Benchmark
+    public Optional<Protection> get() {
+        return repository.get(dataset.block(random.nextInt(protections)));
+    }
+
+    @Benchmark
+    public int locationToId() {
+        return idRepository.locationToId(dataset.location(random.nextInt(protections)));
+    }
+
+    /**
+     * Load protections in a chunk-sized batch and create {@link SavedProtection}.
+     *
+     * @param blackhole blackhole
+     */
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    public void hydrate(Blackhole blackhole) {
+        int offset = random.nextInt(Math.max(1, protections - HYDRATE_BATCH));
+        int[] ids = Arrays.copyOfRange(dataset.ids, offset, Math.min(protections, offset + HYDRATE_BATCH));
+
+        Map<Integer, ProtectionData> data = dataset.protectionDriver.getProtectionData(ids);
+        for (Map.Entry<Integer, ProtectionData> entry : data.entrySet()) {
+            blackhole.consume(new SavedProtection(entry.getKey(), journal, idRepository, groupRepository, entry.getValue()));
+        }
+    }
+}
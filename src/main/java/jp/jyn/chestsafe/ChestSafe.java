@@ -3,14 +3,18 @@ package jp.jyn.chestsafe;
 import jp.jyn.chestsafe.command.CommandRedirection;
 import jp.jyn.chestsafe.command.sub.Cleanup;
 import jp.jyn.chestsafe.command.sub.Flag;
+import jp.jyn.chestsafe.command.sub.Group;
 import jp.jyn.chestsafe.command.sub.Help;
 import jp.jyn.chestsafe.command.sub.Info;
+import jp.jyn.chestsafe.command.sub.List;
 import jp.jyn.chestsafe.command.sub.Member;
 import jp.jyn.chestsafe.command.sub.Persist;
 import jp.jyn.chestsafe.command.sub.Private;
+import jp.jyn.chestsafe.command.sub.Purge;
 import jp.jyn.chestsafe.command.sub.Public;
 import jp.jyn.chestsafe.command.sub.Reload;
 import jp.jyn.chestsafe.command.sub.Remove;
+import jp.jyn.chestsafe.command.sub.Stats;
 import jp.jyn.chestsafe.command.sub.Transfer;
 import jp.jyn.chestsafe.command.sub.Version;
 import jp.jyn.chestsafe.config.ConfigLoader;
@@ -18,21 +22,29 @@ import jp.jyn.chestsafe.config.MainConfig;
 import jp.jyn.chestsafe.config.MessageConfig;
 import jp.jyn.chestsafe.db.DBConnector;
 import jp.jyn.chestsafe.listener.BlockListener;
+import jp.jyn.chestsafe.listener.ChunkListener;
 import jp.jyn.chestsafe.listener.PlayerListener;
 import jp.jyn.chestsafe.protection.ProtectionRepository;
 import jp.jyn.chestsafe.util.PlayerAction;
 import jp.jyn.chestsafe.util.ProtectionCleaner;
 import jp.jyn.chestsafe.util.VersionChecker;
+import jp.jyn.chestsafe.util.WorkScheduler;
+import jp.jyn.chestsafe.util.metrics.Metrics;
 import jp.jyn.jbukkitlib.command.SubExecutor;
 import jp.jyn.jbukkitlib.config.locale.BukkitLocale;
 import jp.jyn.jbukkitlib.uuid.UUIDRegistry;
 import org.bukkit.Bukkit;
+import org.bukkit.Chunk;
+import org.bukkit.World;
 import org.bukkit.command.PluginCommand;
 import org.bukkit.event.HandlerList;
+import org.bukkit.plugin.PluginDescriptionFile;
 import org.bukkit.plugin.PluginManager;
 import org.bukkit.plugin.java.JavaPlugin;
+import org.bukkit.plugin.java.JavaPluginLoader;
 import org.bukkit.scheduler.BukkitTask;
 
+import java.io.File;
 import java.util.ArrayDeque;
 import java.util.Deque;
 import java.util.concurrent.TimeUnit;
@@ -46,6 +58,24 @@ public class ChestSafe extends JavaPlugin {
     // Stack(LIFO)
     private final Deque<Runnable> destructor = new ArrayDeque<>();
 
+    public ChestSafe() {
+        super();
+    }
+
+    /**
+     * <p>For use outside of the server. (e.g. benchmarks)</p>
+     * <p>See the initialization constructor of {@link JavaPlugin}, {@link #getInstance()} returns this.</p>
+     *
+     * @param loader      loader
+     * @param description description
+     * @param dataFolder  data folder
+     * @param file        plugin file
+     */
+    protected ChestSafe(JavaPluginLoader loader, PluginDescriptionFile description, File dataFolder, File file) {
+        super(loader, description, dataFolder, file);
+        instance = this;
+    }
+
     @Override
     public void onEnable() {
         instance = this;
@@ -65,13 +95,29 @@ public class ChestSafe extends JavaPlugin {
         BukkitTask task = getServer().getScheduler().runTaskLater(this, () -> checker.check(Bukkit.getConsoleSender()), 20 * 30);
         destructor.addFirst(task::cancel);
 
+        // statistics
+        Metrics metrics = new Metrics();
+        if (main.metricsDump > 0) {
+            File file = new File(getDataFolder(), "metrics.prom");
+            long interval = main.metricsDump * 20;
+            getServer().getScheduler().runTaskTimerAsynchronously(this, () -> metrics.dump(file), interval, interval);
+        }
+
         // connect db
-        DBConnector dbConnector = new DBConnector(main.database);
+        DBConnector dbConnector = new DBConnector(main.database, metrics);
         destructor.addFirst(dbConnector::close);
 
         // init repository
-        repository = new ProtectionRepository(main, dbConnector);
-        destructor.addFirst(() -> repository = null);
+        repository = new ProtectionRepository(main, dbConnector, metrics);
+        destructor.addFirst(() -> {
+            // Pending changes must be written before disconnecting.
+            repository.close();
+            repository = null;
+        });
+
+        // background work
+        WorkScheduler scheduler = new WorkScheduler(this, main.scheduler.budget, main.scheduler.mspt, TimeUnit.MILLISECONDS);
+        destructor.addFirst(scheduler::close);
 
         // cleanup
         if (main.cleanup.enable) {
@@ -79,8 +125,8 @@ public class ChestSafe extends JavaPlugin {
             long interval = main.cleanup.interval * 20;
             Runnable cleanup = () -> {
                 if (!ProtectionCleaner.isRunning()) {
-                    new ProtectionCleaner(this, main, message, repository,
-                        main.cleanup.limit, TimeUnit.MILLISECONDS, main.cleanup.unloaded,
+                    new ProtectionCleaner(scheduler, main, message, repository, dbConnector.metaDriver,
+                        main.cleanup.limit, TimeUnit.MILLISECONDS, main.cleanup.unloaded, main.cleanup.incremental,
                         Bukkit.getConsoleSender());
                 }
             };
@@ -102,7 +148,14 @@ public class ChestSafe extends JavaPlugin {
         // register events
         PluginManager manager = getServer().getPluginManager();
         manager.registerEvents(new PlayerListener(main, message, registry, checker, repository, action), this);
-        manager.registerEvents(new BlockListener(main, repository, message), this);
+        manager.registerEvents(new BlockListener(main, repository, message, scheduler), this);
+        manager.registerEvents(new ChunkListener(repository), this);
+        // Chunks loaded before enabling. (e.g. spawn chunks)
+        for (World world : getServer().getWorlds()) {
+            for (Chunk chunk : world.getLoadedChunks()) {
+                repository.loadChunk(chunk);
+            }
+        }
         destructor.addFirst(() -> HandlerList.unregisterAll(this));
 
         // register commands
@@ -115,8 +168,12 @@ public class ChestSafe extends JavaPlugin {
             .putCommand("info", new Info(message, registry, repository, action))
             .putCommand("member", new Member(message, registry, repository, action))
             .putCommand("transfer", new Transfer(message, registry, repository, action))
+            .putCommand("list", new List(message, registry, repository))
+            .putCommand("group", new Group(message, registry, repository, action))
             .putCommand("persist", new Persist(message, action))
-            .putCommand("cleanup", new Cleanup(main, message, repository))
+            .putCommand("cleanup", new Cleanup(main, message, repository, dbConnector.metaDriver, scheduler))
+            .putCommand("purge", new Purge(message, repository))
+            .putCommand("stats", new Stats(message, metrics, scheduler))
             .putCommand("reload", new Reload(message))
             .putCommand("version", new Version(message, checker));
         Help help = new Help(message, builder.getSubCommands());
@@ -1,10 +1,11 @@
 package jp.jyn.chestsafe.command.sub;
 
-import jp.jyn.chestsafe.ChestSafe;
 import jp.jyn.chestsafe.config.MainConfig;
 import jp.jyn.chestsafe.config.MessageConfig;
+import jp.jyn.chestsafe.db.driver.MetaDriver;
 import jp.jyn.chestsafe.protection.ProtectionRepository;
 import jp.jyn.chestsafe.util.ProtectionCleaner;
+import jp.jyn.chestsafe.util.WorkScheduler;
 import jp.jyn.jbukkitlib.command.SubCommand;
 import jp.jyn.jbukkitlib.config.locale.BukkitLocale;
 import org.bukkit.Bukkit;
@@ -21,11 +22,15 @@ public class Cleanup extends SubCommand {
     private final MainConfig config;
     private final BukkitLocale<MessageConfig> message;
     private final ProtectionRepository repository;
+    private final MetaDriver meta;
+    private final WorkScheduler scheduler;
 
-    public Cleanup(MainConfig config, BukkitLocale<MessageConfig> message, ProtectionRepository repository) {
+    public Cleanup(MainConfig config, BukkitLocale<MessageConfig> message, ProtectionRepository repository, MetaDriver meta, WorkScheduler scheduler) {
         this.config = config;
         this.message = message;
         this.repository = repository;
+        this.meta = meta;
+        this.scheduler = scheduler;
     }
 
     @Override
@@ -70,7 +75,8 @@ public class Cleanup extends SubCommand {
         } else {
             senders = new CommandSender[]{sender};
         }
-        new ProtectionCleaner(ChestSafe.getInstance(), config, message, repository, limit, TimeUnit.MILLISECONDS, config.cleanup.unloaded, senders);
+        // Manual cleanup always checks all protections.
+        new ProtectionCleaner(scheduler, config, message, repository, meta, limit, TimeUnit.MILLISECONDS, config.cleanup.unloaded, false, senders);
         return Result.OK;
     }
 
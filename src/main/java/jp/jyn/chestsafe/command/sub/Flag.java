@@ -100,14 +100,15 @@ public class Flag extends SubCommand { // APIの邪魔
         }
 
         Protection protection = optional.get();
-        boolean defaultValue = config.protectable.get(block.getType()).flag.get(flag); // get should not always be null
+        MainConfig.ProtectionConfig protectionConfig = config.protectable.get(block.getType()); // get should not always be null
+        boolean defaultValue = protectionConfig.flag.get(flag);
         boolean newValue = defaultValue;
         switch (value) {
             case REMOVE:
                 //newValue = defaultValue;
                 break;
             case REVERSE:
-                newValue = !protection.getFlag(flag).orElse(defaultValue);
+                newValue = !protectionConfig.getFlag(protection, flag);
                 break;
             case TRUE:
                 newValue = true;
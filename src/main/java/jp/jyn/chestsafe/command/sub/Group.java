@@ -0,0 +1,212 @@
+package jp.jyn.chestsafe.command.sub;
+
+import jp.jyn.chestsafe.command.CommandUtils;
+import jp.jyn.chestsafe.config.MessageConfig;
+import jp.jyn.chestsafe.protection.ProtectionGroup;
+import jp.jyn.chestsafe.protection.ProtectionRepository;
+import jp.jyn.chestsafe.util.PlayerAction;
+import jp.jyn.jbukkitlib.command.SubCommand;
+import jp.jyn.jbukkitlib.config.locale.BukkitLocale;
+import jp.jyn.jbukkitlib.config.parser.component.ComponentVariable;
+import jp.jyn.jbukkitlib.uuid.UUIDRegistry;
+import org.bukkit.block.Block;
+import org.bukkit.command.CommandSender;
+import org.bukkit.entity.Player;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.Queue;
+import java.util.Set;
+import java.util.UUID;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+public class Group extends SubCommand {
+    private final static Pattern NAME = Pattern.compile("^[a-zA-Z0-9_-]{1,16}$");
+
+    private final BukkitLocale<MessageConfig> message;
+    private final UUIDRegistry registry;
+    private final ProtectionRepository repository;
+    private final PlayerAction action;
+
+    public Group(BukkitLocale<MessageConfig> message, UUIDRegistry registry, ProtectionRepository repository, PlayerAction action) {
+        this.message = message;
+        this.registry = registry;
+        this.repository = repository;
+        this.action = action;
+    }
+
+    @Override
+    protected Result onCommand(CommandSender sender, Queue<String> args) {
+        Player player = (Player) sender;
+
+        String operator = args.remove().toLowerCase(Locale.ENGLISH);
+        switch (operator) {
+            case "list":
+                list(player);
+                return Result.OK;
+            case "unset":
+                action.setAction(player, block -> setGroup(player, block, null));
+                message.get(player).ready.apply().send(player);
+                return Result.OK;
+            case "create":
+            case "delete":
+            case "add":
+            case "remove":
+            case "set":
+                break;
+            default:
+                message.get(player).invalidArgument.apply("value", operator).send(player);
+                return Result.ERROR;
+        }
+
+        if (args.isEmpty()) {
+            message.get(player).missingArgument.apply().send(player);
+            return Result.ERROR;
+        }
+        String name = args.remove();
+        if (!NAME.matcher(name).matches()) {
+            message.get(player).invalidArgument.apply("value", name).send(player);
+            return Result.ERROR;
+        }
+
+        if (operator.equals("create")) {
+            MessageConfig.GroupMessage m = message.get(player).group;
+            (repository.createGroup(player.getUniqueId(), name).isPresent() ? m.created : m.alreadyExists)
+                .apply("name", name).send(player);
+            return Result.OK;
+        }
+
+        Optional<ProtectionGroup> group = repository.getGroup(player.getUniqueId(), name);
+        if (!group.isPresent()) {
+            message.get(player).group.notFound.apply("name", name).send(player);
+            return Result.OK;
+        }
+
+        switch (operator) {
+            case "delete":
+                repository.removeGroup(group.get());
+                message.get(player).group.deleted.apply("name", name).send(player);
+                break;
+            case "set":
+                action.setAction(player, block -> setGroup(player, block, group.get()));
+                message.get(player).ready.apply().send(player);
+                break;
+            case "add":
+            case "remove":
+                if (args.isEmpty()) {
+                    message.get(player).missingArgument.apply().send(player);
+                    return Result.ERROR;
+                }
+                modifyMember(player, group.get(), new ArrayList<>(args), operator.equals("add"));
+                break;
+        }
+        return Result.OK;
+    }
+
+    private void modifyMember(Player player, ProtectionGroup group, Collection<String> names, boolean add) {
+        registry.getMultipleUUIDAsync(names).thenAcceptSync(map -> {
+            // check user exists
+            for (String name : names) {
+                if (!map.containsKey(name)) {
+                    message.get(player).playerNotFound.apply("name", name).send(player);
+                    return;
+                }
+            }
+
+            // 1 write per player, no matter how many protections use the group.
+            for (UUID uuid : map.values()) {
+                if (add) {
+                    group.addMember(uuid);
+                } else {
+                    group.removeMember(uuid);
+                }
+            }
+            message.get(player).group.changed.apply("name", group.getName()).send(player);
+        });
+    }
+
+    private void setGroup(Player player, Block block, ProtectionGroup group) {
+        ComponentVariable variable = ComponentVariable.init();
+        CommandUtils.checkProtection(message, repository, player, block, variable).ifPresent(protection -> {
+            protection.setGroup(group);
+            MessageConfig.GroupMessage m = message.get(player).group;
+            if (group == null) {
+                m.unset.apply(variable).send(player);
+            } else {
+                m.set.apply(variable.put("name", group.getName())).send(player);
+            }
+        });
+    }
+
+    private void list(Player player) {
+        Collection<ProtectionGroup> groups = repository.getGroups(player.getUniqueId());
+        if (groups.isEmpty()) {
+            message.get(player).group.empty.apply().send(player);
+            return;
+        }
+
+        Set<UUID> request = new HashSet<>();
+        groups.forEach(group -> request.addAll(group.getMembers()));
+        registry.getMultipleNameAsync(request).thenAcceptSync(names -> {
+            MessageConfig.GroupMessage m = message.get(player).group;
+            for (ProtectionGroup group : groups) {
+                String members = group.getMembers().stream()
+                    .map(names::get)
+                    .filter(Objects::nonNull)
+                    .sorted()
+                    .collect(Collectors.joining(", "));
+                m.list.apply(ComponentVariable.init().put("name", group.getName()).put("member", members)).send(player);
+            }
+        });
+    }
+
+    @Override
+    protected List<String> onTabComplete(CommandSender sender, Deque<String> args) {
+        if (args.size() == 1) {
+            return Stream.of("create", "delete", "add", "remove", "set", "unset", "list")
+                .filter(str -> str.startsWith(args.getFirst()))
+                .collect(Collectors.toList());
+        }
+
+        String operator = args.removeFirst().toLowerCase(Locale.ENGLISH);
+        if (args.size() == 1) {
+            if (operator.equals("create") || !(sender instanceof Player)) {
+                return Collections.emptyList();
+            }
+            return repository.getGroups(((Player) sender).getUniqueId()).stream()
+                .map(ProtectionGroup::getName)
+                .filter(str -> str.startsWith(args.getFirst()))
+                .collect(Collectors.toList());
+        }
+        if (operator.equals("add") || operator.equals("remove")) {
+            args.removeFirst(); // group name
+            return CommandUtils.tabCompletePlayer(args);
+        }
+
+        return Collections.emptyList();
+    }
+
+    @Override
+    protected boolean isPlayerOnly() {
+        return true;
+    }
+
+    @Override
+    protected String requirePermission() {
+        return "chestsafe.group";
+    }
+
+    @Override
+    protected int minimumArgs() {
+        return 1;
+    }
+}
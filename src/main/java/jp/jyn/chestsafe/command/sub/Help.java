@@ -132,18 +132,31 @@ public class Help extends SubCommand implements ErrorExecutor {
         builder.command("public").description(msg.public_).put(m);
         builder.command("remove").description(msg.remove).put(m);
         builder.command("info").description(msg.info).put(m);
+        builder.command("stats").description(msg.stats).put(m);
         builder.command("reload").description(msg.reload).put(m);
         builder.command("version").description(msg.version).put(m);
 
         builder.command("private").option("[member]").description(msg.private_).usage("", "member1", "member1 member2").put(m);
-        builder.command("transfer").option("<owner>").description(msg.transfer).usage("new_owner").put(m);
+        builder.command("transfer").option("[all] <owner>").description(msg.transfer).usage("new_owner", "all old_owner new_owner").put(m);
         builder.command("cleanup").option("[limit]").description(msg.cleanup).usage("", "100", "cancel").put(m);
+        builder.command("purge").option("<world> [confirm]").description(msg.purge).usage("world_name", "world_name confirm").put(m);
+        builder.command("list").option("[player] [page]").description(msg.list).usage("", "2", "player_name", "player_name 2").put(m);
         builder.command("help").option("[command]").description(msg.help).usage("", "private").put(m);
 
         builder.command("member").option("<operator> [value]").description(msg.member)
             .usageSuggest("add", "member1")
             .usageSuggest("remove", "member1")
             .usageSuggest("modify", "member1 -member2")
+            .usageSuggest("add-all", "member1")
+            .put(m);
+        builder.command("group").option("<operator> [name] [value]").description(msg.group)
+            .usageSuggest("create", "group1")
+            .usageSuggest("add", "group1 member1 member2")
+            .usageSuggest("remove", "group1 member1")
+            .usageSuggest("set", "group1")
+            .usageSuggest("unset", "")
+            .usageSuggest("list", "")
+            .usageSuggest("delete", "group1")
             .put(m);
         builder.command("persist").option("[true/false]").description(msg.persist)
             .usageSuggest("", "")
@@ -3,6 +3,7 @@ package jp.jyn.chestsafe.command.sub;
 import jp.jyn.chestsafe.command.CommandUtils;
 import jp.jyn.chestsafe.config.MessageConfig;
 import jp.jyn.chestsafe.protection.Protection;
+import jp.jyn.chestsafe.protection.ProtectionGroup;
 import jp.jyn.chestsafe.protection.ProtectionRepository;
 import jp.jyn.chestsafe.util.PlayerAction;
 import jp.jyn.jbukkitlib.command.SubCommand;
@@ -90,6 +91,7 @@ public class Info extends SubCommand {
                 ));
             }
         });
+        variable.put("group", protection.getGroup().map(ProtectionGroup::getName).orElse(""));
         variable.put("flag", (c, a) -> {
             final String separator;
             final String joint;
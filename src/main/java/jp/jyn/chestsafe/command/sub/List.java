@@ -0,0 +1,193 @@
+package jp.jyn.chestsafe.command.sub;
+
+import jp.jyn.chestsafe.ChestSafe;
+import jp.jyn.chestsafe.config.MessageConfig;
+import jp.jyn.chestsafe.protection.ProtectionRepository;
+import jp.jyn.chestsafe.protection.ProtectionRepository.ListedProtection;
+import jp.jyn.jbukkitlib.command.SubCommand;
+import jp.jyn.jbukkitlib.config.locale.BukkitLocale;
+import jp.jyn.jbukkitlib.config.parser.component.ComponentVariable;
+import jp.jyn.jbukkitlib.uuid.UUIDRegistry;
+import net.md_5.bungee.api.chat.ClickEvent;
+import org.bukkit.Bukkit;
+import org.bukkit.command.CommandSender;
+import org.bukkit.entity.Player;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.Map;
+import java.util.Queue;
+import java.util.UUID;
+import java.util.WeakHashMap;
+import java.util.logging.Level;
+import java.util.stream.Collectors;
+
+public class List extends SubCommand { // java.util.Listの邪魔
+    private final static int PAGE_SIZE = 10;
+    private final static int MAX_PAGE = 1000;
+
+    private final BukkitLocale<MessageConfig> message;
+    private final UUIDRegistry registry;
+    private final ProtectionRepository repository;
+    /**
+     * Offsets of the pages shown last time, the next page is a single range scan.
+     */
+    private final Map<CommandSender, Cursor> cursors = new WeakHashMap<>();
+
+    public List(BukkitLocale<MessageConfig> message, UUIDRegistry registry, ProtectionRepository repository) {
+        this.message = message;
+        this.registry = registry;
+        this.repository = repository;
+    }
+
+    @Override
+    protected Result onCommand(CommandSender sender, Queue<String> args) {
+        String name = null;
+        int page = 1;
+        if (args.size() >= 2) {
+            name = args.remove();
+            page = parsePage(sender, args.remove());
+        } else if (args.size() == 1) {
+            String arg = args.remove();
+            if (sender instanceof Player && isNumber(arg)) {
+                page = parsePage(sender, arg);
+            } else {
+                name = arg;
+            }
+        }
+        if (page == -1) {
+            return Result.OK;
+        }
+
+        if (name == null || (sender instanceof Player && name.equalsIgnoreCase(sender.getName()))) {
+            if (!(sender instanceof Player)) {
+                // console has no protection
+                return Result.ERROR;
+            }
+            list(sender, ((Player) sender).getUniqueId(), sender.getName(), page);
+            return Result.OK;
+        }
+
+        if (!sender.hasPermission("chestsafe.list.others")) {
+            message.get(sender).doNotHavePermission.apply().send(sender);
+            return Result.OK;
+        }
+        String target = name;
+        int p = page;
+        registry.getUUIDAsync(target).thenAcceptSync(uuid -> {
+            if (!uuid.isPresent()) {
+                message.get(sender).playerNotFound.apply("name", target).send(sender);
+                return;
+            }
+            list(sender, uuid.get(), target, p);
+        });
+        return Result.OK;
+    }
+
+    private static boolean isNumber(String value) {
+        return !value.isEmpty() && value.chars().allMatch(Character::isDigit);
+    }
+
+    private int parsePage(CommandSender sender, String value) {
+        int page = isNumber(value) && value.length() <= 4 ? Integer.parseInt(value) : 0;
+        if (page < 1 || page > MAX_PAGE) {
+            message.get(sender).invalidArgument.apply("value", value).send(sender);
+            return -1;
+        }
+        return page;
+    }
+
+    private void list(CommandSender sender, UUID target, String name, int page) {
+        Cursor cursor = cursors.get(sender);
+        if (cursor == null || !cursor.target.equals(target)) {
+            cursor = new Cursor(target);
+            cursors.put(sender, cursor);
+        }
+
+        // Start from the nearest known page, the pages in between are read in the same query.
+        int known = Math.min(page, cursor.offsets.size()) - 1;
+        int pages = page - known;
+        Cursor c = cursor;
+        repository.getProtections(target, pages * PAGE_SIZE + 1, cursor.offsets.get(known)).whenComplete((protections, e) -> {
+            if (e != null) {
+                ChestSafe.getInstance().getLogger().log(Level.WARNING, "Failed to list protections", e);
+                return;
+            }
+
+            for (int i = 1; i < pages && i * PAGE_SIZE <= protections.size(); i++) {
+                c.setOffset(known + i, protections.get(i * PAGE_SIZE - 1).id);
+            }
+            int from = (pages - 1) * PAGE_SIZE;
+            int to = Math.min(protections.size(), from + PAGE_SIZE);
+            boolean next = protections.size() > from + PAGE_SIZE;
+            if (next) {
+                c.setOffset(page, protections.get(to - 1).id);
+            }
+            show(sender, name, page, from < to ? protections.subList(from, to) : Collections.emptyList(), next);
+        });
+    }
+
+    private void show(CommandSender sender, String name, int page, java.util.List<ListedProtection> protections, boolean next) {
+        MessageConfig.ListMessage m = message.get(sender).list;
+        if (protections.isEmpty()) {
+            m.empty.apply().send(sender);
+            return;
+        }
+
+        sender.sendMessage(MessageConfig.HEADER);
+        m.header.apply(ComponentVariable.init().put("name", name).put("page", page)).send(sender);
+        for (ListedProtection protection : protections) {
+            ComponentVariable variable = ComponentVariable.init()
+                .put("world", protection.world)
+                .put("x", protection.x).put("y", protection.y).put("z", protection.z);
+            (protection.owner ? m.owner : m.member).apply(variable).send(sender);
+        }
+
+        if (next) {
+            String command = "/chestsafe list " + name + " " + (page + 1);
+            m.next.apply(ComponentVariable.init().put("command", c -> {
+                c.setText(command);
+                c.setClickEvent(new ClickEvent(ClickEvent.Action.RUN_COMMAND, command));
+            })).send(sender);
+        }
+    }
+
+    @Override
+    protected java.util.List<String> onTabComplete(CommandSender sender, Deque<String> args) {
+        if (args.size() == 1 && sender.hasPermission("chestsafe.list.others")) {
+            return Bukkit.getOnlinePlayers().stream()
+                .map(Player::getName)
+                .filter(str -> str.startsWith(args.getFirst()))
+                .collect(Collectors.toList());
+        }
+
+        return Collections.emptyList();
+    }
+
+    @Override
+    protected String requirePermission() {
+        return "chestsafe.list";
+    }
+
+    private final static class Cursor {
+        private final UUID target;
+        /**
+         * offsetId of the page. (index 0: page 1)
+         */
+        private final java.util.List<Integer> offsets = new ArrayList<>();
+
+        private Cursor(UUID target) {
+            this.target = target;
+            offsets.add(0);
+        }
+
+        private void setOffset(int index, int offsetId) {
+            if (index == offsets.size()) {
+                offsets.add(offsetId);
+            } else if (index < offsets.size()) {
+                offsets.set(index, offsetId);
+            }
+        }
+    }
+}
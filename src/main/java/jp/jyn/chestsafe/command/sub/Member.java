@@ -13,6 +13,7 @@ import org.bukkit.command.CommandSender;
 import org.bukkit.entity.Player;
 
 import java.util.Collection;
+import java.util.Collections;
 import java.util.Deque;
 import java.util.HashMap;
 import java.util.HashSet;
@@ -48,6 +49,8 @@ public class Member extends SubCommand {
         Map<String, Operation> members = new HashMap<>();
         String tmp = args.remove().toLowerCase(Locale.ENGLISH);
         switch (tmp) {
+            case "add-all":
+                return addAll(player, args);
             case "add":
                 args.forEach(name -> members.put(name, Operation.ADD));
                 break;
@@ -102,6 +105,35 @@ public class Member extends SubCommand {
         return Result.OK;
     }
 
+    private Result addAll(Player player, Queue<String> args) {
+        if (args.isEmpty()) {
+            message.get(player).missingArgument.apply().send(player);
+            return Result.ERROR;
+        }
+
+        String name = args.remove();
+        registry.getUUIDAsync(name).thenAcceptSync(uuid -> {
+            if (!uuid.isPresent()) {
+                message.get(player).playerNotFound.apply("name", name).send(player);
+                return;
+            }
+            if (uuid.get().equals(player.getUniqueId())) {
+                message.get(player).invalidArgument.apply("value", name).send(player);
+                return;
+            }
+
+            // All protections of the player, without clicking.
+            repository.addMemberAll(player.getUniqueId(), uuid.get()).whenComplete((count, e) -> {
+                if (e != null) {
+                    message.get(player).saveFailed.apply().send(player);
+                    return;
+                }
+                message.get(player).memberAddedAll.apply(ComponentVariable.init().put("name", name).put("count", count)).send(player);
+            });
+        });
+        return Result.OK;
+    }
+
     private void modifyMember(Player player, Block block, Collection<UUID> add, Collection<UUID> remove) {
         ComponentVariable variable = ComponentVariable.init();
         CommandUtils.checkProtection(message, repository, player, block, variable).ifPresent(protection -> {
@@ -118,10 +150,13 @@ public class Member extends SubCommand {
     @Override
     protected List<String> onTabComplete(CommandSender sender, Deque<String> args) {
         if (args.size() == 1) {
-            return Stream.of("add", "remove", "modify")
+            return Stream.of("add", "remove", "modify", "add-all")
                 .filter(str -> str.startsWith(args.getFirst()))
                 .collect(Collectors.toList());
         }
+        if (args.size() > 2 && args.getFirst().equalsIgnoreCase("add-all")) {
+            return Collections.emptyList();
+        }
         args.removeFirst(); // remove 1st args
 
         return CommandUtils.tabCompletePlayer(args);
@@ -0,0 +1,79 @@
+package jp.jyn.chestsafe.command.sub;
+
+import jp.jyn.chestsafe.config.MessageConfig;
+import jp.jyn.chestsafe.protection.ProtectionRepository;
+import jp.jyn.jbukkitlib.command.SubCommand;
+import jp.jyn.jbukkitlib.config.locale.BukkitLocale;
+import jp.jyn.jbukkitlib.config.parser.component.ComponentVariable;
+import org.bukkit.Bukkit;
+import org.bukkit.World;
+import org.bukkit.command.CommandSender;
+import org.bukkit.entity.Player;
+
+import java.util.Collections;
+import java.util.Deque;
+import java.util.List;
+import java.util.Queue;
+import java.util.stream.Collectors;
+
+public class Purge extends SubCommand {
+    private final BukkitLocale<MessageConfig> message;
+    private final ProtectionRepository repository;
+
+    public Purge(BukkitLocale<MessageConfig> message, ProtectionRepository repository) {
+        this.message = message;
+        this.repository = repository;
+    }
+
+    @Override
+    protected Result onCommand(CommandSender sender, Queue<String> args) {
+        // The world does not have to be loaded. (e.g. deleted world)
+        String world = args.remove();
+        if (!repository.isKnownWorld(world)) {
+            message.get(sender).unknownWorld.apply("world", world).send(sender);
+            return Result.OK;
+        }
+        if (args.isEmpty() || !args.remove().equalsIgnoreCase("confirm")) {
+            message.get(sender).purgeConfirm.apply("world", world).send(sender);
+            return Result.OK;
+        }
+
+        repository.removeAll(world).ifPresent(future -> future.whenComplete((count, e) -> {
+            if (e != null) {
+                message.get(sender).purgeFailed.apply("world", world).send(sender);
+                return;
+            }
+            ComponentVariable variable = ComponentVariable.init().put("world", world).put("count", count);
+            message.get(sender).purged.apply(variable).send(sender);
+            if (sender instanceof Player) {
+                message.get().purged.apply(variable).console();
+            }
+        }));
+        return Result.OK;
+    }
+
+    @Override
+    protected List<String> onTabComplete(CommandSender sender, Deque<String> args) {
+        if (args.size() == 1) {
+            return Bukkit.getWorlds().stream()
+                .map(World::getName)
+                .filter(str -> str.startsWith(args.getFirst()))
+                .collect(Collectors.toList());
+        }
+        if (args.size() == 2 && "confirm".startsWith(args.getLast())) {
+            return Collections.singletonList("confirm");
+        }
+
+        return Collections.emptyList();
+    }
+
+    @Override
+    protected String requirePermission() {
+        return "chestsafe.purge";
+    }
+
+    @Override
+    protected int minimumArgs() {
+        return 1;
+    }
+}
@@ -0,0 +1,84 @@
+package jp.jyn.chestsafe.command.sub;
+
+import com.zaxxer.hikari.metrics.PoolStats;
+import jp.jyn.chestsafe.config.MessageConfig;
+import jp.jyn.chestsafe.util.WorkScheduler;
+import jp.jyn.chestsafe.util.metrics.CacheStats;
+import jp.jyn.chestsafe.util.metrics.Latency;
+import jp.jyn.chestsafe.util.metrics.Metrics;
+import jp.jyn.jbukkitlib.command.SubCommand;
+import jp.jyn.jbukkitlib.config.locale.BukkitLocale;
+import jp.jyn.jbukkitlib.config.parser.component.ComponentVariable;
+import org.bukkit.command.CommandSender;
+
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.TimeUnit;
+
+public class Stats extends SubCommand {
+    private final BukkitLocale<MessageConfig> message;
+    private final Metrics metrics;
+    private final WorkScheduler scheduler;
+
+    public Stats(BukkitLocale<MessageConfig> message, Metrics metrics, WorkScheduler scheduler) {
+        this.message = message;
+        this.metrics = metrics;
+        this.scheduler = scheduler;
+    }
+
+    @Override
+    protected Result onCommand(CommandSender sender, Queue<String> args) {
+        MessageConfig.StatsMessage m = message.get(sender).stats;
+        sender.sendMessage(MessageConfig.HEADER);
+
+        m.cache.apply().send(sender);
+        for (Map.Entry<String, CacheStats> entry : metrics.getCaches().entrySet()) {
+            CacheStats c = entry.getValue();
+            m.cacheEntry.apply(ComponentVariable.init()
+                .put("name", entry.getKey())
+                .put("ratio", String.format("%.1f", c.getHitRatio() * 100))
+                .put("hit", c.getHit())
+                .put("negative", c.getNegative())
+                .put("miss", c.getMiss())
+                .put("evicted", c.getEviction())
+                .put("size", c.getSize())
+            ).send(sender);
+        }
+
+        m.database.apply().send(sender);
+        for (Map.Entry<String, Latency> entry : metrics.getLatencies().entrySet()) {
+            m.latency.apply(latency(entry.getKey(), entry.getValue())).send(sender);
+        }
+
+        PoolStats pool = metrics.getPoolStats();
+        if (pool != null) {
+            m.pool.apply(ComponentVariable.init()
+                .put("active", pool.getActiveConnections())
+                .put("idle", pool.getIdleConnections())
+                .put("waiting", pool.getPendingThreads())
+                .put("timeout", metrics.getPoolTimeout())
+            ).send(sender);
+        }
+        m.poolWait.apply(latency("wait", metrics.getPoolWait())).send(sender);
+
+        m.scheduler.apply(ComponentVariable.init()
+            .put("mspt", String.format("%.1f", scheduler.getMspt()))
+            .put("slice", String.format("%.2f", scheduler.getSlice() / (double) TimeUnit.MILLISECONDS.toNanos(1)))
+        ).send(sender);
+        return Result.OK;
+    }
+
+    private static ComponentVariable latency(String name, Latency latency) {
+        return ComponentVariable.init()
+            .put("name", name)
+            .put("calls", latency.count())
+            .put("average", String.format("%.2f", latency.average()))
+            .put("p99", String.format("%.2f", latency.percentile(99)))
+            .put("max", String.format("%.2f", latency.max()));
+    }
+
+    @Override
+    protected String requirePermission() {
+        return "chestsafe.stats";
+    }
+}
@@ -13,6 +13,7 @@ import org.bukkit.block.Block;
 import org.bukkit.command.CommandSender;
 import org.bukkit.entity.Player;
 
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.Deque;
 import java.util.List;
@@ -35,6 +36,13 @@ public class Transfer extends SubCommand {
 
     @Override
     protected Result onCommand(CommandSender sender, Queue<String> args) {
+        if (args.element().equalsIgnoreCase("all")) {
+            return transferAll(sender, args);
+        }
+        if (!(sender instanceof Player)) {
+            sender.sendMessage(MessageConfig.PLAYER_ONLY);
+            return Result.OK;
+        }
         Player player = (Player) sender;
 
         registry.getUUIDAsync(args.element()).thenAcceptSync(uuid -> {
@@ -51,6 +59,43 @@ public class Transfer extends SubCommand {
         return Result.OK;
     }
 
+    private Result transferAll(CommandSender sender, Queue<String> args) {
+        if (!sender.hasPermission("chestsafe.transfer.all")) {
+            message.get(sender).doNotHavePermission.apply().send(sender);
+            return Result.OK;
+        }
+        args.remove(); // all
+        if (args.size() < 2) {
+            message.get(sender).missingArgument.apply().send(sender);
+            return Result.ERROR;
+        }
+
+        String from = args.remove();
+        String to = args.remove();
+        registry.getMultipleUUIDAsync(Arrays.asList(from, to)).thenAcceptSync(map -> {
+            for (String name : Arrays.asList(from, to)) {
+                if (!map.containsKey(name)) {
+                    message.get(sender).playerNotFound.apply("name", name).send(sender);
+                    return;
+                }
+            }
+
+            // 1 statement, instead of clicking all chests.
+            repository.transferAll(map.get(from), map.get(to)).whenComplete((count, e) -> {
+                if (e != null) {
+                    message.get(sender).saveFailed.apply().send(sender);
+                    return;
+                }
+                ComponentVariable variable = ComponentVariable.init().put("from", from).put("to", to).put("count", count);
+                message.get(sender).transferredAll.apply(variable).send(sender);
+                if (sender instanceof Player) {
+                    message.get().transferredAll.apply(variable).console();
+                }
+            });
+        });
+        return Result.OK;
+    }
+
     private void transferOwner(Player player, Block block, UUID newOwner) {
         ComponentVariable variable = ComponentVariable.init();
         CommandUtils.checkProtection(message, repository, player, block, variable).ifPresent(protection -> {
@@ -62,10 +107,18 @@ public class Transfer extends SubCommand {
     @Override
     protected List<String> onTabComplete(CommandSender sender, Deque<String> args) {
         if (args.size() == 1) {
-            return Bukkit.getOnlinePlayers().stream()
+            List<String> result = Bukkit.getOnlinePlayers().stream()
                 .map(Player::getName)
                 .filter(str -> str.startsWith(args.getFirst()))
                 .collect(Collectors.toList());
+            if ("all".startsWith(args.getFirst()) && sender.hasPermission("chestsafe.transfer.all")) {
+                result.add(0, "all");
+            }
+            return result;
+        }
+        if (args.size() <= 3 && args.getFirst().equalsIgnoreCase("all")) {
+            args.removeFirst(); // remove "all"
+            return CommandUtils.tabCompletePlayer(args);
         }
 
         return Collections.emptyList();
@@ -73,7 +126,7 @@ public class Transfer extends SubCommand {
 
     @Override
     protected boolean isPlayerOnly() {
-        return true;
+        return false; // "all" can be run from console
     }
 
     @Override
@@ -29,12 +29,15 @@ public class MainConfig {
     public final boolean actionBar;
     public final boolean versionCheck;
     public final boolean hopperDestroy;
+    public final boolean pistonMove;
+    public final long metricsDump;
 
     public final boolean localeEnable;
     public final String localeDefault;
 
     public final Map<Material, ProtectionConfig> protectable = new EnumMap<>(Material.class);
 
+    public final SchedulerConfig scheduler;
     public final CleanupConfig cleanup;
     public final DatabaseConfig database;
     public final CacheConfig cache;
@@ -44,15 +47,13 @@ public class MainConfig {
         actionBar = config.getBoolean("actionBar");
         versionCheck = config.getBoolean("versionCheck");
         hopperDestroy = config.getBoolean("hopperDestroy");
+        pistonMove = config.getBoolean("pistonMove", false);
+        metricsDump = config.getLong("metrics.dump", 0);
 
         localeEnable = config.getBoolean("locale.enable");
         localeDefault = config.getString("locale.default");
 
         ProtectionConfig defaultValue = new ProtectionConfig(config.getConfigurationSection("default"));
-        for (Protection.Flag flag : Protection.Flag.values()) {
-            // Initialize unset flags
-            defaultValue.flag.putIfAbsent(flag, Boolean.FALSE);
-        }
 
         if (config.contains("protectable")) {
             for (String key : config.getConfigurationSection("protectable").getKeys(false)) {
@@ -63,23 +64,43 @@ public class MainConfig {
             }
         }
 
+        scheduler = new SchedulerConfig(config.getConfigurationSection("scheduler"));
         cleanup = new CleanupConfig(config.getConfigurationSection("cleanup"));
         database = new DatabaseConfig(config.getConfigurationSection("database"));
         cache = new CacheConfig(config.getConfigurationSection("cache"));
     }
 
+    public static class SchedulerConfig {
+        public final int budget;
+        public final int mspt;
+
+        private SchedulerConfig(ConfigurationSection config) {
+            int b = config == null ? 5 : config.getInt("budget", 5);
+            if (b >= 50 || b <= 0) {
+                ChestSafe.getInstance().getLogger().warning("range of scheduler.budget is 1-49");
+                b = 5;
+            }
+            budget = b;
+            mspt = config == null ? 45 : config.getInt("mspt", 45);
+        }
+    }
+
     public static class CleanupConfig {
         public final boolean enable;
         public final long delay;
         public final long interval;
         public final int limit;
         public final boolean unloaded;
+        public final boolean incremental;
+        public final long fullInterval;
 
         private CleanupConfig(ConfigurationSection config) {
             enable = config.getBoolean("enable", true);
             delay = config.getLong("delay", TimeUnit.MINUTES.toSeconds(10));
             interval = config.getLong("interval", TimeUnit.DAYS.toSeconds(1));
             unloaded = config.getBoolean("unloaded", false);
+            incremental = config.getBoolean("incremental", false);
+            fullInterval = config.getLong("fullInterval", TimeUnit.DAYS.toSeconds(7));
 
             int l = config.getInt("limit", 50);
             if (l >= 1000 || l <= 0) {
@@ -147,30 +168,80 @@ public class MainConfig {
     public static class CacheConfig {
         public final CacheFactory id;
         public final CacheFactory protection;
-        public final CacheFactory location;
+        public final int location; // size (-1: infinity, 0: disable)
+        public final boolean resident;
 
         private CacheConfig(ConfigurationSection config) {
             id = new SizedFactory(config.getInt("id", -1));
-            location = new SizedFactory(config.getInt("location", 30000));
+            location = config.getInt("location", 30000);
             protection = new SizedFactory(config.getInt("protection", 10000));
+            resident = config.getBoolean("resident", false);
         }
     }
 
     public static class ProtectionConfig {
         @SuppressWarnings("OptionalUsedAsFieldOrParameterType")
         public final Optional<Protection.Type> auto;
-        public final Map<Protection.Flag, Boolean> flag = new EnumMap<>(Protection.Flag.class);
+        public final Map<Protection.Flag, Boolean> flag;
+        /**
+         * Bit of {@link Protection.Flag#mask} is set if the flag is true by default.
+         */
+        private final int defaultFlags;
 
         private ProtectionConfig(ConfigurationSection config) {
             auto = getType(config);
+
+            Map<Protection.Flag, Boolean> flag = new EnumMap<>(Protection.Flag.class);
+            for (Protection.Flag f : Protection.Flag.values()) {
+                // Initialize unset flags
+                flag.put(f, Boolean.FALSE);
+            }
             flag.putAll(getFlag(config));
+            this.flag = Collections.unmodifiableMap(flag);
+            this.defaultFlags = defaultFlags(flag);
         }
 
         private ProtectionConfig(ConfigurationSection config, ProtectionConfig defaultValue) {
             auto = config.contains("auto") ? getType(config) : defaultValue.auto;
 
-            flag.putAll(defaultValue.flag);
+            Map<Protection.Flag, Boolean> flag = new EnumMap<>(defaultValue.flag);
             flag.putAll(getFlag(config));
+            this.flag = Collections.unmodifiableMap(flag);
+            this.defaultFlags = defaultFlags(flag);
+        }
+
+        private static int defaultFlags(Map<Protection.Flag, Boolean> flag) {
+            int bits = 0;
+            for (Map.Entry<Protection.Flag, Boolean> entry : flag.entrySet()) {
+                if (entry.getValue()) {
+                    bits |= entry.getKey().mask;
+                }
+            }
+            return bits;
+        }
+
+        /**
+         * <p>Get the effective flag value.</p>
+         * <p>Flags not set in the protection fall back to this config.</p>
+         *
+         * @param protection protection
+         * @param flag       flag
+         * @return flag value
+         */
+        public boolean getFlag(Protection protection, Protection.Flag flag) {
+            return getFlag(protection.getFlagBits(), flag);
+        }
+
+        /**
+         * Get the effective flag value.
+         *
+         * @param bits flag bits (see {@link Protection#getFlagBits()})
+         * @param flag flag
+         * @return flag value
+         */
+        public boolean getFlag(int bits, Protection.Flag flag) {
+            // set ? value : default
+            return ((((bits >>> Protection.Flag.VALUE_SHIFT) & bits) | (defaultFlags & ~bits)) & flag.mask) != 0;
         }
 
         private Map<Protection.Flag, Boolean> getFlag(ConfigurationSection config) {
@@ -66,13 +66,38 @@ public class MessageConfig {
      */
     public final ComponentParser flagSet;
     public final ComponentParser memberChanged;
+    /**
+     * name,count
+     */
+    public final ComponentParser memberAddedAll;
     public final ComponentParser transferSuccess;
     public final ComponentParser transferWarning;
+    /**
+     * from,to,count
+     */
+    public final ComponentParser transferredAll;
     /**
      * world, x, y, z, type, block
      */
     public final ComponentParser hopperDestroy;
     public final ComponentParser reloaded;
+    /**
+     * world,count
+     */
+    public final ComponentParser purged;
+    /**
+     * world
+     */
+    public final ComponentParser purgeConfirm;
+    /**
+     * world
+     */
+    public final ComponentParser purgeFailed;
+    /**
+     * world
+     */
+    public final ComponentParser unknownWorld;
+    public final ComponentParser saveFailed;
 
     /**
      * type,owner,uuid,members,flags
@@ -86,6 +111,9 @@ public class MessageConfig {
 
     public final ActionBar actionbar;
     public final CleanupMessage cleanup;
+    public final ListMessage list;
+    public final GroupMessage group;
+    public final StatsMessage stats;
     public final HelpMessage help;
 
     @PackagePrivate
@@ -111,10 +139,17 @@ public class MessageConfig {
         persistDisabled = parse(config, "persistDisabled");
         flagSet = parse(config, "flagSet");
         memberChanged = parse(config, "memberChanged");
+        memberAddedAll = parse(config, "memberAddedAll");
         transferSuccess = parse(config, "transferSuccess");
         transferWarning = parse(config, "transferWarning");
+        transferredAll = parse(config, "transferredAll");
         hopperDestroy = parse(config, "hopperDestroy");
         reloaded = parse(config, "reloaded");
+        purged = parse(config, "purged");
+        purgeConfirm = parse(config, "purgeConfirm");
+        purgeFailed = parse(config, "purgeFailed");
+        unknownWorld = parse(config, "unknownWorld");
+        saveFailed = parse(config, "saveFailed");
 
         info = config.getStringList("info")
             .stream()
@@ -127,6 +162,9 @@ public class MessageConfig {
 
         actionbar = new MessageConfig.ActionBar(config);
         cleanup = new MessageConfig.CleanupMessage(config.getConfigurationSection("cleanup"));
+        list = new MessageConfig.ListMessage(config.getConfigurationSection("list"));
+        group = new MessageConfig.GroupMessage(config.getConfigurationSection("group"));
+        stats = new MessageConfig.StatsMessage(config.getConfigurationSection("stats"));
         help = new MessageConfig.HelpMessage(config.getConfigurationSection("help"));
     }
 
@@ -161,6 +199,10 @@ public class MessageConfig {
          * speed
          */
         public final ComponentParser start;
+        /**
+         * limit,start,checked,removed
+         */
+        public final ComponentParser resumed;
         /**
          * checked,removed
          */
@@ -175,6 +217,7 @@ public class MessageConfig {
 
         private CleanupMessage(ConfigurationSection config) {
             start = parse(config, "start");
+            resumed = parse(config, "resumed");
             progress = parse(config, "progress");
             removed = parse(config, "removed");
             end = parse(config, "end");
@@ -183,6 +226,117 @@ public class MessageConfig {
         }
     }
 
+    public static class ListMessage {
+        /**
+         * name,page
+         */
+        public final ComponentParser header;
+        /**
+         * world,x,y,z
+         */
+        public final ComponentParser owner;
+        /**
+         * world,x,y,z
+         */
+        public final ComponentParser member;
+        public final ComponentParser empty;
+        /**
+         * command
+         */
+        public final ComponentParser next;
+
+        private ListMessage(ConfigurationSection config) {
+            header = parse(config, "header");
+            owner = parse(config.getString("owner"));
+            member = parse(config.getString("member"));
+            empty = parse(config, "empty");
+            next = parse(config.getString("next"));
+        }
+    }
+
+    public static class GroupMessage {
+        /**
+         * name
+         */
+        public final ComponentParser created;
+        /**
+         * name
+         */
+        public final ComponentParser deleted;
+        /**
+         * name
+         */
+        public final ComponentParser alreadyExists;
+        /**
+         * name
+         */
+        public final ComponentParser notFound;
+        /**
+         * name
+         */
+        public final ComponentParser changed;
+        /**
+         * name,type,block
+         */
+        public final ComponentParser set;
+        /**
+         * type,block
+         */
+        public final ComponentParser unset;
+        /**
+         * name,member
+         */
+        public final ComponentParser list;
+        public final ComponentParser empty;
+
+        private GroupMessage(ConfigurationSection config) {
+            created = parse(config, "created");
+            deleted = parse(config, "deleted");
+            alreadyExists = parse(config, "alreadyExists");
+            notFound = parse(config, "notFound");
+            changed = parse(config, "changed");
+            set = parse(config, "set");
+            unset = parse(config, "unset");
+            list = parse(config.getString("list"));
+            empty = parse(config, "empty");
+        }
+    }
+
+    public static class StatsMessage {
+        public final ComponentParser cache;
+        /**
+         * name,ratio,hit,negative,miss,evicted,size
+         */
+        public final ComponentParser cacheEntry;
+        public final ComponentParser database;
+        /**
+         * name,calls,average,p99,max
+         */
+        public final ComponentParser latency;
+        /**
+         * active,idle,waiting,timeout
+         */
+        public final ComponentParser pool;
+        /**
+         * calls,average,p99,max
+         */
+        public final ComponentParser poolWait;
+        /**
+         * mspt,slice
+         */
+        public final ComponentParser scheduler;
+
+        private StatsMessage(ConfigurationSection config) {
+            cache = parse(config, "cache");
+            cacheEntry = parse(config.getString("cacheEntry"));
+            database = parse(config, "database");
+            latency = parse(config.getString("latency"));
+            pool = parse(config, "pool");
+            poolWait = parse(config.getString("poolWait"));
+            scheduler = parse(config, "scheduler");
+        }
+    }
+
     public static class HelpMessage {
         public final ComponentParser private_;
         public final ComponentParser public_;
@@ -193,6 +347,10 @@ public class MessageConfig {
         public final ComponentParser transfer;
         public final ComponentParser persist;
         public final ComponentParser cleanup;
+        public final ComponentParser purge;
+        public final ComponentParser stats;
+        public final ComponentParser list;
+        public final ComponentParser group;
         public final ComponentParser reload;
         public final ComponentParser version;
         public final ComponentParser help;
@@ -216,6 +374,10 @@ public class MessageConfig {
             transfer = parse(config.getString("transfer"));
             persist = parse(config.getString("persist"));
             cleanup = parse(config.getString("cleanup"));
+            purge = parse(config.getString("purge"));
+            stats = parse(config.getString("stats"));
+            list = parse(config.getString("list"));
+            group = parse(config.getString("group"));
             reload = parse(config.getString("reload"));
             version = parse(config.getString("version"));
             help = parse(config.getString("help"));
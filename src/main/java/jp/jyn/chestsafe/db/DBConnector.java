@@ -5,11 +5,16 @@ import com.zaxxer.hikari.HikariDataSource;
 import jp.jyn.chestsafe.ChestSafe;
 import jp.jyn.chestsafe.config.MainConfig;
 import jp.jyn.chestsafe.db.driver.IDDriver;
+import jp.jyn.chestsafe.db.driver.MetaDriver;
+import jp.jyn.chestsafe.db.driver.Migrator;
 import jp.jyn.chestsafe.db.driver.ProtectionDriver;
 import jp.jyn.chestsafe.db.driver.mysql.IDMysql;
+import jp.jyn.chestsafe.db.driver.mysql.MigratorMysql;
 import jp.jyn.chestsafe.db.driver.mysql.ProtectionMysql;
 import jp.jyn.chestsafe.db.driver.sqlite.IDSqlite;
+import jp.jyn.chestsafe.db.driver.sqlite.MigratorSqlite;
 import jp.jyn.chestsafe.db.driver.sqlite.ProtectionSqlite;
+import jp.jyn.chestsafe.util.metrics.Metrics;
 
 import java.sql.Connection;
 import java.sql.ResultSet;
@@ -22,8 +27,9 @@ public class DBConnector {
 
     public final IDDriver idDriver;
     public final ProtectionDriver protectionDriver;
+    public final MetaDriver metaDriver;
 
-    public DBConnector(MainConfig.DatabaseConfig config) {
+    public DBConnector(MainConfig.DatabaseConfig config, Metrics metrics) {
         HikariConfig hikariConfig = new HikariConfig();
 
         hikariConfig.setJdbcUrl(config.url);
@@ -31,6 +37,7 @@ public class DBConnector {
         hikariConfig.setAutoCommit(true);
         hikariConfig.setConnectionInitSql(config.init);
         hikariConfig.setDataSourceProperties(config.properties);
+        hikariConfig.setMetricsTrackerFactory(metrics.hikari());
 
         if (config.maximumPoolSize > 0) {
             hikariConfig.setMaximumPoolSize(config.maximumPoolSize);
@@ -53,26 +60,31 @@ public class DBConnector {
             // SQLite
             logger.info("Use SQLite");
             hikari = new HikariDataSource(hikariConfig);
-            checkVersion();
+            checkVersion(new MigratorSqlite());
 
-            idDriver = new IDSqlite(hikari);
-            protectionDriver = new ProtectionSqlite(hikari);
+            idDriver = new IDSqlite(hikari, metrics);
+            protectionDriver = new ProtectionSqlite(hikari, metrics);
         } else if (config.url.startsWith("jdbc:mysql:")) {
             // MySQL
             logger.info("Use MySQL");
             hikariConfig.setUsername(config.username);
             hikariConfig.setPassword(config.password);
+            if (!config.properties.containsKey("rewriteBatchedStatements")) {
+                // Send JDBC batch as multi-row INSERT.
+                hikariConfig.addDataSourceProperty("rewriteBatchedStatements", "true");
+            }
             hikari = new HikariDataSource(hikariConfig);
-            checkVersion();
+            checkVersion(new MigratorMysql());
 
-            idDriver = new IDMysql(hikari);
-            protectionDriver = new ProtectionMysql(hikari);
+            idDriver = new IDMysql(hikari, metrics);
+            protectionDriver = new ProtectionMysql(hikari, metrics);
         } else {
             throw new IllegalArgumentException("Unknown jdbc");
         }
+        metaDriver = new MetaDriver(hikari);
     }
 
-    private void checkVersion() {
+    private void checkVersion(Migrator migrator) {
         try (Connection connection = hikari.getConnection();
              Statement statement = connection.createStatement()) {
             statement.executeUpdate(
@@ -82,14 +94,28 @@ public class DBConnector {
                     ")"
             );
 
+            int version;
             try (ResultSet resultSet = statement.executeQuery("SELECT `value` FROM `meta` WHERE `key`='dbversion'")) {
-                if (resultSet.next()) {
-                    if (!resultSet.getString("value").equals("1")) {
-                        throw new RuntimeException("An incompatible change was made (database can not be downgraded)");
-                    }
-                } else {
-                    statement.executeUpdate("INSERT INTO `meta` VALUES('dbversion','1')");
+                if (!resultSet.next()) {
+                    statement.executeUpdate("INSERT INTO `meta` VALUES('dbversion','" + Migrator.VERSION + "')");
+                    return;
                 }
+                version = Integer.parseInt(resultSet.getString("value"));
+            }
+
+            if (version > Migrator.VERSION) {
+                throw new RuntimeException("An incompatible change was made (database can not be downgraded)");
+            }
+            if (version == Migrator.VERSION) {
+                return;
+            }
+
+            ChestSafe.getInstance().getLogger().info(String.format("Migrate database (version %d -> %d)", version, Migrator.VERSION));
+            connection.setAutoCommit(false);
+            try {
+                migrator.migrate(connection, version);
+            } finally {
+                connection.setAutoCommit(true);
             }
         } catch (SQLException e) {
             throw new RuntimeException(e);
@@ -1,33 +1,97 @@
 package jp.jyn.chestsafe.db.driver;
 
 import com.zaxxer.hikari.HikariDataSource;
+import jp.jyn.chestsafe.util.metrics.Latency;
+import jp.jyn.chestsafe.util.metrics.Metrics;
 import jp.jyn.jbukkitlib.uuid.UUIDBytes;
 
 import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.sql.Statement;
 import java.util.AbstractMap;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
 import java.util.OptionalInt;
+import java.util.Set;
 import java.util.UUID;
+import java.util.function.BiConsumer;
 
 public abstract class IDDriver {
+    // Number of chunk columns (cx) in one area query.
+    private final static int AREA_CHUNK_COLUMNS = 64;
+    // Above this, area is searched by a single range scan.
+    private final static int AREA_MAX_COLUMNS = 1024;
+    // Number of ids in one IN (...) list.
+    private final static int ID_BATCH = 500;
+
     private final HikariDataSource hikari;
+    private final Metrics metrics;
 
-    protected IDDriver(HikariDataSource hikari) {
+    protected IDDriver(HikariDataSource hikari, Metrics metrics) {
         this.hikari = hikari;
+        this.metrics = metrics;
+    }
+
+    /**
+     * Configure statement to read large result without loading all rows into memory.
+     *
+     * @param statement statement
+     * @throws SQLException SQLException
+     */
+    protected void setStreaming(PreparedStatement statement) throws SQLException {
+        statement.setFetchSize(1000);
+    }
+
+    /**
+     * Build INSERT statement for the single unique column that does not fail on duplicate key.
+     * If the row already exists, the statement must either return existing id as generated key or update nothing.
+     *
+     * @param table  table name
+     * @param column column name
+     * @return SQL
+     */
+    protected abstract String insertIgnore(String table, String column);
+
+    /**
+     * Execute INSERT statement prepared with {@link Statement#RETURN_GENERATED_KEYS}.
+     *
+     * @param statement statement
+     * @return generated id, or 0 if nothing was inserted.
+     * @throws SQLException SQLException
+     */
+    private static int executeInsert(PreparedStatement statement) throws SQLException {
+        if (statement.executeUpdate() == 0) {
+            return 0;
+        }
+        try (ResultSet keys = statement.getGeneratedKeys()) {
+            return keys.next() ? keys.getInt(1) : 0;
+        }
+    }
+
+    private static String placeholder(int size) {
+        StringBuilder builder = new StringBuilder(size * 2);
+        builder.append('?');
+        for (int i = 1; i < size; i++) {
+            builder.append(",?");
+        }
+        return builder.toString();
     }
 
     // ======== id_world ========
     // | id(int) | name(String) |
     // ==========================
     public int worldToId(String name) {
-        try (Connection connection = hikari.getConnection();
+        try (Latency.Timer ignore = metrics.time("id.worldToId");
+             Connection connection = hikari.getConnection();
              PreparedStatement statement = connection.prepareStatement(
                  "SELECT `id` FROM `id_world` WHERE `name`=?"
              )) {
@@ -40,13 +104,16 @@ public abstract class IDDriver {
 
             // create id
             try (PreparedStatement s2 = connection.prepareStatement(
-                "INSERT INTO `id_world` (`name`) VALUES (?)"
+                insertIgnore("id_world", "name"), Statement.RETURN_GENERATED_KEYS
             )) {
                 s2.setString(1, name);
-                s2.executeUpdate();
+                int id = executeInsert(s2);
+                if (id != 0) {
+                    return id;
+                }
             }
 
-            statement.setString(1, name);
+            // Inserted by another server at the same time.
             try (ResultSet rs = statement.executeQuery()) {
                 if (rs.next()) {
                     return rs.getInt(1);
@@ -58,8 +125,33 @@ public abstract class IDDriver {
         throw new RuntimeException("Failed to assign world ID");
     }
 
+    /**
+     * Get world id without assigning a new one.
+     *
+     * @param name world name
+     * @return world id, empty if the world is unknown.
+     */
+    public Optional<Integer> findWorldId(String name) {
+        try (Latency.Timer ignore = metrics.time("id.findWorldId");
+             Connection connection = hikari.getConnection();
+             PreparedStatement statement = connection.prepareStatement(
+                 "SELECT `id` FROM `id_world` WHERE `name`=?"
+             )) {
+            statement.setString(1, name);
+            try (ResultSet rs = statement.executeQuery()) {
+                if (rs.next()) {
+                    return Optional.of(rs.getInt(1));
+                }
+            }
+        } catch (SQLException e) {
+            throw new RuntimeException(e);
+        }
+        return Optional.empty();
+    }
+
     public Optional<String> idToWorld(int id) {
-        try (Connection connection = hikari.getConnection();
+        try (Latency.Timer ignore = metrics.time("id.idToWorld");
+             Connection connection = hikari.getConnection();
              PreparedStatement statement = connection.prepareStatement(
                  "SELECT `name` FROM `id_world` WHERE `id`=?"
              )) {
@@ -81,7 +173,8 @@ public abstract class IDDriver {
     public int UUIDToId(UUID uuid) {
         byte[] bytes = UUIDBytes.toBytes(uuid);
 
-        try (Connection connection = hikari.getConnection();
+        try (Latency.Timer ignore = metrics.time("id.UUIDToId");
+             Connection connection = hikari.getConnection();
              PreparedStatement statement = connection.prepareStatement(
                  "SELECT `id` FROM `id_user` WHERE `uuid`=?"
              )) {
@@ -94,13 +187,16 @@ public abstract class IDDriver {
 
             // create id
             try (PreparedStatement s2 = connection.prepareStatement(
-                "INSERT INTO `id_user` (`uuid`) VALUES (?)"
+                insertIgnore("id_user", "uuid"), Statement.RETURN_GENERATED_KEYS
             )) {
                 s2.setBytes(1, bytes);
-                s2.executeUpdate();
+                int id = executeInsert(s2);
+                if (id != 0) {
+                    return id;
+                }
             }
 
-            statement.setBytes(1, bytes);
+            // Inserted by another server at the same time.
             try (ResultSet rs = statement.executeQuery()) {
                 if (rs.next()) {
                     return rs.getInt(1);
@@ -112,8 +208,33 @@ public abstract class IDDriver {
         throw new RuntimeException("Failed to assign user ID");
     }
 
+    /**
+     * Get user id without assigning a new one.
+     *
+     * @param uuid user uuid
+     * @return user id, empty if the user is unknown.
+     */
+    public OptionalInt findUserId(UUID uuid) {
+        try (Latency.Timer ignore = metrics.time("id.findUserId");
+             Connection connection = hikari.getConnection();
+             PreparedStatement statement = connection.prepareStatement(
+                 "SELECT `id` FROM `id_user` WHERE `uuid`=?"
+             )) {
+            statement.setBytes(1, UUIDBytes.toBytes(uuid));
+            try (ResultSet rs = statement.executeQuery()) {
+                if (rs.next()) {
+                    return OptionalInt.of(rs.getInt(1));
+                }
+            }
+        } catch (SQLException e) {
+            throw new RuntimeException(e);
+        }
+        return OptionalInt.empty();
+    }
+
     public Optional<UUID> idToUUID(int id) {
-        try (Connection connection = hikari.getConnection();
+        try (Latency.Timer ignore = metrics.time("id.idToUUID");
+             Connection connection = hikari.getConnection();
              PreparedStatement statement = connection.prepareStatement(
                  "SELECT `uuid` FROM `id_user` WHERE `id`=?"
              )) {
@@ -133,7 +254,8 @@ public abstract class IDDriver {
     // | id(int) | world(int) | x(int) | y(int) | z(int) |
     // ===================================================
     public OptionalInt locationToId(int world, int x, int y, int z) {
-        try (Connection connection = hikari.getConnection();
+        try (Latency.Timer ignore = metrics.time("id.locationToId");
+             Connection connection = hikari.getConnection();
              PreparedStatement statement = connection.prepareStatement(
                  "SELECT `id` FROM `id_protection` WHERE `world`=? AND `x`=? AND `y`=? AND `z`=?"
              )) {
@@ -157,7 +279,8 @@ public abstract class IDDriver {
     }
 
     public Optional<IntLocation> idToLocation(int id) {
-        try (Connection connection = hikari.getConnection();
+        try (Latency.Timer ignore = metrics.time("id.idToLocation");
+             Connection connection = hikari.getConnection();
              PreparedStatement statement = connection.prepareStatement(
                  "SELECT `world`,`x`,`y`,`z` FROM `id_protection` WHERE `id`=?"
              )) {
@@ -178,34 +301,225 @@ public abstract class IDDriver {
         return Optional.empty();
     }
 
+    /**
+     * <p>Get protection ids at the locations.</p>
+     * <p>Locations are searched by IN lists of each coordinate in one query per world (and per {@value #ID_BATCH} locations),
+     * rows matched by the combination of coordinates but not requested are dropped.</p>
+     *
+     * @param locations locations
+     * @return location to id, locations not found are not included.
+     */
+    public Map<IntLocation, Integer> locationsToIds(Collection<IntLocation> locations) {
+        Map<IntLocation, Integer> result = new HashMap<>(locations.size() * 2);
+        if (locations.isEmpty()) {
+            return result;
+        }
+
+        Map<Integer, List<IntLocation>> worlds = new HashMap<>();
+        for (IntLocation location : locations) {
+            worlds.computeIfAbsent(location.world, k -> new ArrayList<>()).add(location);
+        }
+
+        try (Latency.Timer ignore = metrics.time("id.locationsToIds");
+             Connection connection = hikari.getConnection()) {
+            for (Map.Entry<Integer, List<IntLocation>> entry : worlds.entrySet()) {
+                int world = entry.getKey();
+                List<IntLocation> list = entry.getValue();
+                for (int from = 0; from < list.size(); from += ID_BATCH) {
+                    Set<IntLocation> batch = new HashSet<>(list.subList(from, Math.min(list.size(), from + ID_BATCH)));
+                    Set<Integer> cx = new LinkedHashSet<>(), cz = new LinkedHashSet<>();
+                    Set<Integer> x = new LinkedHashSet<>(), y = new LinkedHashSet<>(), z = new LinkedHashSet<>();
+                    for (IntLocation location : batch) {
+                        cx.add(location.x >> 4);
+                        cz.add(location.z >> 4);
+                        x.add(location.x);
+                        y.add(location.y);
+                        z.add(location.z);
+                    }
+
+                    try (PreparedStatement statement = connection.prepareStatement(
+                        "SELECT `id`,`x`,`y`,`z` FROM `id_protection` WHERE `world`=?" +
+                            " AND `cx` IN (" + placeholder(cx.size()) + ") AND `cz` IN (" + placeholder(cz.size()) + ")" +
+                            " AND `x` IN (" + placeholder(x.size()) + ") AND `y` IN (" + placeholder(y.size()) + ")" +
+                            " AND `z` IN (" + placeholder(z.size()) + ")"
+                    )) {
+                        int index = 1;
+                        statement.setInt(index++, world);
+                        for (Set<Integer> values : Arrays.asList(cx, cz, x, y, z)) {
+                            for (int value : values) {
+                                statement.setInt(index++, value);
+                            }
+                        }
+                        try (ResultSet resultSet = statement.executeQuery()) {
+                            while (resultSet.next()) {
+                                IntLocation location = new IntLocation(
+                                    world,
+                                    resultSet.getInt("x"),
+                                    resultSet.getInt("y"),
+                                    resultSet.getInt("z")
+                                );
+                                if (batch.contains(location)) {
+                                    result.put(location, resultSet.getInt("id"));
+                                }
+                            }
+                        }
+                    }
+                }
+            }
+        } catch (SQLException e) {
+            throw new RuntimeException(e);
+        }
+        return result;
+    }
+
+    /**
+     * Get protection locations.
+     *
+     * @param ids protection ids
+     * @return id to location, ids not found are not included.
+     */
+    public Map<Integer, IntLocation> idToLocations(int[] ids) {
+        Map<Integer, IntLocation> result = new HashMap<>(ids.length * 2);
+        if (ids.length == 0) {
+            return result;
+        }
+
+        try (Latency.Timer ignore = metrics.time("id.idToLocations");
+             Connection connection = hikari.getConnection()) {
+            for (int from = 0; from < ids.length; from += ID_BATCH) {
+                int to = Math.min(ids.length, from + ID_BATCH);
+                try (PreparedStatement statement = connection.prepareStatement(
+                    "SELECT `id`,`world`,`x`,`y`,`z` FROM `id_protection` WHERE `id` IN (" + placeholder(to - from) + ")"
+                )) {
+                    for (int i = from; i < to; i++) {
+                        statement.setInt(i - from + 1, ids[i]);
+                    }
+                    try (ResultSet resultSet = statement.executeQuery()) {
+                        while (resultSet.next()) {
+                            result.put(resultSet.getInt("id"), new IntLocation(
+                                resultSet.getInt("world"),
+                                resultSet.getInt("x"),
+                                resultSet.getInt("y"),
+                                resultSet.getInt("z")
+                            ));
+                        }
+                    }
+                }
+            }
+        } catch (SQLException e) {
+            throw new RuntimeException(e);
+        }
+        return result;
+    }
+
     public int add(int world, int x, int y, int z) {
-        try (Connection connection = hikari.getConnection();
+        try (Latency.Timer ignore = metrics.time("id.add");
+             Connection connection = hikari.getConnection();
              PreparedStatement statement = connection.prepareStatement(
-                 "INSERT INTO `id_protection` (`world`,`x`,`y`,`z`) VALUES (?,?,?,?)"
+                 "INSERT INTO `id_protection` (`world`,`x`,`y`,`z`,`cx`,`cz`) VALUES (?,?,?,?,?,?)",
+                 Statement.RETURN_GENERATED_KEYS
              )) {
             statement.setInt(1, world);
             statement.setInt(2, x);
             statement.setInt(3, y);
             statement.setInt(4, z);
-            statement.executeUpdate();
-
-            OptionalInt id = locationToId(world, x, y, z);
-            if (id.isPresent()) {
-                return id.getAsInt();
-            } else {
-                throw new RuntimeException("Failed to assign protection ID");
+            statement.setInt(5, x >> 4);
+            statement.setInt(6, z >> 4);
+            int id = executeInsert(statement);
+            if (id != 0) {
+                return id;
             }
         } catch (SQLException e) {
             throw new RuntimeException(e);
         }
+
+        // The driver did not return the key.
+        return locationToId(world, x, y, z).orElseThrow(() -> new RuntimeException("Failed to assign protection ID"));
     }
 
     public int add(IntLocation location) {
         return add(location.world, location.x, location.y, location.z);
     }
 
+    /**
+     * Add protections in a single transaction.
+     *
+     * @param locations protection locations
+     * @return protection ids (same order as locations)
+     */
+    public int[] addAll(List<IntLocation> locations) {
+        final int batchSize = 1000;
+        int[] ids = new int[locations.size()];
+        if (ids.length == 0) {
+            return ids;
+        }
+
+        try (Latency.Timer ignore = metrics.time("id.addAll");
+             Connection connection = hikari.getConnection()) {
+            try {
+                connection.setAutoCommit(false);
+                try (PreparedStatement insert = connection.prepareStatement(
+                    "INSERT INTO `id_protection` (`world`,`x`,`y`,`z`,`cx`,`cz`) VALUES (?,?,?,?,?,?)",
+                    Statement.RETURN_GENERATED_KEYS
+                );
+                     PreparedStatement select = connection.prepareStatement(
+                         "SELECT `id` FROM `id_protection` WHERE `world`=? AND `x`=? AND `y`=? AND `z`=?"
+                     )) {
+                    for (int from = 0; from < ids.length; from += batchSize) {
+                        int to = Math.min(ids.length, from + batchSize);
+                        for (IntLocation location : locations.subList(from, to)) {
+                            insert.setInt(1, location.world);
+                            insert.setInt(2, location.x);
+                            insert.setInt(3, location.y);
+                            insert.setInt(4, location.z);
+                            insert.setInt(5, location.x >> 4);
+                            insert.setInt(6, location.z >> 4);
+                            insert.addBatch();
+                        }
+                        insert.executeBatch();
+
+                        int i = from;
+                        try (ResultSet keys = insert.getGeneratedKeys()) {
+                            while (i < to && keys.next()) {
+                                ids[i++] = keys.getInt(1);
+                            }
+                        }
+                        if (i == to) {
+                            continue;
+                        }
+
+                        // Some drivers (e.g. SQLite) return only the last key of a batch.
+                        for (i = from; i < to; i++) {
+                            IntLocation location = locations.get(i);
+                            select.setInt(1, location.world);
+                            select.setInt(2, location.x);
+                            select.setInt(3, location.y);
+                            select.setInt(4, location.z);
+                            try (ResultSet resultSet = select.executeQuery()) {
+                                if (!resultSet.next()) {
+                                    throw new SQLException("Failed to assign protection ID");
+                                }
+                                ids[i] = resultSet.getInt(1);
+                            }
+                        }
+                    }
+                }
+                connection.commit();
+            } catch (SQLException e) {
+                connection.rollback();
+                throw e;
+            } finally {
+                connection.setAutoCommit(true);
+            }
+        } catch (SQLException e) {
+            throw new RuntimeException(e);
+        }
+        return ids;
+    }
+
     public void remove(int id) {
-        try (Connection connection = hikari.getConnection();
+        try (Latency.Timer ignore = metrics.time("id.remove");
+             Connection connection = hikari.getConnection();
              PreparedStatement statement = connection.prepareStatement(
                  "DELETE FROM `id_protection` WHERE `id`=?"
              )) {
@@ -216,16 +530,57 @@ public abstract class IDDriver {
         }
     }
 
+    /**
+     * Remove protections in a single transaction.
+     *
+     * @param ids protection ids
+     */
+    public void removeAll(int[] ids) {
+        if (ids.length == 0) {
+            return;
+        }
+
+        try (Latency.Timer ignore = metrics.time("id.removeAll");
+             Connection connection = hikari.getConnection()) {
+            try {
+                connection.setAutoCommit(false);
+                for (int from = 0; from < ids.length; from += ID_BATCH) {
+                    int to = Math.min(ids.length, from + ID_BATCH);
+                    // The related table is deleted with FOREIGN KEY
+                    try (PreparedStatement statement = connection.prepareStatement(
+                        "DELETE FROM `id_protection` WHERE `id` IN (" + placeholder(to - from) + ")"
+                    )) {
+                        for (int i = from; i < to; i++) {
+                            statement.setInt(i - from + 1, ids[i]);
+                        }
+                        statement.executeUpdate();
+                    }
+                }
+                connection.commit();
+            } catch (SQLException e) {
+                connection.rollback();
+                throw e;
+            } finally {
+                connection.setAutoCommit(true);
+            }
+        } catch (SQLException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
     public void move(int id, int newWorld, int newX, int newY, int newZ) {
-        try (Connection connection = hikari.getConnection();
+        try (Latency.Timer ignore = metrics.time("id.move");
+             Connection connection = hikari.getConnection();
              PreparedStatement statement = connection.prepareStatement(
-                 "UPDATE `id_protection` SET `world`=?, `x`=?, `y`=?, `z`=? WHERE `id`=?"
+                 "UPDATE `id_protection` SET `world`=?, `x`=?, `y`=?, `z`=?, `cx`=?, `cz`=? WHERE `id`=?"
              )) {
             statement.setInt(1, newWorld);
             statement.setInt(2, newX);
             statement.setInt(3, newY);
             statement.setInt(4, newZ);
-            statement.setInt(5, id);
+            statement.setInt(5, newX >> 4);
+            statement.setInt(6, newZ >> 4);
+            statement.setInt(7, id);
             statement.executeUpdate();
         } catch (SQLException e) {
             throw new RuntimeException(e);
@@ -236,26 +591,109 @@ public abstract class IDDriver {
         move(id, location.world, location.x, location.y, location.z);
     }
 
+    /**
+     * Move protections in a single transaction.
+     *
+     * @param locations id to new location, updated in iteration order.
+     */
+    public void moveAll(Map<Integer, IntLocation> locations) {
+        if (locations.isEmpty()) {
+            return;
+        }
+
+        try (Latency.Timer ignore = metrics.time("id.moveAll");
+             Connection connection = hikari.getConnection()) {
+            try {
+                connection.setAutoCommit(false);
+                try (PreparedStatement statement = connection.prepareStatement(
+                    "UPDATE `id_protection` SET `world`=?, `x`=?, `y`=?, `z`=?, `cx`=?, `cz`=? WHERE `id`=?"
+                )) {
+                    for (Map.Entry<Integer, IntLocation> entry : locations.entrySet()) {
+                        IntLocation location = entry.getValue();
+                        statement.setInt(1, location.world);
+                        statement.setInt(2, location.x);
+                        statement.setInt(3, location.y);
+                        statement.setInt(4, location.z);
+                        statement.setInt(5, location.x >> 4);
+                        statement.setInt(6, location.z >> 4);
+                        statement.setInt(7, entry.getKey());
+                        statement.addBatch();
+                    }
+                    statement.executeBatch();
+                }
+                connection.commit();
+            } catch (SQLException e) {
+                connection.rollback();
+                throw e;
+            } finally {
+                connection.setAutoCommit(true);
+            }
+        } catch (SQLException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
     public Collection<Integer> searchArea(int world, int x1, int y1, int z1, int x2, int y2, int z2) {
         List<Integer> result = new ArrayList<>();
+        for (Map.Entry<Integer, IntLocation> entry : getProtections(world, x1, y1, z1, x2, y2, z2)) {
+            result.add(entry.getKey());
+        }
+        return result;
+    }
+
+    /**
+     * <p>Get protections within area.</p>
+     * <p>The area is converted to chunk ranges so that the (`world`,`cx`,`cz`) index can be used.
+     * Each query covers up to {@value #AREA_CHUNK_COLUMNS} chunk columns with an exact `cz` range.</p>
+     *
+     * @param world world
+     * @param x1    x1
+     * @param y1    y1
+     * @param z1    z1
+     * @param x2    x2
+     * @param y2    y2
+     * @param z2    z2
+     * @return protection id and location
+     */
+    public List<Map.Entry<Integer, IntLocation>> getProtections(int world, int x1, int y1, int z1, int x2, int y2, int z2) {
+        List<Map.Entry<Integer, IntLocation>> result = new ArrayList<>();
         int minX = Math.min(x1, x2), maxX = Math.max(x1, x2);
         int minY = Math.min(y1, y2), maxY = Math.max(y1, y2);
         int minZ = Math.min(z1, z2), maxZ = Math.max(z1, z2);
+        int minCX = minX >> 4, maxCX = maxX >> 4;
+
+        long columns = (long) maxCX - minCX + 1;
+        try (Latency.Timer ignore = metrics.time("id.getProtectionsInArea");
+             Connection connection = hikari.getConnection()) {
+            if (columns > AREA_MAX_COLUMNS) {
+                // Too large, a single range scan is cheaper than many IN lists.
+                try (PreparedStatement statement = connection.prepareStatement(
+                    "SELECT `id`,`x`,`y`,`z` FROM `id_protection` WHERE `world`=? AND (`cx` BETWEEN ? AND ?) AND (`cz` BETWEEN ? AND ?)" +
+                        " AND (`x` BETWEEN ? AND ?) AND (`y` BETWEEN ? AND ?) AND (`z` BETWEEN ? AND ?)"
+                )) {
+                    statement.setInt(1, world);
+                    statement.setInt(2, minCX);
+                    statement.setInt(3, maxCX);
+                    setArea(statement, 4, minX, minY, minZ, maxX, maxY, maxZ);
+                    readArea(statement, world, result);
+                }
+                return result;
+            }
 
-        try (Connection connection = hikari.getConnection();
-             PreparedStatement statement = connection.prepareStatement(
-                 "SELECT `id` FROM `id_protection` WHERE `world`=? AND (`x` BETWEEN ? AND ?) AND (`y` BETWEEN ? AND ?) AND (`z` BETWEEN ? AND ?)"
-             )) {
-            statement.setInt(1, world);
-            statement.setInt(2, minX);
-            statement.setInt(3, maxX);
-            statement.setInt(4, minY);
-            statement.setInt(5, maxY);
-            statement.setInt(6, minZ);
-            statement.setInt(7, maxZ);
-            try (ResultSet resultSet = statement.executeQuery()) {
-                while (resultSet.next()) {
-                    result.add(resultSet.getInt(1));
+            // (`cx` IN (...) AND `cz` BETWEEN) is a set of exact ranges on the index.
+            for (int from = minCX; from <= maxCX; from += AREA_CHUNK_COLUMNS) {
+                int to = (int) Math.min(maxCX, (long) from + AREA_CHUNK_COLUMNS - 1);
+                try (PreparedStatement statement = connection.prepareStatement(
+                    "SELECT `id`,`x`,`y`,`z` FROM `id_protection` WHERE `world`=? AND `cx` IN (" + placeholder(to - from + 1) + ") AND (`cz` BETWEEN ? AND ?)" +
+                        " AND (`x` BETWEEN ? AND ?) AND (`y` BETWEEN ? AND ?) AND (`z` BETWEEN ? AND ?)"
+                )) {
+                    int index = 1;
+                    statement.setInt(index++, world);
+                    for (int i = from; i <= to; i++) {
+                        statement.setInt(index++, i);
+                    }
+                    setArea(statement, index, minX, minY, minZ, maxX, maxY, maxZ);
+                    readArea(statement, world, result);
                 }
             }
         } catch (SQLException e) {
@@ -264,10 +702,38 @@ public abstract class IDDriver {
         return result;
     }
 
+    private static void setArea(PreparedStatement statement, int index, int minX, int minY, int minZ, int maxX, int maxY, int maxZ) throws SQLException {
+        statement.setInt(index++, minZ >> 4);
+        statement.setInt(index++, maxZ >> 4);
+        statement.setInt(index++, minX);
+        statement.setInt(index++, maxX);
+        statement.setInt(index++, minY);
+        statement.setInt(index++, maxY);
+        statement.setInt(index++, minZ);
+        statement.setInt(index, maxZ);
+    }
+
+    private static void readArea(PreparedStatement statement, int world, List<Map.Entry<Integer, IntLocation>> result) throws SQLException {
+        try (ResultSet resultSet = statement.executeQuery()) {
+            while (resultSet.next()) {
+                result.add(new AbstractMap.SimpleEntry<>(
+                    resultSet.getInt("id"),
+                    new IntLocation(
+                        world,
+                        resultSet.getInt("x"),
+                        resultSet.getInt("y"),
+                        resultSet.getInt("z")
+                    )
+                ));
+            }
+        }
+    }
+
     public List<Map.Entry<Integer, IntLocation>> getProtections(int limit, int offsetId) {
         List<Map.Entry<Integer, IntLocation>> result = new ArrayList<>(limit);
 
-        try (Connection connection = hikari.getConnection();
+        try (Latency.Timer ignore = metrics.time("id.getProtectionsAfter");
+             Connection connection = hikari.getConnection();
              PreparedStatement statement = connection.prepareStatement(
                  "SELECT `id`,`world`,`x`,`y`,`z` FROM `id_protection` WHERE `id`>? ORDER BY `id` LIMIT ?"
                  // LIMIT OFFSET is slow.
@@ -294,6 +760,66 @@ public abstract class IDDriver {
         return result;
     }
 
+    // region bulk load
+    public void forEachWorld(BiConsumer<Integer, String> consumer) {
+        try (Latency.Timer ignore = metrics.time("id.forEachWorld");
+             Connection connection = hikari.getConnection();
+             PreparedStatement statement = connection.prepareStatement(
+                 "SELECT `id`,`name` FROM `id_world`"
+             )) {
+            try (ResultSet resultSet = statement.executeQuery()) {
+                while (resultSet.next()) {
+                    consumer.accept(resultSet.getInt("id"), resultSet.getString("name"));
+                }
+            }
+        } catch (SQLException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    public void forEachUser(BiConsumer<Integer, UUID> consumer) {
+        try (Latency.Timer ignore = metrics.time("id.forEachUser");
+             Connection connection = hikari.getConnection();
+             PreparedStatement statement = connection.prepareStatement(
+                 "SELECT `id`,`uuid` FROM `id_user`"
+             )) {
+            setStreaming(statement);
+            try (ResultSet resultSet = statement.executeQuery()) {
+                while (resultSet.next()) {
+                    consumer.accept(resultSet.getInt("id"), UUIDBytes.fromBytes(resultSet.getBytes("uuid")));
+                }
+            }
+        } catch (SQLException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    public void forEachProtection(BiConsumer<Integer, IntLocation> consumer) {
+        try (Latency.Timer ignore = metrics.time("id.forEachProtection");
+             Connection connection = hikari.getConnection();
+             PreparedStatement statement = connection.prepareStatement(
+                 "SELECT `id`,`world`,`x`,`y`,`z` FROM `id_protection`"
+             )) {
+            setStreaming(statement);
+            try (ResultSet resultSet = statement.executeQuery()) {
+                while (resultSet.next()) {
+                    consumer.accept(
+                        resultSet.getInt("id"),
+                        new IntLocation(
+                            resultSet.getInt("world"),
+                            resultSet.getInt("x"),
+                            resultSet.getInt("y"),
+                            resultSet.getInt("z")
+                        )
+                    );
+                }
+            }
+        } catch (SQLException e) {
+            throw new RuntimeException(e);
+        }
+    }
+    // endregion
+
     public static class IntLocation {
         public final int world;
         public final int x;
@@ -0,0 +1,94 @@
+package jp.jyn.chestsafe.db.driver;
+
+import com.zaxxer.hikari.HikariDataSource;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.Collection;
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * <p>Key-value store on `meta` table.</p>
+ * <p>The table is created by DBConnector.</p>
+ */
+public class MetaDriver {
+    private final HikariDataSource hikari;
+
+    public MetaDriver(HikariDataSource hikari) {
+        this.hikari = hikari;
+    }
+
+    // ===== meta =====
+    // | key | value |
+    // ================
+    public Optional<String> get(String key) {
+        try (Connection connection = hikari.getConnection();
+             PreparedStatement statement = connection.prepareStatement(
+                 "SELECT `value` FROM `meta` WHERE `key`=?"
+             )) {
+            statement.setString(1, key);
+            try (ResultSet result = statement.executeQuery()) {
+                if (result.next()) {
+                    return Optional.ofNullable(result.getString(1));
+                }
+            }
+        } catch (SQLException e) {
+            throw new RuntimeException(e);
+        }
+        return Optional.empty();
+    }
+
+    /**
+     * Set values in a single transaction.
+     *
+     * @param values key and value
+     */
+    public void set(Map<String, String> values) {
+        try (Connection connection = hikari.getConnection()) {
+            try (PreparedStatement update = connection.prepareStatement(
+                "UPDATE `meta` SET `value`=? WHERE `key`=?"
+            );
+                 PreparedStatement insert = connection.prepareStatement(
+                     "INSERT INTO `meta` (`key`,`value`) VALUES (?,?)"
+                 )) {
+                connection.setAutoCommit(false);
+                for (Map.Entry<String, String> entry : values.entrySet()) {
+                    update.setString(1, entry.getValue());
+                    update.setString(2, entry.getKey());
+                    // `key` has no unique constraint, so upsert is not available.
+                    if (update.executeUpdate() == 0) {
+                        insert.setString(1, entry.getKey());
+                        insert.setString(2, entry.getValue());
+                        insert.executeUpdate();
+                    }
+                }
+                connection.commit();
+            } catch (SQLException e) {
+                connection.rollback();
+                throw e;
+            } finally {
+                connection.setAutoCommit(true);
+            }
+        } catch (SQLException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    public void remove(Collection<String> keys) {
+        try (Connection connection = hikari.getConnection();
+             PreparedStatement statement = connection.prepareStatement(
+                 "DELETE FROM `meta` WHERE `key`=?"
+             )) {
+            for (String key : keys) {
+                statement.setString(1, key);
+                statement.addBatch();
+            }
+            statement.executeBatch();
+        } catch (SQLException e) {
+            throw new RuntimeException(e);
+        }
+    }
+}
@@ -0,0 +1,138 @@
+package jp.jyn.chestsafe.db.driver;
+
+import java.sql.Connection;
+import java.sql.DatabaseMetaData;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+/**
+ * Database schema migration.
+ */
+public abstract class Migrator {
+    /**
+     * Current database version.
+     */
+    public final static int VERSION = 6;
+
+    /**
+     * <p>Migrate schema to {@link #VERSION}.</p>
+     * <p>Each step is committed with its own `dbversion`.
+     * MySQL commits DDL implicitly, so a step can not be rolled back there,
+     * steps must be idempotent to be run again after a failure in the middle.</p>
+     * <p>Note: This is called before tables are created by drivers, only if the database already exists.</p>
+     *
+     * @param connection connection (auto commit disabled)
+     * @param version    current database version
+     * @throws SQLException SQLException
+     */
+    public void migrate(Connection connection, int version) throws SQLException {
+        for (; version < VERSION; version++) {
+            try (Statement statement = connection.createStatement()) {
+                step(statement, version);
+                statement.executeUpdate("UPDATE `meta` SET `value`='" + (version + 1) + "' WHERE `key`='dbversion'");
+                connection.commit();
+            } catch (SQLException e) {
+                connection.rollback();
+                throw e;
+            }
+        }
+    }
+
+    private void step(Statement statement, int version) throws SQLException {
+        switch (version) {
+            case 1:
+                to2(statement);
+                break;
+            case 2:
+                to3(statement);
+                break;
+            case 3:
+                to4(statement);
+                break;
+            case 4:
+                to5(statement);
+                break;
+            case 5:
+                to6(statement);
+                break;
+            default:
+                throw new IllegalArgumentException("Unknown database version: " + version);
+        }
+    }
+
+    protected static boolean hasTable(Statement statement, String table) throws SQLException {
+        Connection connection = statement.getConnection();
+        DatabaseMetaData meta = connection.getMetaData();
+        try (ResultSet result = meta.getTables(connection.getCatalog(), null, escape(meta, table), null)) {
+            return result.next();
+        }
+    }
+
+    protected static boolean hasColumn(Statement statement, String table, String column) throws SQLException {
+        Connection connection = statement.getConnection();
+        DatabaseMetaData meta = connection.getMetaData();
+        try (ResultSet result = meta.getColumns(connection.getCatalog(), null, escape(meta, table), escape(meta, column))) {
+            return result.next();
+        }
+    }
+
+    protected static boolean hasIndex(Statement statement, String table, String index) throws SQLException {
+        Connection connection = statement.getConnection();
+        try (ResultSet result = connection.getMetaData().getIndexInfo(connection.getCatalog(), null, table, false, true)) {
+            while (result.next()) {
+                if (index.equalsIgnoreCase(result.getString("INDEX_NAME"))) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    private static String escape(DatabaseMetaData meta, String name) throws SQLException {
+        // "_" is a wildcard in patterns.
+        String escape = meta.getSearchStringEscape();
+        return escape == null || escape.isEmpty() ? name : name.replace("_", escape + "_");
+    }
+
+    /**
+     * 1 -&gt; 2: chunk coordinates (`cx`,`cz`) and index for area search.
+     *
+     * @param statement statement
+     * @throws SQLException SQLException
+     */
+    protected abstract void to2(Statement statement) throws SQLException;
+
+    /**
+     * 2 -&gt; 3: flags are packed into `protection_info`.`flags`, `protection_flag` is dropped.
+     * (lower 16 bits: flag is set, upper 16 bits: flag value)
+     *
+     * @param statement statement
+     * @throws SQLException SQLException
+     */
+    protected abstract void to3(Statement statement) throws SQLException;
+
+    /**
+     * 3 -&gt; 4: indexes for reverse lookup. (protection_info.owner, protection_member.member)
+     *
+     * @param statement statement
+     * @throws SQLException SQLException
+     */
+    protected abstract void to4(Statement statement) throws SQLException;
+
+    /**
+     * 4 -&gt; 5: `protection_info`.`group_id` for member groups. (tables are created by drivers)
+     *
+     * @param statement statement
+     * @throws SQLException SQLException
+     */
+    protected abstract void to5(Statement statement) throws SQLException;
+
+    /**
+     * 5 -&gt; 6: `protection_info`.`has_flag` is dropped, it is replaced by `flags`.
+     *
+     * @param statement statement
+     * @throws SQLException SQLException
+     */
+    protected abstract void to6(Statement statement) throws SQLException;
+}
@@ -1,61 +1,55 @@
 package jp.jyn.chestsafe.db.driver;
 
 import com.zaxxer.hikari.HikariDataSource;
+import jp.jyn.chestsafe.util.metrics.Latency;
+import jp.jyn.chestsafe.util.metrics.Metrics;
+import jp.jyn.jbukkitlib.uuid.UUIDBytes;
 import jp.jyn.jbukkitlib.util.PackagePrivate;
 
 import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
 import java.util.Optional;
 import java.util.Set;
+import java.util.UUID;
+import java.util.function.BiConsumer;
 
 /**
  * Protection CRUD
  */
 public abstract class ProtectionDriver {
     private final HikariDataSource hikari;
+    private final Metrics metrics;
 
-    protected ProtectionDriver(HikariDataSource hikari) {
+    protected ProtectionDriver(HikariDataSource hikari, Metrics metrics) {
         this.hikari = hikari;
+        this.metrics = metrics;
     }
 
-    // ============================== protection_info ===============================
-    // | id(int) | owner(int) | type(int) | has_member(boolean) | has_flag(boolean) |
-    // ==============================================================================
-
     /**
-     * Get protection
+     * Configure statement to read large result without loading all rows into memory.
      *
-     * @param id Protection id
-     * @return Obtained protection information
+     * @param statement statement
+     * @throws SQLException SQLException
      */
-    public Optional<ProtectionInfo> getProtection(int id) {
-        try (Connection connection = hikari.getConnection();
-             PreparedStatement statement = connection.prepareStatement(
-                 "SELECT `owner`,`type`,`has_member`,`has_flag` FROM `protection_info` WHERE `id`=?"
-             )) {
-            statement.setInt(1, id);
-            try (ResultSet result = statement.executeQuery()) {
-                if (result.next()) {
-                    return Optional.of(new ProtectionInfo(
-                        result.getInt("owner"),
-                        result.getInt("type"),
-                        result.getBoolean("has_member"),
-                        result.getBoolean("has_flag")
-                    ));
-                }
-            }
-        } catch (SQLException e) {
-            throw new RuntimeException(e);
-        }
-        return Optional.empty();
+    protected void setStreaming(PreparedStatement statement) throws SQLException {
+        statement.setFetchSize(1000);
     }
 
+    // =================================== protection_info ===================================
+    // | id(int) | owner(int) | type(int) | has_member(boolean) | flags(int) | group_id(int) |
+    // =======================================================================================
+    // flags: lower 16 bits = flag is set, upper 16 bits = flag value. (see Protection#getFlagBits())
+    // group_id: 0 = no group
+
     /**
      * <p>Set protection</p>
      * <p>Note: This should be so as not to violate uniqueness.</p>
@@ -64,18 +58,21 @@ public abstract class ProtectionDriver {
      * @param owner     Protection owner id
      * @param type      Protection type
      * @param hasMember Protection has members
-     * @param hasFlag   Protection has flag
+     * @param flags     Protection flag bits
+     * @param group     Protection group id (0: no group)
      */
-    public void setProtection(int id, int owner, int type, boolean hasMember, boolean hasFlag) {
-        try (Connection connection = hikari.getConnection();
+    public void setProtection(int id, int owner, int type, boolean hasMember, int flags, int group) {
+        try (Latency.Timer ignore = metrics.time("protection.setProtection");
+             Connection connection = hikari.getConnection();
              PreparedStatement statement = connection.prepareStatement(
-                 "INSERT INTO `protection_info` (`id`,`owner`,`type`,`has_member`,`has_flag`) VALUES (?,?,?,?,?)"
+                 "INSERT INTO `protection_info` (`id`,`owner`,`type`,`has_member`,`flags`,`group_id`) VALUES (?,?,?,?,?,?)"
              )) {
             statement.setInt(1, id);
             statement.setInt(2, owner);
             statement.setByte(3, (byte) type);
             statement.setBoolean(4, hasMember);
-            statement.setBoolean(5, hasFlag);
+            statement.setInt(5, flags);
+            statement.setInt(6, group);
             statement.executeUpdate();
         } catch (SQLException e) {
             throw new RuntimeException(e);
@@ -90,21 +87,23 @@ public abstract class ProtectionDriver {
      * @param protection Protection info
      */
     public void setProtection(int id, ProtectionInfo protection) {
-        setProtection(id, protection.owner, protection.type, protection.hasMember, protection.hasFlag);
+        setProtection(id, protection.owner, protection.type, protection.hasMember, protection.flags, protection.group);
     }
 
-    public void updateProtection(int id, int owner, int type, boolean hasMember, boolean hasFlag) {
-        try (Connection connection = hikari.getConnection();
+    public void updateProtection(int id, int owner, int type, boolean hasMember, int flags, int group) {
+        try (Latency.Timer ignore = metrics.time("protection.updateProtection");
+             Connection connection = hikari.getConnection();
              PreparedStatement statement = connection.prepareStatement(
                  "UPDATE `protection_info` " +
-                     "  SET `owner`=?,`type`=?,`has_member`=?,`has_flag`=? " +
+                     "  SET `owner`=?,`type`=?,`has_member`=?,`flags`=?,`group_id`=? " +
                      "WHERE `id`=?"
              )) {
             statement.setInt(1, owner);
             statement.setByte(2, (byte) type);
             statement.setBoolean(3, hasMember);
-            statement.setBoolean(4, hasFlag);
-            statement.setInt(5, id);
+            statement.setInt(4, flags);
+            statement.setInt(5, group);
+            statement.setInt(6, id);
             statement.executeUpdate();
         } catch (SQLException e) {
             throw new RuntimeException(e);
@@ -112,21 +111,26 @@ public abstract class ProtectionDriver {
     }
 
     public void updateProtection(int id, ProtectionInfo protection) {
-        updateProtection(id, protection.owner, protection.type, protection.hasMember, protection.hasFlag);
+        updateProtection(id, protection.owner, protection.type, protection.hasMember, protection.flags, protection.group);
     }
 
     public static class ProtectionInfo {
         public final int owner;
         public final int type;
         public final boolean hasMember;
-        public final boolean hasFlag;
+        public final int flags;
+        /**
+         * 0: no group
+         */
+        public final int group;
 
         @PackagePrivate
-        ProtectionInfo(int owner, int type, boolean hasMember, boolean hasFlag) {
+        ProtectionInfo(int owner, int type, boolean hasMember, int flags, int group) {
             this.owner = owner;
             this.type = type;
             this.hasMember = hasMember;
-            this.hasFlag = hasFlag;
+            this.flags = flags;
+            this.group = group;
         }
     }
 
@@ -136,7 +140,8 @@ public abstract class ProtectionDriver {
     public Set<Integer> getMembers(int id) {
         Set<Integer> set = new HashSet<>();
 
-        try (Connection connection = hikari.getConnection();
+        try (Latency.Timer ignore = metrics.time("protection.getMembers");
+             Connection connection = hikari.getConnection();
              PreparedStatement statement = connection.prepareStatement(
                  "SELECT `member` FROM `protection_member` WHERE `id`=?"
              )) {
@@ -153,7 +158,8 @@ public abstract class ProtectionDriver {
     }
 
     public void clearMembers(int id) {
-        try (Connection connection = hikari.getConnection();
+        try (Latency.Timer ignore = metrics.time("protection.clearMembers");
+             Connection connection = hikari.getConnection();
              PreparedStatement statement = connection.prepareStatement(
                  "DELETE FROM `protection_member` WHERE `id`=?"
              )) {
@@ -165,7 +171,8 @@ public abstract class ProtectionDriver {
     }
 
     public void addMember(int id, int member) {
-        try (Connection connection = hikari.getConnection();
+        try (Latency.Timer ignore = metrics.time("protection.addMember");
+             Connection connection = hikari.getConnection();
              PreparedStatement statement = connection.prepareStatement(
                  "INSERT INTO `protection_member` (`id`,`member`) VALUES (?,?)"
              )) {
@@ -182,7 +189,8 @@ public abstract class ProtectionDriver {
             return;
         }
 
-        try (Connection connection = hikari.getConnection()) {
+        try (Latency.Timer ignore = metrics.time("protection.addMembers");
+             Connection connection = hikari.getConnection()) {
             try (PreparedStatement statement = connection.prepareStatement(
                 "INSERT INTO `protection_member` (`id`,`member`) VALUES (?,?)"
             )) {
@@ -190,8 +198,9 @@ public abstract class ProtectionDriver {
                 statement.setInt(1, id);
                 for (int member : members) {
                     statement.setInt(2, member);
-                    statement.executeUpdate();
+                    statement.addBatch();
                 }
+                statement.executeBatch();
                 connection.commit();
             } catch (SQLException e) {
                 connection.rollback();
@@ -205,7 +214,8 @@ public abstract class ProtectionDriver {
     }
 
     public void removeMember(int id, int member) {
-        try (Connection connection = hikari.getConnection();
+        try (Latency.Timer ignore = metrics.time("protection.removeMember");
+             Connection connection = hikari.getConnection();
              PreparedStatement statement = connection.prepareStatement(
                  "DELETE FROM `protection_member` WHERE `id`=? AND `member`=?"
              )) {
@@ -222,7 +232,8 @@ public abstract class ProtectionDriver {
             return;
         }
 
-        try (Connection connection = hikari.getConnection()) {
+        try (Latency.Timer ignore = metrics.time("protection.removeMembers");
+             Connection connection = hikari.getConnection()) {
             try (PreparedStatement statement = connection.prepareStatement(
                 "DELETE FROM `protection_member` WHERE `id`=? AND `member`=?"
             )) {
@@ -230,8 +241,9 @@ public abstract class ProtectionDriver {
                 statement.setInt(1, id);
                 for (int member : members) {
                     statement.setInt(2, member);
-                    statement.executeUpdate();
+                    statement.addBatch();
                 }
+                statement.executeBatch();
                 connection.commit();
             } catch (SQLException e) {
                 connection.rollback();
@@ -244,67 +256,386 @@ public abstract class ProtectionDriver {
         }
     }
 
-    // =========== protection_flag ============
-    // | id(int) | flag(int) | value(boolean) |
-    // ========================================
-    public Map<Integer, Boolean> getFlags(int id) {
-        Map<Integer, Boolean> map = new HashMap<>();
+    // ========== protection_group ===========
+    // | id(int) | owner(int) | name(String) |
+    // =======================================
+    // ======== group_member =========
+    // | group_id(int) | member(int) |
+    // ===============================
 
-        try (Connection connection = hikari.getConnection();
+    /**
+     * Get all groups. (groups are few, they are always in memory)
+     *
+     * @return groups
+     */
+    public List<GroupInfo> getGroups() {
+        List<GroupInfo> result = new ArrayList<>();
+        try (Latency.Timer ignore = metrics.time("protection.getGroups");
+             Connection connection = hikari.getConnection();
              PreparedStatement statement = connection.prepareStatement(
-                 "SELECT `flag`,`value` FROM `protection_flag` WHERE `id`=?"
+                 "SELECT `id`,`owner`,`name` FROM `protection_group`"
              )) {
-            statement.setInt(1, id);
+            try (ResultSet rs = statement.executeQuery()) {
+                while (rs.next()) {
+                    result.add(new GroupInfo(rs.getInt("id"), rs.getInt("owner"), rs.getString("name")));
+                }
+            }
+        } catch (SQLException e) {
+            throw new RuntimeException(e);
+        }
+        return result;
+    }
+
+    public static class GroupInfo {
+        public final int id;
+        public final int owner;
+        public final String name;
+
+        @PackagePrivate
+        GroupInfo(int id, int owner, String name) {
+            this.id = id;
+            this.owner = owner;
+            this.name = name;
+        }
+    }
+
+    public void forEachGroupMember(BiConsumer<Integer, Integer> consumer) {
+        try (Latency.Timer ignore = metrics.time("protection.forEachGroupMember");
+             Connection connection = hikari.getConnection();
+             PreparedStatement statement = connection.prepareStatement(
+                 "SELECT `group_id`,`member` FROM `group_member`"
+             )) {
+            setStreaming(statement);
             try (ResultSet result = statement.executeQuery()) {
                 while (result.next()) {
-                    map.put(result.getInt("flag"), result.getBoolean("value"));
+                    consumer.accept(result.getInt("group_id"), result.getInt("member"));
                 }
             }
         } catch (SQLException e) {
             throw new RuntimeException(e);
         }
-        return map;
     }
 
-    public void clearFlags(int id) {
-        try (Connection connection = hikari.getConnection();
+    /**
+     * <p>Create group.</p>
+     * <p>Note: This should be so as not to violate uniqueness. (id, and owner+name)</p>
+     *
+     * @param id    group id (assigned by the caller, all groups are kept in memory)
+     * @param owner group owner id
+     * @param name  group name
+     */
+    public void addGroup(int id, int owner, String name) {
+        try (Latency.Timer ignore = metrics.time("protection.addGroup");
+             Connection connection = hikari.getConnection();
              PreparedStatement statement = connection.prepareStatement(
-                 "DELETE FROM `protection_flag` WHERE `id`=?"
+                 "INSERT INTO `protection_group` (`id`,`owner`,`name`) VALUES (?,?,?)"
              )) {
             statement.setInt(1, id);
+            statement.setInt(2, owner);
+            statement.setString(3, name);
             statement.executeUpdate();
         } catch (SQLException e) {
             throw new RuntimeException(e);
         }
     }
 
-    public void setFlag(int id, int flag, boolean value) {
-        try (Connection connection = hikari.getConnection();
+    /**
+     * <p>Remove group, its members, and references from protections.</p>
+     *
+     * @param id group id
+     * @return number of protections that referred to the group
+     */
+    public int removeGroup(int id) {
+        try (Latency.Timer ignore = metrics.time("protection.removeGroup");
+             Connection connection = hikari.getConnection()) {
+            try {
+                connection.setAutoCommit(false);
+                int count;
+                try (PreparedStatement unlink = connection.prepareStatement("UPDATE `protection_info` SET `group_id`=0 WHERE `group_id`=?");
+                     PreparedStatement members = connection.prepareStatement("DELETE FROM `group_member` WHERE `group_id`=?");
+                     PreparedStatement group = connection.prepareStatement("DELETE FROM `protection_group` WHERE `id`=?")) {
+                    unlink.setInt(1, id);
+                    count = unlink.executeUpdate();
+                    for (PreparedStatement statement : new PreparedStatement[]{members, group}) {
+                        statement.setInt(1, id);
+                        statement.executeUpdate();
+                    }
+                }
+                connection.commit();
+                return count;
+            } catch (SQLException e) {
+                connection.rollback();
+                throw e;
+            } finally {
+                connection.setAutoCommit(true);
+            }
+        } catch (SQLException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    public void addGroupMember(int group, int member) {
+        try (Latency.Timer ignore = metrics.time("protection.addGroupMember");
+             Connection connection = hikari.getConnection();
              PreparedStatement statement = connection.prepareStatement(
-                 "INSERT INTO `protection_flag` (`id`,`flag`,`value`) VALUES (?,?,?)"
+                 "INSERT INTO `group_member` (`group_id`,`member`) VALUES (?,?)"
              )) {
-            statement.setInt(1, id);
-            statement.setByte(2, (byte) flag);
-            statement.setBoolean(3, value);
+            statement.setInt(1, group);
+            statement.setInt(2, member);
             statement.executeUpdate();
         } catch (SQLException e) {
             throw new RuntimeException(e);
         }
     }
 
-    public void removeFlag(int id, int flag) {
-        try (Connection connection = hikari.getConnection();
+    public void removeGroupMember(int group, int member) {
+        try (Latency.Timer ignore = metrics.time("protection.removeGroupMember");
+             Connection connection = hikari.getConnection();
              PreparedStatement statement = connection.prepareStatement(
-                 "DELETE FROM `protection_flag` WHERE `id`=? AND `flag`=?"
+                 "DELETE FROM `group_member` WHERE `group_id`=? AND `member`=?"
              )) {
-            statement.setInt(1, id);
-            statement.setByte(2, (byte) flag);
+            statement.setInt(1, group);
+            statement.setInt(2, member);
             statement.executeUpdate();
         } catch (SQLException e) {
             throw new RuntimeException(e);
         }
     }
 
+    // region bulk load
+    public void forEachProtection(BiConsumer<Integer, ProtectionInfo> consumer) {
+        try (Latency.Timer ignore = metrics.time("protection.forEachProtection");
+             Connection connection = hikari.getConnection();
+             PreparedStatement statement = connection.prepareStatement(
+                 "SELECT `id`,`owner`,`type`,`has_member`,`flags`,`group_id` FROM `protection_info`"
+             )) {
+            setStreaming(statement);
+            try (ResultSet result = statement.executeQuery()) {
+                while (result.next()) {
+                    consumer.accept(result.getInt("id"), new ProtectionInfo(
+                        result.getInt("owner"),
+                        result.getInt("type"),
+                        result.getBoolean("has_member"),
+                        result.getInt("flags"),
+                        result.getInt("group_id")
+                    ));
+                }
+            }
+        } catch (SQLException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    public void forEachMember(BiConsumer<Integer, Integer> consumer) {
+        try (Latency.Timer ignore = metrics.time("protection.forEachMember");
+             Connection connection = hikari.getConnection();
+             PreparedStatement statement = connection.prepareStatement(
+                 "SELECT `id`,`member` FROM `protection_member`"
+             )) {
+            setStreaming(statement);
+            try (ResultSet result = statement.executeQuery()) {
+                while (result.next()) {
+                    consumer.accept(result.getInt("id"), result.getInt("member"));
+                }
+            }
+        } catch (SQLException e) {
+            throw new RuntimeException(e);
+        }
+    }
+    // endregion
+
+    // region hydration
+    private final static int HYDRATE_BATCH = 500;
+
+    /**
+     * <p>Get protection with members in a single query.</p>
+     * <p>UUIDs of owner and members are resolved by joining id_user.</p>
+     *
+     * @param id protection id
+     * @return protection, empty if not found.
+     */
+    public Optional<ProtectionData> getProtectionData(int id) {
+        return Optional.ofNullable(getProtectionData(new int[]{id}).get(id));
+    }
+
+    /**
+     * <p>Get protections with members.</p>
+     * <p>Executes one query per {@value #HYDRATE_BATCH} ids.</p>
+     *
+     * @param ids protection ids
+     * @return id to protection, ids not found are not included.
+     */
+    public Map<Integer, ProtectionData> getProtectionData(int[] ids) {
+        Map<Integer, ProtectionData> result = new HashMap<>(ids.length * 2);
+        if (ids.length == 0) {
+            return result;
+        }
+
+        try (Latency.Timer ignore = metrics.time("protection.getProtectionData");
+             Connection connection = hikari.getConnection()) {
+            for (int from = 0; from < ids.length; from += HYDRATE_BATCH) {
+                int to = Math.min(ids.length, from + HYDRATE_BATCH);
+                StringBuilder in = new StringBuilder(" IN (?");
+                for (int i = from + 1; i < to; i++) {
+                    in.append(",?");
+                }
+                in.append(')');
+
+                // kind: 0=info(a=type, b=flags, c=group_id), 1=member
+                // The info row always comes first. (ORDER BY `kind`)
+                try (PreparedStatement statement = connection.prepareStatement(
+                    "SELECT 0 AS `kind`,`i`.`id`,`i`.`owner` AS `user`,`u`.`uuid`,`i`.`type` AS `a`,`i`.`flags` AS `b`,`i`.`group_id` AS `c` FROM `protection_info` `i` " +
+                        "LEFT JOIN `id_user` `u` ON `u`.`id`=`i`.`owner` WHERE `i`.`id`" + in +
+                        " UNION ALL " +
+                        "SELECT 1,`m`.`id`,`m`.`member`,`u`.`uuid`,0,0,0 FROM `protection_member` `m` " +
+                        "JOIN `id_user` `u` ON `u`.`id`=`m`.`member` WHERE `m`.`id`" + in +
+                        " ORDER BY `kind`"
+                )) {
+                    int index = 1;
+                    for (int n = 0; n < 2; n++) {
+                        for (int i = from; i < to; i++) {
+                            statement.setInt(index++, ids[i]);
+                        }
+                    }
+
+                    try (ResultSet rs = statement.executeQuery()) {
+                        while (rs.next()) {
+                            int id = rs.getInt("id");
+                            switch (rs.getInt("kind")) {
+                                case 0: {
+                                    byte[] uuid = rs.getBytes("uuid");
+                                    result.put(id, new ProtectionData(
+                                        rs.getInt("user"),
+                                        uuid == null ? null : UUIDBytes.fromBytes(uuid),
+                                        rs.getInt("a"),
+                                        rs.getInt("b"),
+                                        rs.getInt("c")
+                                    ));
+                                    break;
+                                }
+                                case 1: {
+                                    ProtectionData data = result.get(id);
+                                    if (data != null) {
+                                        data.members.put(rs.getInt("user"), UUIDBytes.fromBytes(rs.getBytes("uuid")));
+                                    }
+                                    break;
+                                }
+                            }
+                        }
+                    }
+                }
+            }
+        } catch (SQLException e) {
+            throw new RuntimeException(e);
+        }
+        return result;
+    }
+
+    public static class ProtectionData {
+        public final int owner;
+        /**
+         * null if the owner is missing from id_user. (broken)
+         */
+        public final UUID ownerUUID;
+        public final int type;
+        /**
+         * user id to UUID
+         */
+        public final Map<Integer, UUID> members = new HashMap<>();
+        public final int flags;
+        /**
+         * 0: no group
+         */
+        public final int group;
+
+        @PackagePrivate
+        ProtectionData(int owner, UUID ownerUUID, int type, int flags, int group) {
+            this.owner = owner;
+            this.ownerUUID = ownerUUID;
+            this.type = type;
+            this.flags = flags;
+            this.group = group;
+        }
+    }
+    // endregion
+
+    // region reverse lookup
+
+    /**
+     * <p>Get protections owned by the user, or the user is a member of. (directly or through the group)</p>
+     * <p>Keyset pagination like {@link IDDriver#getProtections(int, int)},
+     * pass the id of the last protection of the previous page. (0 for the first page)</p>
+     *
+     * @param user     user id
+     * @param limit    maximum number of protections
+     * @param offsetId protections with greater id are returned.
+     * @return protections, ordered by id.
+     */
+    public List<UserProtection> getUserProtections(int user, int limit, int offsetId) {
+        List<UserProtection> result = new ArrayList<>(limit);
+
+        try (Latency.Timer ignore = metrics.time("protection.getUserProtections");
+             Connection connection = hikari.getConnection();
+             PreparedStatement statement = connection.prepareStatement(
+                 // Each side is a range scan on (owner, id) / (member, id) / (group_id, id), limited before merging.
+                 // The same protection may come from several sides. (e.g. member and group)
+                 "SELECT `u`.`id`,`u`.`is_owner`,`p`.`world`,`p`.`x`,`p`.`y`,`p`.`z` FROM (" +
+                     "   SELECT `id`,MAX(`is_owner`) AS `is_owner` FROM (" +
+                     "       SELECT * FROM (" +
+                     "           SELECT `id`,1 AS `is_owner` FROM `protection_info` WHERE `owner`=? AND `id`>? ORDER BY `id` LIMIT ?" +
+                     "       ) `o`" +
+                     "       UNION ALL " +
+                     "       SELECT * FROM (" +
+                     "           SELECT `id`,0 AS `is_owner` FROM `protection_member` WHERE `member`=? AND `id`>? ORDER BY `id` LIMIT ?" +
+                     "       ) `m`" +
+                     "       UNION ALL " +
+                     "       SELECT * FROM (" +
+                     "           SELECT `i`.`id`,0 AS `is_owner` FROM `group_member` `g` " +
+                     "           JOIN `protection_info` `i` ON `i`.`group_id`=`g`.`group_id` " +
+                     "           WHERE `g`.`member`=? AND `i`.`id`>? ORDER BY `i`.`id` LIMIT ?" +
+                     "       ) `g`" +
+                     "   ) `a` GROUP BY `id`" +
+                     ") `u` JOIN `id_protection` `p` ON `p`.`id`=`u`.`id` ORDER BY `u`.`id` LIMIT ?"
+             )) {
+            int index = 1;
+            for (int n = 0; n < 3; n++) {
+                statement.setInt(index++, user);
+                statement.setInt(index++, offsetId);
+                statement.setInt(index++, limit);
+            }
+            statement.setInt(index, limit);
+            try (ResultSet rs = statement.executeQuery()) {
+                while (rs.next()) {
+                    result.add(new UserProtection(
+                        rs.getInt("id"),
+                        rs.getBoolean("is_owner"),
+                        new IDDriver.IntLocation(rs.getInt("world"), rs.getInt("x"), rs.getInt("y"), rs.getInt("z"))
+                    ));
+                }
+            }
+        } catch (SQLException e) {
+            throw new RuntimeException(e);
+        }
+        return result;
+    }
+
+    public static class UserProtection {
+        public final int id;
+        /**
+         * false: member
+         */
+        public final boolean owner;
+        public final IDDriver.IntLocation location;
+
+        @PackagePrivate
+        UserProtection(int id, boolean owner, IDDriver.IntLocation location) {
+            this.id = id;
+            this.owner = owner;
+            this.location = location;
+        }
+    }
+    // endregion
+
     // Bulk operation
 
     /**
@@ -315,46 +646,227 @@ public abstract class ProtectionDriver {
      * @param owner   protection owner
      * @param type    protection type
      * @param members protection member
-     * @param flags   protection flags
+     * @param flags   protection flag bits
+     * @param group   protection group id (0: no group)
      */
-    public void add(int id, int owner, int type, int[] members, Map<Integer, Boolean> flags) {
-        try (Connection connection = hikari.getConnection()) {
+    public void add(int id, int owner, int type, int[] members, int flags, int group) {
+        addAll(Collections.singletonList(new NewProtection(id, owner, type, members, flags, group)));
+    }
+
+    /**
+     * <p>Add new protections in a single transaction.</p>
+     * <p>Note: ids must be assigned by {@link IDDriver} beforehand.</p>
+     *
+     * @param protections protections
+     */
+    public void addAll(Collection<NewProtection> protections) {
+        if (protections.isEmpty()) {
+            return;
+        }
+
+        try (Latency.Timer ignore = metrics.time("protection.addAll");
+             Connection connection = hikari.getConnection()) {
             try {
                 connection.setAutoCommit(false);
-                try (PreparedStatement statement = connection.prepareStatement(
-                    "INSERT INTO `protection_info` (`id`,`owner`,`type`,`has_member`,`has_flag`) VALUES (?,?,?,?,?)"
-                )) {
-                    statement.setInt(1, id);
-                    statement.setInt(2, owner);
-                    statement.setByte(3, (byte) type);
-                    statement.setBoolean(4, members.length != 0);
-                    statement.setBoolean(5, flags.size() != 0);
-                    statement.executeUpdate();
-                }
+                try (PreparedStatement info = connection.prepareStatement("INSERT INTO `protection_info` (`id`,`owner`,`type`,`has_member`,`flags`,`group_id`) VALUES (?,?,?,?,?,?)");
+                     PreparedStatement member = connection.prepareStatement("INSERT INTO `protection_member` (`id`,`member`) VALUES (?,?)")) {
+                    Batch infoBatch = new Batch(info), memberBatch = new Batch(member);
+                    for (NewProtection protection : protections) {
+                        info.setInt(1, protection.id);
+                        info.setInt(2, protection.owner);
+                        info.setByte(3, (byte) protection.type);
+                        info.setBoolean(4, protection.members.length != 0);
+                        info.setInt(5, protection.flags);
+                        info.setInt(6, protection.group);
+                        infoBatch.add();
+                    }
+                    // Parent rows must be inserted first. (FOREIGN KEY)
+                    infoBatch.execute();
 
-                if (members.length != 0) {
-                    try (PreparedStatement statement = connection.prepareStatement(
-                        "INSERT INTO `protection_member` (`id`,`member`) VALUES (?,?)"
-                    )) {
-                        statement.setInt(1, id);
-                        for (int member : members) {
-                            statement.setInt(2, member);
-                            statement.executeUpdate();
+                    for (NewProtection protection : protections) {
+                        for (int m : protection.members) {
+                            member.setInt(1, protection.id);
+                            member.setInt(2, m);
+                            memberBatch.add();
                         }
                     }
+                    memberBatch.execute();
                 }
+                connection.commit();
+            } catch (SQLException e) {
+                connection.rollback();
+                throw e;
+            } finally {
+                connection.setAutoCommit(true);
+            }
+        } catch (SQLException e) {
+            throw new RuntimeException(e);
+        }
+    }
 
-                if (!flags.isEmpty()) {
-                    try (PreparedStatement statement = connection.prepareStatement(
-                        "INSERT INTO `protection_flag` (`id`,`flag`,`value`) VALUES (?,?,?)"
-                    )) {
-                        statement.setInt(1, id);
-                        for (Map.Entry<Integer, Boolean> flag : flags.entrySet()) {
-                            statement.setByte(2, flag.getKey().byteValue());
-                            statement.setBoolean(3, flag.getValue());
-                            statement.executeUpdate();
+    public static class NewProtection {
+        public final int id;
+        public final int owner;
+        public final int type;
+        public final int[] members;
+        public final int flags;
+        public final int group;
+
+        public NewProtection(int id, int owner, int type, int[] members, int flags, int group) {
+            this.id = id;
+            this.owner = owner;
+            this.type = type;
+            this.members = members;
+            this.flags = flags;
+            this.group = group;
+        }
+    }
+
+    /**
+     * JDBC batch that is sent every {@link #BATCH_SIZE} rows.
+     */
+    private static class Batch {
+        private final static int BATCH_SIZE = 1000;
+
+        private final PreparedStatement statement;
+        private int size = 0;
+
+        private Batch(PreparedStatement statement) {
+            this.statement = statement;
+        }
+
+        private void add() throws SQLException {
+            statement.addBatch();
+            if (++size >= BATCH_SIZE) {
+                execute();
+            }
+        }
+
+        private void execute() throws SQLException {
+            if (size != 0) {
+                statement.executeBatch();
+                size = 0;
+            }
+        }
+    }
+
+    /**
+     * <p>Change owner of all protections owned by the user, in a single statement.</p>
+     * <p>Groups belong to the previous owner, they are removed from the protections.</p>
+     *
+     * @param from current owner
+     * @param to   new owner
+     * @return number of changed protections
+     */
+    public int transferAll(int from, int to) {
+        try (Latency.Timer ignore = metrics.time("protection.transferAll");
+             Connection connection = hikari.getConnection();
+             PreparedStatement statement = connection.prepareStatement(
+                 "UPDATE `protection_info` SET `owner`=?,`group_id`=0 WHERE `owner`=?"
+             )) {
+            statement.setInt(1, to);
+            statement.setInt(2, from);
+            return statement.executeUpdate();
+        } catch (SQLException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * <p>Add a member to all protections owned by the user.</p>
+     * <p>Protections that already have the member are not changed.</p>
+     *
+     * @param owner  owner
+     * @param member new member
+     * @return number of changed protections
+     */
+    public int addMemberAll(int owner, int member) {
+        try (Latency.Timer ignore = metrics.time("protection.addMemberAll");
+             Connection connection = hikari.getConnection()) {
+            try {
+                connection.setAutoCommit(false);
+                int count;
+                try (PreparedStatement insert = connection.prepareStatement(
+                    "INSERT INTO `protection_member` (`id`,`member`) SELECT `id`,? FROM `protection_info` WHERE `owner`=? AND NOT EXISTS " +
+                        "(SELECT 1 FROM `protection_member` AS `m` WHERE `m`.`id`=`protection_info`.`id` AND `m`.`member`=?)");
+                     PreparedStatement update = connection.prepareStatement("UPDATE `protection_info` SET `has_member`=? WHERE `owner`=? AND `has_member`=?")) {
+                    insert.setInt(1, member);
+                    insert.setInt(2, owner);
+                    insert.setInt(3, member);
+                    count = insert.executeUpdate();
+
+                    update.setBoolean(1, true);
+                    update.setInt(2, owner);
+                    update.setBoolean(3, false);
+                    update.executeUpdate();
+                }
+                connection.commit();
+                return count;
+            } catch (SQLException e) {
+                connection.rollback();
+                throw e;
+            } finally {
+                connection.setAutoCommit(true);
+            }
+        } catch (SQLException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    // Write-behind
+
+    /**
+     * <p>Apply pending changes.</p>
+     * <p>All changes are written in a single transaction, if any of them fails, nothing is written.</p>
+     *
+     * @param changes changes to apply
+     */
+    public void apply(Collection<Changes> changes) {
+        if (changes.isEmpty()) {
+            return;
+        }
+
+        try (Latency.Timer ignore = metrics.time("protection.apply");
+             Connection connection = hikari.getConnection()) {
+            try {
+                connection.setAutoCommit(false);
+                try (PreparedStatement updateInfo = connection.prepareStatement("UPDATE `protection_info` SET `owner`=?,`type`=?,`has_member`=?,`flags`=?,`group_id`=? WHERE `id`=?");
+                     PreparedStatement clearMembers = connection.prepareStatement("DELETE FROM `protection_member` WHERE `id`=?");
+                     PreparedStatement addMember = connection.prepareStatement("INSERT INTO `protection_member` (`id`,`member`) VALUES (?,?)");
+                     PreparedStatement removeMember = connection.prepareStatement("DELETE FROM `protection_member` WHERE `id`=? AND `member`=?")) {
+                    for (Changes change : changes) {
+                        int id = change.id;
+
+                        // members
+                        if (change.clearMembers) {
+                            clearMembers.setInt(1, id);
+                            clearMembers.addBatch();
+                        }
+                        for (Map.Entry<Integer, Boolean> member : change.members.entrySet()) {
+                            PreparedStatement statement = member.getValue() ? addMember : removeMember;
+                            statement.setInt(1, id);
+                            statement.setInt(2, member.getKey());
+                            statement.addBatch();
+                        }
+
+                        // info and flags (latest state only)
+                        if (change.info != null) {
+                            updateInfo.setInt(1, change.info.owner);
+                            updateInfo.setByte(2, (byte) change.info.type);
+                            updateInfo.setBoolean(3, change.info.hasMember);
+                            updateInfo.setInt(4, change.info.flags);
+                            updateInfo.setInt(5, change.info.group);
+                            updateInfo.setInt(6, id);
+                            updateInfo.addBatch();
                         }
                     }
+
+                    // Each statement only touches its own id, so grouping by statement keeps the per-id order.
+                    // (clear -> remove -> add/set)
+                    clearMembers.executeBatch();
+                    removeMember.executeBatch();
+                    addMember.executeBatch();
+                    updateInfo.executeBatch();
                 }
                 connection.commit();
             } catch (SQLException e) {
@@ -367,4 +879,60 @@ public abstract class ProtectionDriver {
             throw new RuntimeException(e);
         }
     }
+
+    /**
+     * <p>Coalesced changes of a single protection.</p>
+     * <p>Note: This class is not thread safe.</p>
+     */
+    public static class Changes {
+        public final int id;
+
+        private ProtectionInfo info = null;
+        private boolean clearMembers = false;
+        private final Map<Integer, Boolean> members = new HashMap<>(); // true=add, false=remove
+
+        public Changes(int id) {
+            this.id = id;
+        }
+
+        public void updateProtection(int owner, int type, boolean hasMember, int flags, int group) {
+            // Only the latest state needs to be written.
+            info = new ProtectionInfo(owner, type, hasMember, flags, group);
+        }
+
+        public void addMember(int member) {
+            member(member, true);
+        }
+
+        public void addMembers(Collection<Integer> members) {
+            members.forEach(this::addMember);
+        }
+
+        public void removeMember(int member) {
+            member(member, false);
+        }
+
+        public void removeMembers(Collection<Integer> members) {
+            members.forEach(this::removeMember);
+        }
+
+        private void member(int member, boolean add) {
+            Boolean pending = members.get(member);
+            if (pending != null && pending != add) {
+                // add -> remove (or remove -> add) is the same as doing nothing.
+                members.remove(member);
+            } else {
+                members.put(member, add);
+            }
+        }
+
+        public void clearMembers() {
+            clearMembers = true;
+            members.clear();
+        }
+
+        public boolean isEmpty() {
+            return info == null && !clearMembers && members.isEmpty();
+        }
+    }
 }
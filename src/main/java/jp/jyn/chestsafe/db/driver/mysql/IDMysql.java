@@ -2,15 +2,17 @@ package jp.jyn.chestsafe.db.driver.mysql;
 
 import com.zaxxer.hikari.HikariDataSource;
 import jp.jyn.chestsafe.db.driver.IDDriver;
+import jp.jyn.chestsafe.util.metrics.Metrics;
 
 import java.sql.Connection;
+import java.sql.PreparedStatement;
 import java.sql.SQLException;
 import java.sql.Statement;
 
 public class IDMysql extends IDDriver {
 
-    public IDMysql(HikariDataSource hikari) {
-        super(hikari);
+    public IDMysql(HikariDataSource hikari, Metrics metrics) {
+        super(hikari, metrics);
 
         try (Connection connection = hikari.getConnection();
              Statement statement = connection.createStatement()) {
@@ -33,7 +35,10 @@ public class IDMysql extends IDDriver {
                     "   `x`     INT          NOT NULL," +
                     "   `y`     INT          NOT NULL," +
                     "   `z`     INT          NOT NULL," +
-                    "   UNIQUE KEY(`world`,`x`,`y`,`z`)" +
+                    "   `cx`    INT          NOT NULL," +
+                    "   `cz`    INT          NOT NULL," +
+                    "   UNIQUE KEY(`world`,`x`,`y`,`z`)," +
+                    "   KEY `chunk`(`world`,`cx`,`cz`)" +
                     ")"
             );
         } catch (SQLException e) {
@@ -41,4 +46,15 @@ public class IDMysql extends IDDriver {
         }
     }
 
+    @Override
+    protected String insertIgnore(String table, String column) {
+        // LAST_INSERT_ID(expr) makes the existing id returned as generated key.
+        return "INSERT INTO `" + table + "` (`" + column + "`) VALUES (?) ON DUPLICATE KEY UPDATE `id`=LAST_INSERT_ID(`id`)";
+    }
+
+    @Override
+    protected void setStreaming(PreparedStatement statement) throws SQLException {
+        // Connector/J streams rows one by one only with this value.
+        statement.setFetchSize(Integer.MIN_VALUE);
+    }
 }
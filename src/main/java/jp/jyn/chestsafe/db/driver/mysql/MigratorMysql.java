@@ -0,0 +1,71 @@
+package jp.jyn.chestsafe.db.driver.mysql;
+
+import jp.jyn.chestsafe.db.driver.Migrator;
+
+import java.sql.SQLException;
+import java.sql.Statement;
+
+public class MigratorMysql extends Migrator {
+    // ALTER/DROP commits implicitly, each step checks what is already done.
+
+    @Override
+    protected void to2(Statement statement) throws SQLException {
+        if (!hasColumn(statement, "id_protection", "cx")) {
+            statement.executeUpdate("ALTER TABLE `id_protection` ADD COLUMN `cx` INT NOT NULL DEFAULT 0");
+        }
+        if (!hasColumn(statement, "id_protection", "cz")) {
+            statement.executeUpdate("ALTER TABLE `id_protection` ADD COLUMN `cz` INT NOT NULL DEFAULT 0");
+        }
+        // ">>" is unsigned in MySQL.
+        statement.executeUpdate("UPDATE `id_protection` SET `cx`=FLOOR(`x`/16),`cz`=FLOOR(`z`/16)");
+        if (!hasIndex(statement, "id_protection", "chunk")) {
+            statement.executeUpdate("ALTER TABLE `id_protection` ADD INDEX `chunk`(`world`,`cx`,`cz`)");
+        }
+    }
+
+    @Override
+    protected void to3(Statement statement) throws SQLException {
+        if (!hasColumn(statement, "protection_info", "flags")) {
+            statement.executeUpdate("ALTER TABLE `protection_info` ADD COLUMN `flags` INT NOT NULL DEFAULT 0");
+        }
+        if (!hasTable(statement, "protection_flag")) {
+            return; // already dropped, flags were copied before that.
+        }
+        // `value` is BIT(1), "+0" converts it to a number.
+        statement.executeUpdate(
+            "UPDATE `protection_info` `i` JOIN (" +
+                "   SELECT `id`,SUM(`bits`) AS `flags` FROM (" +
+                "       SELECT `id`,(1<<`flag`)|(MAX(`value`+0)<<(`flag`+16)) AS `bits` FROM `protection_flag` GROUP BY `id`,`flag`" +
+                "   ) `b` GROUP BY `id`" +
+                ") `f` ON `f`.`id`=`i`.`id` SET `i`.`flags`=`f`.`flags`"
+        );
+        statement.executeUpdate("DROP TABLE `protection_flag`");
+    }
+
+    @Override
+    protected void to4(Statement statement) throws SQLException {
+        if (!hasIndex(statement, "protection_info", "owner")) {
+            statement.executeUpdate("ALTER TABLE `protection_info` ADD INDEX `owner`(`owner`)");
+        }
+        if (!hasIndex(statement, "protection_member", "member")) {
+            statement.executeUpdate("ALTER TABLE `protection_member` ADD INDEX `member`(`member`,`id`)");
+        }
+    }
+
+    @Override
+    protected void to5(Statement statement) throws SQLException {
+        if (!hasColumn(statement, "protection_info", "group_id")) {
+            statement.executeUpdate("ALTER TABLE `protection_info` ADD COLUMN `group_id` INT UNSIGNED NOT NULL DEFAULT 0");
+        }
+        if (!hasIndex(statement, "protection_info", "group_id")) {
+            statement.executeUpdate("ALTER TABLE `protection_info` ADD INDEX `group_id`(`group_id`)");
+        }
+    }
+
+    @Override
+    protected void to6(Statement statement) throws SQLException {
+        if (hasColumn(statement, "protection_info", "has_flag")) {
+            statement.executeUpdate("ALTER TABLE `protection_info` DROP COLUMN `has_flag`");
+        }
+    }
+}
@@ -2,14 +2,16 @@ package jp.jyn.chestsafe.db.driver.mysql;
 
 import com.zaxxer.hikari.HikariDataSource;
 import jp.jyn.chestsafe.db.driver.ProtectionDriver;
+import jp.jyn.chestsafe.util.metrics.Metrics;
 
 import java.sql.Connection;
+import java.sql.PreparedStatement;
 import java.sql.SQLException;
 import java.sql.Statement;
 
 public class ProtectionMysql extends ProtectionDriver {
-    public ProtectionMysql(HikariDataSource hikari) {
-        super(hikari);
+    public ProtectionMysql(HikariDataSource hikari, Metrics metrics) {
+        super(hikari, metrics);
 
         try (Connection connection = hikari.getConnection();
              Statement statement = connection.createStatement()) {
@@ -19,7 +21,10 @@ public class ProtectionMysql extends ProtectionDriver {
                     "   `owner` INT     UNSIGNED NOT NULL," +
                     "   `type`  TINYINT UNSIGNED NOT NULL," +
                     "   `has_member` BIT(1)   NOT NULL DEFAULT b'0'," +
-                    "   `has_flag`   BIT(1)   NOT NULL DEFAULT b'0'," +
+                    "   `flags`      INT      NOT NULL DEFAULT 0," +
+                    "   `group_id`   INT      UNSIGNED NOT NULL DEFAULT 0," +
+                    "   INDEX `owner`(`owner`)," +
+                    "   INDEX `group_id`(`group_id`)," +
                     "   FOREIGN KEY (`id`) REFERENCES `id_protection`(`id`)" +
                     "       ON DELETE CASCADE" +
                     ")"
@@ -30,18 +35,27 @@ public class ProtectionMysql extends ProtectionDriver {
                     "   `id`     INT UNSIGNED NOT NULL," +
                     "   `member` INT UNSIGNED NOT NULL," +
                     "   INDEX (`id`)," +
+                    "   INDEX `member`(`member`,`id`)," +
                     "   FOREIGN KEY (`id`) REFERENCES `id_protection`(`id`)" +
                     "       ON DELETE CASCADE" +
                     ")"
             );
 
             statement.executeUpdate(
-                "CREATE TABLE IF NOT EXISTS `protection_flag` (" +
-                    "   `id`    INT     UNSIGNED NOT NULL," +
-                    "   `flag`  TINYINT UNSIGNED NOT NULL," +
-                    "   `value` BIT(1)        NOT NULL DEFAULT b'0'," +
-                    "   INDEX (`id`)," +
-                    "   FOREIGN KEY (`id`) REFERENCES `id_protection`(`id`)" +
+                "CREATE TABLE IF NOT EXISTS `protection_group` (" +
+                    "   `id`    INT UNSIGNED NOT NULL PRIMARY KEY AUTO_INCREMENT," +
+                    "   `owner` INT UNSIGNED NOT NULL," +
+                    "   `name`  VARCHAR(16)  NOT NULL," +
+                    "   UNIQUE KEY(`owner`,`name`)" +
+                    ")"
+            );
+            statement.executeUpdate(
+                "CREATE TABLE IF NOT EXISTS `group_member` (" +
+                    "   `group_id` INT UNSIGNED NOT NULL," +
+                    "   `member`   INT UNSIGNED NOT NULL," +
+                    "   PRIMARY KEY(`group_id`,`member`)," +
+                    "   INDEX `member`(`member`)," +
+                    "   FOREIGN KEY (`group_id`) REFERENCES `protection_group`(`id`)" +
                     "       ON DELETE CASCADE" +
                     ")"
             );
@@ -49,4 +63,10 @@ public class ProtectionMysql extends ProtectionDriver {
             throw new RuntimeException(e);
         }
     }
+
+    @Override
+    protected void setStreaming(PreparedStatement statement) throws SQLException {
+        // Connector/J streams rows one by one only with this value.
+        statement.setFetchSize(Integer.MIN_VALUE);
+    }
 }
@@ -2,14 +2,15 @@ package jp.jyn.chestsafe.db.driver.sqlite;
 
 import com.zaxxer.hikari.HikariDataSource;
 import jp.jyn.chestsafe.db.driver.IDDriver;
+import jp.jyn.chestsafe.util.metrics.Metrics;
 
 import java.sql.Connection;
 import java.sql.SQLException;
 import java.sql.Statement;
 
 public class IDSqlite extends IDDriver {
-    public IDSqlite(HikariDataSource hikari) {
-        super(hikari);
+    public IDSqlite(HikariDataSource hikari, Metrics metrics) {
+        super(hikari, metrics);
 
         try (Connection connection = hikari.getConnection();
              Statement statement = connection.createStatement()) {
@@ -32,12 +33,20 @@ public class IDSqlite extends IDDriver {
                     "   `x`     INTEGER NOT NULL," +
                     "   `y`     INTEGER NOT NULL," +
                     "   `z`     INTEGER NOT NULL," +
+                    "   `cx`    INTEGER NOT NULL," +
+                    "   `cz`    INTEGER NOT NULL," +
                     "   UNIQUE(`world`,`x`,`y`,`z`)" +
                     ")"
             );
+            statement.executeUpdate("CREATE INDEX IF NOT EXISTS `id_protection_chunk` ON `id_protection`(`world`,`cx`,`cz`)");
         } catch (SQLException e) {
             throw new RuntimeException(e);
         }
     }
 
+    @Override
+    protected String insertIgnore(String table, String column) {
+        // last_insert_rowid() is not updated when ignored, so the update count must be checked.
+        return "INSERT OR IGNORE INTO `" + table + "` (`" + column + "`) VALUES (?)";
+    }
 }
@@ -0,0 +1,72 @@
+package jp.jyn.chestsafe.db.driver.sqlite;
+
+import jp.jyn.chestsafe.db.driver.Migrator;
+
+import java.sql.SQLException;
+import java.sql.Statement;
+
+public class MigratorSqlite extends Migrator {
+    // DDL is transactional in SQLite, a failed step is rolled back as a whole.
+
+    @Override
+    protected void to2(Statement statement) throws SQLException {
+        statement.executeUpdate("ALTER TABLE `id_protection` ADD COLUMN `cx` INTEGER NOT NULL DEFAULT 0");
+        statement.executeUpdate("ALTER TABLE `id_protection` ADD COLUMN `cz` INTEGER NOT NULL DEFAULT 0");
+        statement.executeUpdate("UPDATE `id_protection` SET `cx`=(`x`>>4),`cz`=(`z`>>4)");
+        // index is created by IDSqlite.
+    }
+
+    @Override
+    protected void to3(Statement statement) throws SQLException {
+        statement.executeUpdate("ALTER TABLE `protection_info` ADD COLUMN `flags` INTEGER NOT NULL DEFAULT 0");
+        // Duplicate rows of the same flag are merged. (older versions could leave them)
+        statement.executeUpdate(
+            "CREATE TEMPORARY TABLE `migrate_flags` AS " +
+                "SELECT `id`,SUM(`bits`) AS `flags` FROM (" +
+                "   SELECT `id`,(1<<`flag`)|(MAX(`value`)<<(`flag`+16)) AS `bits` FROM `protection_flag` GROUP BY `id`,`flag`" +
+                ") GROUP BY `id`"
+        );
+        statement.executeUpdate("CREATE INDEX `migrate_flags_id` ON `migrate_flags`(`id`)");
+        statement.executeUpdate(
+            "UPDATE `protection_info` SET `flags`=" +
+                "(SELECT `flags` FROM `migrate_flags` WHERE `migrate_flags`.`id`=`protection_info`.`id`) " +
+                "WHERE `id` IN (SELECT `id` FROM `migrate_flags`)"
+        );
+        statement.executeUpdate("DROP TABLE `migrate_flags`");
+        statement.executeUpdate("DROP TABLE `protection_flag`");
+    }
+
+    @Override
+    protected void to4(Statement statement) throws SQLException {
+        // index is created by ProtectionSqlite.
+    }
+
+    @Override
+    protected void to5(Statement statement) throws SQLException {
+        statement.executeUpdate("ALTER TABLE `protection_info` ADD COLUMN `group_id` INTEGER NOT NULL DEFAULT 0");
+    }
+
+    @Override
+    protected void to6(Statement statement) throws SQLException {
+        // DROP COLUMN is not supported by older SQLite (before 3.35), the table is rebuilt.
+        statement.executeUpdate(
+            "CREATE TABLE `migrate_protection_info` (" +
+                "   `id`    INTEGER NOT NULL PRIMARY KEY," +
+                "   `type`  INTEGER NOT NULL," +
+                "   `owner` INTEGER NOT NULL," +
+                "   `has_member` INTEGER NOT NULL DEFAULT 0," +
+                "   `flags`      INTEGER NOT NULL DEFAULT 0," +
+                "   `group_id`   INTEGER NOT NULL DEFAULT 0," +
+                "   FOREIGN KEY (`id`) REFERENCES `id_protection`(`id`)" +
+                "       ON DELETE CASCADE" +
+                ")"
+        );
+        statement.executeUpdate(
+            "INSERT INTO `migrate_protection_info` (`id`,`type`,`owner`,`has_member`,`flags`,`group_id`) " +
+                "SELECT `id`,`type`,`owner`,`has_member`,`flags`,`group_id` FROM `protection_info`"
+        );
+        statement.executeUpdate("DROP TABLE `protection_info`");
+        statement.executeUpdate("ALTER TABLE `migrate_protection_info` RENAME TO `protection_info`");
+        // indexes are created by ProtectionSqlite.
+    }
+}
@@ -2,14 +2,15 @@ package jp.jyn.chestsafe.db.driver.sqlite;
 
 import com.zaxxer.hikari.HikariDataSource;
 import jp.jyn.chestsafe.db.driver.ProtectionDriver;
+import jp.jyn.chestsafe.util.metrics.Metrics;
 
 import java.sql.Connection;
 import java.sql.SQLException;
 import java.sql.Statement;
 
 public class ProtectionSqlite extends ProtectionDriver {
-    public ProtectionSqlite(HikariDataSource hikari) {
-        super(hikari);
+    public ProtectionSqlite(HikariDataSource hikari, Metrics metrics) {
+        super(hikari, metrics);
 
         try (Connection connection = hikari.getConnection();
              Statement statement = connection.createStatement()) {
@@ -19,7 +20,8 @@ public class ProtectionSqlite extends ProtectionDriver {
                     "   `type`  INTEGER NOT NULL," +
                     "   `owner` INTEGER NOT NULL," +
                     "   `has_member` INTEGER NOT NULL DEFAULT 0," +
-                    "   `has_flag`   INTEGER NOT NULL DEFAULT 0," +
+                    "   `flags`      INTEGER NOT NULL DEFAULT 0," +
+                    "   `group_id`   INTEGER NOT NULL DEFAULT 0," +
                     "   FOREIGN KEY (`id`) REFERENCES `id_protection`(`id`)" +
                     "       ON DELETE CASCADE" +
                     ")"
@@ -37,17 +39,37 @@ public class ProtectionSqlite extends ProtectionDriver {
                 "CREATE INDEX IF NOT EXISTS `protection_member_id` ON `protection_member`(`id`)"
             );
 
+            // reverse lookup (id is included in the index as rowid)
             statement.executeUpdate(
-                "CREATE TABLE IF NOT EXISTS `protection_flag` (" +
-                    "   `id`    INTEGER NOT NULL," +
-                    "   `flag`  INTEGER NOT NULL," +
-                    "   `value` INTEGER NOT NULL DEFAULT 0," +
-                    "   FOREIGN KEY (`id`) REFERENCES `id_protection`(`id`)" +
+                "CREATE INDEX IF NOT EXISTS `protection_info_owner` ON `protection_info`(`owner`)"
+            );
+            statement.executeUpdate(
+                "CREATE INDEX IF NOT EXISTS `protection_member_member` ON `protection_member`(`member`,`id`)"
+            );
+
+            statement.executeUpdate(
+                "CREATE TABLE IF NOT EXISTS `protection_group` (" +
+                    "   `id`    INTEGER NOT NULL PRIMARY KEY AUTOINCREMENT," +
+                    "   `owner` INTEGER NOT NULL," +
+                    "   `name`  TEXT    NOT NULL," +
+                    "   UNIQUE(`owner`,`name`)" +
+                    ")"
+            );
+            statement.executeUpdate(
+                "CREATE TABLE IF NOT EXISTS `group_member` (" +
+                    "   `group_id` INTEGER NOT NULL," +
+                    "   `member`   INTEGER NOT NULL," +
+                    "   PRIMARY KEY(`group_id`,`member`)," +
+                    "   FOREIGN KEY (`group_id`) REFERENCES `protection_group`(`id`)" +
                     "       ON DELETE CASCADE" +
                     ")"
             );
+            // reverse lookup through the group
+            statement.executeUpdate(
+                "CREATE INDEX IF NOT EXISTS `group_member_member` ON `group_member`(`member`)"
+            );
             statement.executeUpdate(
-                "CREATE INDEX IF NOT EXISTS `protection_flag_id` ON `protection_flag`(`id`)"
+                "CREATE INDEX IF NOT EXISTS `protection_info_group` ON `protection_info`(`group_id`)"
             );
         } catch (SQLException e) {
             throw new RuntimeException(e);
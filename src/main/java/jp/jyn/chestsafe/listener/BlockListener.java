@@ -1,18 +1,21 @@
 package jp.jyn.chestsafe.listener;
 
-import jp.jyn.chestsafe.ChestSafe;
 import jp.jyn.chestsafe.config.MainConfig;
 import jp.jyn.chestsafe.config.MessageConfig;
 import jp.jyn.chestsafe.protection.Protection;
 import jp.jyn.chestsafe.protection.ProtectionRepository;
+import jp.jyn.chestsafe.util.WorkScheduler;
+import jp.jyn.chestsafe.util.collection.LongLongMap;
 import jp.jyn.jbukkitlib.config.locale.BukkitLocale;
 import jp.jyn.jbukkitlib.config.parser.component.ComponentVariable;
 import org.bukkit.Bukkit;
 import org.bukkit.Location;
 import org.bukkit.Material;
 import org.bukkit.block.Block;
+import org.bukkit.block.BlockFace;
 import org.bukkit.entity.Player;
 import org.bukkit.event.EventHandler;
+import org.bukkit.event.EventPriority;
 import org.bukkit.event.Listener;
 import org.bukkit.event.block.BlockBurnEvent;
 import org.bukkit.event.block.BlockPistonExtendEvent;
@@ -23,28 +26,31 @@ import org.bukkit.event.entity.EntityExplodeEvent;
 import org.bukkit.event.inventory.InventoryMoveItemEvent;
 import org.bukkit.event.inventory.InventoryPickupItemEvent;
 import org.bukkit.inventory.Inventory;
-import org.bukkit.plugin.Plugin;
 
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
 
 @SuppressWarnings("unused")
 public class BlockListener implements Listener {
-    private final Plugin plugin;
-
     private final Map<Material, MainConfig.ProtectionConfig> protectable;
     private final ProtectionRepository repository;
 
     private final boolean hopperDestroy;
+    private final boolean pistonMove;
     private final BukkitLocale<MessageConfig> message;
+    private final WorkScheduler scheduler;
 
-    public BlockListener(MainConfig config, ProtectionRepository repository, BukkitLocale<MessageConfig> message) {
-        this.plugin = ChestSafe.getInstance();
+    public BlockListener(MainConfig config, ProtectionRepository repository, BukkitLocale<MessageConfig> message, WorkScheduler scheduler) {
         this.protectable = config.protectable;
         this.repository = repository;
         this.hopperDestroy = config.hopperDestroy;
+        this.pistonMove = config.pistonMove;
         this.message = message;
+        this.scheduler = scheduler;
     }
 
     @EventHandler(ignoreCancelled = true)
@@ -70,15 +76,24 @@ public class BlockListener implements Listener {
 
     @EventHandler(ignoreCancelled = true)
     public void onEntityExplode(EntityExplodeEvent e) {
-        for (Block block : e.blockList()) {
-            if (checkFlag(block, Protection.Flag.EXPLOSION)) {
-                e.setCancelled(true);
-                return;
-            }
+        // A volley of TNT has hundreds of blocks, look them up at once.
+        if (repository.findAny(e.blockList(),
+            (block, protection) -> !protectable.get(block.getType()).getFlag(protection, Protection.Flag.EXPLOSION)
+        ).isPresent()) {
+            e.setCancelled(true);
         }
     }
 
+    private final static int VERDICT_ALLOW = 0;
+    private final static int VERDICT_DENY = 1;
+    private final static int VERDICT_DENY_CHEST = 2;
+    private final static int VERDICT_NOT_LOADED = -1;
+    private final static int TRANSFER_CACHE_LIMIT = 65536;
+
     private Inventory previousHopperMove;
+    // hopper location -> chest location + verdict (per world, UUID does not keep unloaded worlds)
+    private final Map<UUID, LongLongMap> transferCache = new HashMap<>();
+    private int transferModCount;
 
     @EventHandler(ignoreCancelled = true)
     public void onInventoryMoveItem(InventoryMoveItemEvent e) {
@@ -86,48 +101,111 @@ public class BlockListener implements Listener {
         // That is, if the transfer is canceled, this event will occur indefinitely.
         Inventory hopper = e.getInitiator();
         Inventory chest;
+        boolean push;
         if (e.getSource() == e.getInitiator()) {
             // hopper/dropper -> chest
             chest = e.getDestination();
+            push = true;
         } else /*if (e.getDestination() == e.getInitiator())*/ {
             // chest -> hopper
             chest = e.getSource();
+            push = false;
         }
 
-        // chest first search(There are many cases where the chest is protected than the hopper)
         Location chestLocation = chest.getLocation();
+        Location hopperLocation = hopper.getLocation();
+        if (chestLocation == null || hopperLocation == null) {
+            if (checkTransfer(hopper, chestLocation, hopperLocation) != VERDICT_ALLOW) {
+                e.setCancelled(true);
+            }
+            return;
+        }
+
+        // The verdict does not change until any protection is changed.
+        int modCount = repository.getModCount();
+        if (transferModCount != modCount) {
+            transferModCount = modCount;
+            transferCache.clear();
+        }
+        LongLongMap cache = transferCache.computeIfAbsent(hopperLocation.getWorld().getUID(), w -> new LongLongMap());
+        long key = (blockKey(hopperLocation) << 1) | (push ? 1 : 0);
+        long chestKey = blockKey(chestLocation);
+
+        long cached = cache.get(key, -1);
+        if (cached != -1 && (cached >>> 2) == chestKey) {
+            int verdict = (int) (cached & 0b11);
+            if (verdict == VERDICT_ALLOW) {
+                return;
+            }
+            e.setCancelled(true);
+            if (verdict == VERDICT_DENY || !hopperDestroy || hopper.equals(previousHopperMove)) {
+                return;
+            }
+            // hopper needs to be destroyed.
+        }
+
+        int verdict = checkTransfer(hopper, chestLocation, hopperLocation);
+        if (verdict != VERDICT_ALLOW) {
+            e.setCancelled(true);
+        }
+        if (verdict != VERDICT_NOT_LOADED) {
+            if (cache.size() >= TRANSFER_CACHE_LIMIT) {
+                cache.clear();
+            }
+            cache.put(key, (chestKey << 2) | verdict);
+        }
+    }
+
+    private int checkTransfer(Inventory hopper, Location chestLocation, Location hopperLocation) {
+        // chest first search(There are many cases where the chest is protected than the hopper)
         if (chestLocation != null) {
             Block chestBlock = chestLocation.getBlock();
-            Protection chestProtection = repository.get(chestBlock).orElse(null);
+            Optional<Protection> loaded = getLoadedProtection(chestBlock);
+            //noinspection OptionalAssignedToNull
+            if (loaded == null) {
+                // Not loaded yet, the hopper will retry.
+                return VERDICT_NOT_LOADED;
+            }
+            Protection chestProtection = loaded.orElse(null);
 
             if (denyTransfer(chestBlock, chestProtection)) {
-                e.setCancelled(true);
                 if (!hopperDestroy ||
                     hopper.equals(previousHopperMove)) { // many calls in chest -> hopper
-                    return;
+                    return VERDICT_DENY_CHEST;
                 }
                 previousHopperMove = hopper;
 
-                Location l = hopper.getLocation();
-                if (l != null) {
-                    Block b = l.getBlock();
-                    if (repository.get(b).orElse(null) == null) {
+                if (hopperLocation != null) {
+                    Block b = hopperLocation.getBlock();
+                    Optional<Protection> hopperProtection = getLoadedProtection(b);
+                    //noinspection OptionalAssignedToNull
+                    if (hopperProtection != null && !hopperProtection.isPresent()) {
                         destroy(b, chestBlock, chestProtection);
                     }
                 }
-                return;
+                return VERDICT_DENY_CHEST;
             }
         }
 
-        Location hopperLocation = hopper.getLocation();
         if (hopperLocation != null) {
             Block hopperBlock = hopperLocation.getBlock();
-            Protection hopperProtection = repository.get(hopperBlock).orElse(null);
-
-            if (denyTransfer(hopperBlock, hopperProtection)) {
-                e.setCancelled(true);
+            Optional<Protection> loaded = getLoadedProtection(hopperBlock);
+            //noinspection OptionalAssignedToNull
+            if (loaded == null) {
+                return VERDICT_NOT_LOADED;
+            }
+            if (denyTransfer(hopperBlock, loaded.orElse(null))) {
+                return VERDICT_DENY;
             }
         }
+        return VERDICT_ALLOW;
+    }
+
+    private static long blockKey(Location location) {
+        // x: 26bit, z: 26bit, y: 10bit (62bit)
+        return ((location.getBlockX() & 0x3FFFFFFL) << 36) |
+            ((location.getBlockZ() & 0x3FFFFFFL) << 10) |
+            (location.getBlockY() & 0x3FFL);
     }
 
     private boolean denyTransfer(Block block, Protection protection) {
@@ -135,14 +213,12 @@ public class BlockListener implements Listener {
             return false;
         }
 
-        Optional<Boolean> f = protection.getFlag(Protection.Flag.HOPPER);
-        //noinspection OptionalIsPresent
-        return f.isPresent() ? !f.get() : !protectable.get(block.getType()).flag.get(Protection.Flag.HOPPER);
+        return !protectable.get(block.getType()).getFlag(protection, Protection.Flag.HOPPER);
     }
 
     private void destroy(Block block, Block target, Protection protection) {
         // イベントの中で壊すとクラッシュする
-        Bukkit.getScheduler().runTask(plugin, (Runnable) block::breakNaturally);
+        scheduler.execute(block::breakNaturally);
         Player player = Bukkit.getPlayer(protection.getOwner());
         if (player != null) {
             ComponentVariable variable = ComponentVariable.init();
@@ -162,33 +238,41 @@ public class BlockListener implements Listener {
 
     @EventHandler(ignoreCancelled = true)
     public void onBlockPistonExtend(BlockPistonExtendEvent e) {
-        if (checkPiston(e.getBlocks())) {
+        if (checkPiston(e.getBlocks(), e.getDirection())) {
             e.setCancelled(true);
         }
     }
 
     @EventHandler(ignoreCancelled = true)
     public void onBlockPistonRetract(BlockPistonRetractEvent e) {
-        if (checkPiston(e.getBlocks())) {
+        if (checkPiston(e.getBlocks(), e.getDirection())) {
             e.setCancelled(true);
         }
     }
 
-    private boolean checkPiston(List<Block> blocks) {
-        for (Block block : blocks) {
-            MainConfig.ProtectionConfig config = protectable.get(block.getType());
-            if (config == null) {
-                continue;
-            }
+    // The event may be cancelled by other plugins after the check, protections are moved only if the blocks move.
+    @EventHandler(priority = EventPriority.MONITOR, ignoreCancelled = true)
+    public void onBlockPistonExtendMonitor(BlockPistonExtendEvent e) {
+        if (pistonMove) {
+            repository.moveAll(e.getBlocks(), e.getDirection());
+        }
+    }
 
-            Protection protection = getProtection(block);
-            if (protection != null) {
-                // There is no flag to allow piston movement.
-                // It needs to move protection. (It is complicated to implement)
-                return true;
-            }
+    @EventHandler(priority = EventPriority.MONITOR, ignoreCancelled = true)
+    public void onBlockPistonRetractMonitor(BlockPistonRetractEvent e) {
+        if (pistonMove) {
+            repository.moveAll(e.getBlocks(), e.getDirection());
         }
-        return false;
+    }
+
+    private boolean checkPiston(List<Block> blocks, BlockFace direction) {
+        if (pistonMove) {
+            // direction: movement of the blocks (also in retract)
+            return !repository.canMoveAll(blocks, direction);
+        }
+
+        // There is no flag to allow piston movement.
+        return repository.findAny(blocks, (block, protection) -> true).isPresent();
     }
 
     private boolean checkFlag(Block block, Protection.Flag flag) {
@@ -202,14 +286,25 @@ public class BlockListener implements Listener {
             return false;
         }
 
-        return !getFlag(protection, config, flag);
+        return !config.getFlag(protection, flag);
     }
 
     private Protection getProtection(Block block) {
         return repository.get(block).orElse(null);
     }
 
-    private Boolean getFlag(Protection protection, MainConfig.ProtectionConfig config, Protection.Flag flag) {
-        return protection.getFlag(flag).orElse(config.flag.get(flag));
+    /**
+     * Get protection without blocking on the database.
+     *
+     * @param block target block
+     * @return protection, or null if not loaded yet.
+     */
+    @SuppressWarnings("OptionalAssignedToNull")
+    private Optional<Protection> getLoadedProtection(Block block) {
+        CompletableFuture<Optional<Protection>> future = repository.getAsync(block);
+        if (!future.isDone() || future.isCompletedExceptionally()) {
+            return null;
+        }
+        return future.join();
     }
 }
@@ -0,0 +1,27 @@
+package jp.jyn.chestsafe.listener;
+
+import jp.jyn.chestsafe.protection.ProtectionRepository;
+import org.bukkit.event.EventHandler;
+import org.bukkit.event.EventPriority;
+import org.bukkit.event.Listener;
+import org.bukkit.event.world.ChunkLoadEvent;
+import org.bukkit.event.world.ChunkUnloadEvent;
+
+@SuppressWarnings("unused")
+public class ChunkListener implements Listener {
+    private final ProtectionRepository repository;
+
+    public ChunkListener(ProtectionRepository repository) {
+        this.repository = repository;
+    }
+
+    @EventHandler(priority = EventPriority.MONITOR)
+    public void onChunkLoad(ChunkLoadEvent e) {
+        repository.loadChunk(e.getChunk());
+    }
+
+    @EventHandler(priority = EventPriority.MONITOR)
+    public void onChunkUnload(ChunkUnloadEvent e) {
+        repository.unloadChunk(e.getChunk());
+    }
+}
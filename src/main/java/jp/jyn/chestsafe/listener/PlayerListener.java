@@ -26,11 +26,13 @@ import org.bukkit.event.block.BlockBreakEvent;
 import org.bukkit.event.block.BlockPlaceEvent;
 import org.bukkit.event.player.PlayerInteractEvent;
 import org.bukkit.event.player.PlayerJoinEvent;
+import org.bukkit.event.player.PlayerQuitEvent;
 import org.bukkit.plugin.Plugin;
 import org.bukkit.scheduler.BukkitScheduler;
 
 import java.util.Map;
 import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
 import java.util.function.BiConsumer;
 
 @SuppressWarnings("unused")
@@ -106,11 +108,17 @@ public class PlayerListener implements Listener {
     @EventHandler(ignoreCancelled = true)
     public void onPlayerJoin(PlayerJoinEvent e) {
         Player player = e.getPlayer();
+        repository.join(player);
         if (player.hasPermission("chestsafe.version")) {
             checker.check(player);
         }
     }
 
+    @EventHandler
+    public void onPlayerQuit(PlayerQuitEvent e) {
+        repository.quit(e.getPlayer());
+    }
+
     @EventHandler(ignoreCancelled = true)
     public void onPlayerInteract(PlayerInteractEvent e) {
         if (e.getAction() != Action.RIGHT_CLICK_BLOCK && e.getAction() != Action.LEFT_CLICK_BLOCK) {
@@ -129,7 +137,15 @@ public class PlayerListener implements Listener {
             return;
         }
 
-        Protection protection = getProtection(block);
+        Optional<Protection> loaded = getLoadedProtection(block);
+        //noinspection OptionalAssignedToNull
+        if (loaded == null) {
+            // Not loaded yet, deny until loading is complete. (the player will retry)
+            e.setUseInteractedBlock(Event.Result.DENY);
+            e.setCancelled(true);
+            return;
+        }
+        Protection protection = loaded.orElse(null);
         if (protection == null) {
             return;
         }
@@ -159,7 +175,14 @@ public class PlayerListener implements Listener {
             return;
         }
 
-        Protection protection = getProtection(block);
+        Optional<Protection> loaded = getLoadedProtection(block);
+        //noinspection OptionalAssignedToNull
+        if (loaded == null) {
+            // Not loaded yet, it may be protected.
+            e.setCancelled(true);
+            return;
+        }
+        Protection protection = loaded.orElse(null);
         if (protection == null) {
             return;
         }
@@ -242,8 +265,19 @@ public class PlayerListener implements Listener {
         return false;
     }
 
-    private Protection getProtection(Block block) {
-        return repository.get(block).orElse(null);
+    /**
+     * Get protection without blocking on the database.
+     *
+     * @param block target block
+     * @return protection, or null if not loaded yet.
+     */
+    @SuppressWarnings("OptionalAssignedToNull")
+    private Optional<Protection> getLoadedProtection(Block block) {
+        CompletableFuture<Optional<Protection>> future = repository.getAsync(block);
+        if (!future.isDone() || future.isCompletedExceptionally()) {
+            return null;
+        }
+        return future.join();
     }
 
     private boolean isProtectable(Material material) {
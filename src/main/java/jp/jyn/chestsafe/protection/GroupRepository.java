@@ -0,0 +1,133 @@
+package jp.jyn.chestsafe.protection;
+
+import jp.jyn.chestsafe.db.driver.ProtectionDriver;
+import jp.jyn.jbukkitlib.util.PackagePrivate;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Optional;
+import java.util.TreeMap;
+import java.util.UUID;
+
+/**
+ * <p>All groups are kept in memory, they are few compared to protections.
+ * Group ids are assigned here, and the database is written by the journal writer.</p>
+ * <p>Note: main thread only.</p>
+ */
+@PackagePrivate
+class GroupRepository {
+    private final ProtectionDriver protectionDriver;
+    private final ProtectionJournal journal;
+    private final IDRepository idRepository;
+
+    private final Map<Integer, ProtectionGroup> idToGroup = new HashMap<>();
+    // owner id -> name -> group
+    private final Map<Integer, Map<String, ProtectionGroup>> ownerToGroups = new HashMap<>();
+    private int nextId = 1; // AUTO_INCREMENT starts with 1
+
+    @PackagePrivate
+    GroupRepository(ProtectionDriver protectionDriver, ProtectionJournal journal, IDRepository idRepository) {
+        this.protectionDriver = protectionDriver;
+        this.journal = journal;
+        this.idRepository = idRepository;
+
+        for (ProtectionDriver.GroupInfo info : protectionDriver.getGroups()) {
+            put(new ProtectionGroup(info.id, protectionDriver, journal, idRepository, info.owner, info.name));
+            nextId = Math.max(nextId, info.id + 1);
+        }
+        protectionDriver.forEachGroupMember((group, member) -> {
+            ProtectionGroup g = idToGroup.get(group);
+            if (g != null) {
+                g.loadMember(member);
+            }
+        });
+    }
+
+    private void put(ProtectionGroup group) {
+        idToGroup.put(group.id, group);
+        ownerToGroups.computeIfAbsent(group.getOwnerId(), k -> new TreeMap<>()).put(group.getName(), group);
+    }
+
+    /**
+     * Get group
+     *
+     * @param id group id (0: no group)
+     * @return group, or null if not found.
+     */
+    public ProtectionGroup get(int id) {
+        return idToGroup.get(id);
+    }
+
+    public Optional<ProtectionGroup> get(UUID owner, String name) {
+        Map<String, ProtectionGroup> groups = ownerToGroups.get(idRepository.findUserId(owner));
+        return groups == null ? Optional.empty() : Optional.ofNullable(groups.get(name.toLowerCase(Locale.ENGLISH)));
+    }
+
+    /**
+     * Get groups of the owner.
+     *
+     * @param owner owner
+     * @return groups, ordered by name.
+     */
+    public Collection<ProtectionGroup> getGroups(UUID owner) {
+        Map<String, ProtectionGroup> groups = ownerToGroups.get(idRepository.findUserId(owner));
+        return groups == null ? Collections.emptyList() : Collections.unmodifiableCollection(groups.values());
+    }
+
+    /**
+     * Is the user a member of the group?
+     *
+     * @param group group id (0: no group)
+     * @param user  user id
+     * @return result
+     */
+    public boolean isMember(int group, int user) {
+        ProtectionGroup g = idToGroup.get(group);
+        return g != null && g.isMember(user);
+    }
+
+    /**
+     * Create group.
+     *
+     * @param owner owner
+     * @param name  name (case insensitive)
+     * @return created group, empty if already exists.
+     */
+    public Optional<ProtectionGroup> create(UUID owner, String name) {
+        if (get(owner, name).isPresent()) {
+            return Optional.empty();
+        }
+
+        int ownerId = idRepository.UUIDToId(owner);
+        String lower = name.toLowerCase(Locale.ENGLISH);
+        int id = nextId++;
+        journal.execute(() -> protectionDriver.addGroup(id, ownerId, lower));
+        ProtectionGroup group = new ProtectionGroup(id, protectionDriver, journal, idRepository, ownerId, lower);
+        put(group);
+        return Optional.of(group);
+    }
+
+    /**
+     * <p>Remove group from memory.</p>
+     * <p>Note: The database and cached protections must be updated by the caller. (see {@link ProtectionDriver#removeGroup(int)})</p>
+     *
+     * @param group group
+     * @return false if the group has already been removed.
+     */
+    public boolean remove(ProtectionGroup group) {
+        if (idToGroup.remove(group.id) == null) {
+            return false;
+        }
+        Map<String, ProtectionGroup> groups = ownerToGroups.get(group.getOwnerId());
+        if (groups != null) {
+            groups.remove(group.getName());
+            if (groups.isEmpty()) {
+                ownerToGroups.remove(group.getOwnerId());
+            }
+        }
+        return true;
+    }
+}
@@ -3,12 +3,19 @@ package jp.jyn.chestsafe.protection;
 import jp.jyn.chestsafe.config.MainConfig;
 import jp.jyn.chestsafe.db.driver.IDDriver;
 import jp.jyn.chestsafe.db.driver.IDDriver.IntLocation;
+import jp.jyn.chestsafe.util.collection.LongIntMap;
+import jp.jyn.chestsafe.util.collection.LongLongMap;
+import jp.jyn.chestsafe.util.collection.LongObjectMap;
+import jp.jyn.chestsafe.util.metrics.CacheStats;
+import jp.jyn.chestsafe.util.metrics.Metrics;
 import jp.jyn.jbukkitlib.cache.CacheFactory;
 import jp.jyn.jbukkitlib.util.PackagePrivate;
 import org.bukkit.Location;
 import org.bukkit.World;
 
+import java.util.Arrays;
 import java.util.Collection;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
@@ -17,29 +24,127 @@ import java.util.UUID;
 
 @PackagePrivate
 class IDRepository {
+    /**
+     * Protection does not exist.
+     */
+    public final static int NONE = 0; // AUTO_INCREMENT starts with 1
+    /**
+     * Not cached.
+     */
+    public final static int UNKNOWN = -1;
+    private final static long NO_LOCATION = -1; // world 255 (not packable)
+
     private final IDDriver idDriver;
 
-    private final Map<String, Integer> worldToIdCache = CacheFactory.INFINITY.create();
-    private final Map<Integer, Optional<String>> idToWorldCache = CacheFactory.INFINITY.create();
+    private final Map<String, Integer> worldToIdCache;
+    private final Map<Integer, Optional<String>> idToWorldCache;
     private final Map<Integer, UUID> idToUUIDCache;
+    // NONE: unknown user (negative entry of findUserId)
     private final Map<UUID, Integer> UUIDToIdCache;
-    private final Map<IntLocation, OptionalInt> locationToIdCache;
-    private final Map<Integer, IntLocation> idToLocationCache;
+    // Online players are never evicted, member checks of them always hit.
+    private final Map<UUID, Integer> onlineUsers = new HashMap<>();
+
+    // All protections are in memory. (locationToIdCache has no negative entry)
+    private final boolean resident;
+    // -1: infinity, 0: disable
+    private final int locationCacheSize;
+    // packed location -> id (or NONE)
+    private final LongIntMap locationToIdCache = new LongIntMap();
+    // id -> packed location
+    private final LongLongMap idToLocationCache = new LongLongMap();
+    private final CacheStats locationStats;
+    private final CacheStats idLocationStats;
+
+    // Chunks whose protections are all in memory. (chunk key -> packed location -> id)
+    // Locations in a resident chunk that are not in the map are known to be unprotected.
+    private final LongObjectMap<LongIntMap> residentChunks = new LongObjectMap<>();
+    // Chunks being loaded. (chunk key -> modified while loading)
+    private final Map<Long, Boolean> loadingChunks = new HashMap<>();
 
-    public IDRepository(MainConfig.CacheConfig cache, IDDriver idDriver) {
+    private int modCount = 0;
+
+    public IDRepository(MainConfig.CacheConfig cache, IDDriver idDriver, Metrics metrics) {
         this.idDriver = idDriver;
 
-        idToUUIDCache = cache.id.create();
-        UUIDToIdCache = cache.id.create();
-        locationToIdCache = cache.location.create();
-        idToLocationCache = cache.location.create();
+        worldToIdCache = metrics.cache("worldToId", CacheFactory.INFINITY.create());
+        idToWorldCache = metrics.cache("idToWorld", CacheFactory.INFINITY.create());
+        idToUUIDCache = metrics.cache("idToUUID", cache.id.create());
+        UUIDToIdCache = metrics.cache("UUIDToId", cache.id.create());
+        locationStats = metrics.cache("locationToId", locationToIdCache::size);
+        idLocationStats = metrics.cache("idToLocation", idToLocationCache::size);
+        locationCacheSize = cache.location;
+        resident = cache.resident;
+    }
+
+    /**
+     * Load all ids into memory. (resident mode)
+     *
+     * @return number of protections
+     */
+    public int loadAll() {
+        idDriver.forEachWorld((id, name) -> {
+            worldToIdCache.put(name, id);
+            idToWorldCache.put(id, Optional.of(name));
+        });
+        idDriver.forEachUser(this::cacheUser);
+
+        int[] count = {0};
+        idDriver.forEachProtection((id, location) -> {
+            // Not packable location is left to the database.
+            if (packable(location)) {
+                long key = pack(location);
+                locationToIdCache.put(key, id);
+                idToLocationCache.put(id, key);
+                count[0]++;
+            }
+        });
+        return count[0];
+    }
+
+    // region location key
+    // world: 8bit(unsigned), x: 22bit, z: 22bit, y: 12bit
+    private static boolean packable(int world, int x, int y, int z) {
+        return world >= 0 && world < 0xFF &&
+            x >= -(1 << 21) && x < (1 << 21) &&
+            z >= -(1 << 21) && z < (1 << 21) &&
+            y >= -(1 << 11) && y < (1 << 11);
+    }
+
+    private static boolean packable(IntLocation location) {
+        return packable(location.world, location.x, location.y, location.z);
+    }
+
+    private static long pack(int world, int x, int y, int z) {
+        return ((long) world << 56) |
+            ((x & 0x3FFFFFL) << 34) |
+            ((z & 0x3FFFFFL) << 12) |
+            (y & 0xFFFL);
+    }
+
+    private static long pack(IntLocation location) {
+        return pack(location.world, location.x, location.y, location.z);
+    }
+
+    private static IntLocation unpack(long key) {
+        return new IntLocation(
+            (int) (key >>> 56),
+            (int) (key << 8 >> 42),
+            (int) (key << 52 >> 52),
+            (int) (key << 30 >> 42)
+        );
     }
 
+    private static long chunkKeyOf(long key) {
+        return chunkKey((int) (key >>> 56), (int) (key << 8 >> 42) >> 4, (int) (key << 30 >> 42) >> 4);
+    }
+    // endregion
+
     public int add(IntLocation location) {
         int id = idDriver.add(location);
+        modCount++;
         // update cache
-        idToLocationCache.put(id, location);
-        locationToIdCache.put(location, OptionalInt.of(id));
+        cacheLocation(location, id);
+        residentPut(location, id);
 
         return id;
     }
@@ -50,9 +155,11 @@ class IDRepository {
     }
 
     public void remove(int id, IntLocation location) {
+        modCount++;
         // remove cache
         if (location != null) {
-            locationToIdCache.put(location, OptionalInt.empty()); // negative
+            cacheLocation(location, NONE); // negative
+            residentRemove(location);
         }
         idToLocationCache.remove(id);
 
@@ -60,63 +167,465 @@ class IDRepository {
         idDriver.remove(id);
     }
 
+    /**
+     * Remove protections in a single transaction.
+     *
+     * @param ids protection ids
+     */
+    public void removeAll(int[] ids) {
+        Map<Integer, IntLocation> protections = new HashMap<>(ids.length * 2);
+        int[] unknown = new int[ids.length];
+        int size = 0;
+        for (int id : ids) {
+            long key = idToLocationCache.get(id, NO_LOCATION);
+            if (key != NO_LOCATION) {
+                protections.put(id, unpack(key));
+            } else {
+                protections.put(id, null);
+                unknown[size++] = id;
+            }
+        }
+        // Cache needs to be deleted reliably.
+        protections.putAll(idDriver.idToLocations(Arrays.copyOf(unknown, size)));
+        removeAll(protections);
+    }
+
+    /**
+     * Remove protections in a single transaction.
+     *
+     * @param protections protection id to location (location can be null if not exists)
+     */
+    public void removeAll(Map<Integer, IntLocation> protections) {
+        if (protections.isEmpty()) {
+            return;
+        }
+        idDriver.removeAll(forgetAll(protections));
+    }
+
+    /**
+     * <p>Remove protections from the cache only.</p>
+     * <p>The caller must remove them from the database by {@link #deleteAll(int[])}.</p>
+     *
+     * @param protections protection id to location (location can be null if not exists)
+     * @return protection ids
+     */
+    public int[] forgetAll(Map<Integer, IntLocation> protections) {
+        modCount++;
+        int[] ids = new int[protections.size()];
+        int i = 0;
+        for (Map.Entry<Integer, IntLocation> entry : protections.entrySet()) {
+            IntLocation location = entry.getValue();
+            if (location != null) {
+                cacheLocation(location, NONE); // negative
+                residentRemove(location);
+            }
+            idToLocationCache.remove(entry.getKey());
+            ids[i++] = entry.getKey();
+        }
+        return ids;
+    }
+
+    /**
+     * <p>Remove protections from the database only, in a single transaction.</p>
+     * <p>Note: The cache is not touched, this can be called from any thread.</p>
+     *
+     * @param ids protection ids
+     */
+    public void deleteAll(int[] ids) {
+        idDriver.removeAll(ids);
+    }
+
     public void move(int id, IntLocation location) {
         // get old location
         IntLocation oldLocation = idToLocation(id).orElse(null);
         if (location.equals(oldLocation)) {
             return;
         }
+        modCount++;
 
         // update cache
-        idToLocationCache.put(id, location);
-        locationToIdCache.put(location, OptionalInt.of(id));
         if (oldLocation != null) {
-            locationToIdCache.put(oldLocation, OptionalInt.empty()); // negative
+            cacheLocation(oldLocation, NONE); // negative
+            residentRemove(oldLocation);
         }
+        // Also filled by resident chunks, even if the location cache is disabled.
+        idToLocationCache.remove(id);
+        cacheLocation(location, id);
+        residentPut(location, id);
         idDriver.move(id, location);
     }
 
-    @SuppressWarnings("OptionalAssignedToNull")
-    public OptionalInt locationToId(Location location) {
-        IntLocation intLocation = new IntLocation(worldToId(location.getWorld()), location.getBlockX(), location.getBlockY(), location.getBlockZ());
-        OptionalInt id = locationToIdCache.get(intLocation);
-        if (id != null) {
+    /**
+     * Move protections in a single transaction.
+     *
+     * @param locations id to new location, updated in iteration order. (a location must be vacated before it is reused)
+     * @param current   id to current location
+     */
+    public void moveAll(Map<Integer, IntLocation> locations, Map<Integer, IntLocation> current) {
+        if (locations.isEmpty()) {
+            return;
+        }
+        modCount++;
+        // Database first, the cache must not have locations that were not written.
+        idDriver.moveAll(locations);
+
+        // Old locations first, a new location may be an old location of another protection.
+        for (Integer id : locations.keySet()) {
+            IntLocation oldLocation = current.get(id);
+            if (oldLocation != null) {
+                cacheLocation(oldLocation, NONE);
+                residentRemove(oldLocation);
+            }
+            idToLocationCache.remove(id);
+        }
+        for (Map.Entry<Integer, IntLocation> entry : locations.entrySet()) {
+            cacheLocation(entry.getValue(), entry.getKey());
+            residentPut(entry.getValue(), entry.getKey());
+        }
+    }
+
+    /**
+     * Get protection id.
+     *
+     * @param location location
+     * @return protection id, or {@link #NONE} if not exists.
+     */
+    public int locationToId(Location location) {
+        int world = worldToId(location.getWorld());
+        int x = location.getBlockX(), y = location.getBlockY(), z = location.getBlockZ();
+        if (!packable(world, x, y, z)) {
+            locationStats.miss();
+            return idDriver.locationToId(world, x, y, z).orElse(NONE);
+        }
+
+        long key = pack(world, x, y, z);
+        int id = count(cachedLocationToId(key));
+        if (id != UNKNOWN) {
             return id;
         }
 
-        id = idDriver.locationToId(intLocation);
-        locationToIdCache.put(intLocation, id);
-        id.ifPresent(i -> idToLocationCache.put(i, intLocation));
+        id = idDriver.locationToId(world, x, y, z).orElse(NONE);
+        cacheLocation(key, id);
         return id;
     }
 
+    /**
+     * Get protection id from cache only.
+     *
+     * @param location location
+     * @return protection id, {@link #NONE} if not exists, or {@link #UNKNOWN} if not cached.
+     */
+    public int peekLocationToId(Location location) {
+        Integer world = worldToIdCache.get(location.getWorld().getName());
+        if (world == null) {
+            return count(UNKNOWN);
+        }
+
+        int x = location.getBlockX(), y = location.getBlockY(), z = location.getBlockZ();
+        if (!packable(world, x, y, z)) {
+            return count(UNKNOWN);
+        }
+        return count(cachedLocationToId(pack(world, x, y, z)));
+    }
+
+    /**
+     * Get protection ids from the database in one query, and cache them. (the cache is not searched)
+     *
+     * @param locations locations
+     * @return location to protection id, {@link #NONE} if not exists.
+     */
+    public Map<Location, Integer> loadLocationToIds(Collection<Location> locations) {
+        Map<IntLocation, Location> query = new HashMap<>(locations.size() * 2);
+        for (Location location : locations) {
+            query.put(new IntLocation(worldToId(location.getWorld()), location.getBlockX(), location.getBlockY(), location.getBlockZ()), location);
+        }
+
+        Map<IntLocation, Integer> found = idDriver.locationsToIds(query.keySet());
+        Map<Location, Integer> result = new HashMap<>(query.size() * 2);
+        for (Map.Entry<IntLocation, Location> entry : query.entrySet()) {
+            IntLocation location = entry.getKey();
+            int id = found.getOrDefault(location, NONE);
+            if (packable(location)) {
+                cacheLocation(pack(location), id);
+            }
+            result.put(entry.getValue(), id);
+        }
+        return result;
+    }
+
+    private int count(int id) {
+        if (id == UNKNOWN) {
+            locationStats.miss();
+        } else if (id == NONE) {
+            locationStats.negative();
+        } else {
+            locationStats.hit();
+        }
+        return id;
+    }
+
+    private int cachedLocationToId(long key) {
+        if (resident) {
+            return locationToIdCache.get(key, NONE);
+        }
+
+        LongIntMap chunk = residentChunks.get(chunkKeyOf(key));
+        if (chunk != null) {
+            return chunk.get(key, NONE);
+        }
+        return locationToIdCache.get(key, UNKNOWN);
+    }
+
     public Optional<IntLocation> idToLocation(int id) {
-        IntLocation intLocation = idToLocationCache.get(id);
-        if (intLocation != null) {
-            return Optional.of(intLocation);
+        long key = idToLocationCache.get(id, NO_LOCATION);
+        if (key != NO_LOCATION) {
+            idLocationStats.hit();
+            return Optional.of(unpack(key));
         }
 
+        idLocationStats.miss();
         Optional<IntLocation> optional = idDriver.idToLocation(id);
-        optional.ifPresent(location -> {
-            idToLocationCache.put(id, location);
-            locationToIdCache.put(location, OptionalInt.of(id));
-        });
-
+        optional.ifPresent(location -> cacheLocation(location, id));
         return optional;
     }
 
+    private void cacheLocation(IntLocation location, int id) {
+        if (packable(location)) {
+            cacheLocation(pack(location), id);
+        }
+    }
+
+    private void cacheLocation(long key, int id) {
+        if (resident) {
+            if (id == NONE) {
+                locationToIdCache.remove(key);
+            } else {
+                locationToIdCache.put(key, id);
+                idToLocationCache.put(id, key);
+            }
+            return;
+        }
+
+        if (locationCacheSize == 0) {
+            return;
+        }
+        if (locationCacheSize > 0 && locationToIdCache.size() >= locationCacheSize && !locationToIdCache.containsKey(key)) {
+            // There is no LRU on primitive map, evict a random entry. (loaded chunks are kept in resident chunks)
+            long victim = locationToIdCache.victim();
+            int victimId = locationToIdCache.get(victim, NONE);
+            locationToIdCache.remove(victim);
+            locationStats.evict(1);
+            if (victimId != NONE && idToLocationCache.get(victimId, NO_LOCATION) == victim) {
+                idToLocationCache.remove(victimId);
+                idLocationStats.evict(1);
+            }
+        }
+
+        locationToIdCache.put(key, id);
+        if (id != NONE) {
+            idToLocationCache.put(id, key);
+        }
+    }
+
+    // region resident
+    public static long chunkKey(int world, int chunkX, int chunkZ) {
+        // world: 16bit, x: 24bit, z: 24bit
+        return ((long) world << 48) | ((chunkX & 0xFFFFFFL) << 24) | (chunkZ & 0xFFFFFFL);
+    }
+
+    private static long chunkKey(IntLocation location) {
+        return chunkKey(location.world, location.x >> 4, location.z >> 4);
+    }
+
+    private void residentPut(IntLocation location, int id) {
+        long key = chunkKey(location);
+        loadingChunks.replace(key, Boolean.TRUE);
+        LongIntMap chunk = residentChunks.get(key);
+        if (chunk != null) {
+            if (packable(location)) {
+                long packed = pack(location);
+                chunk.put(packed, id);
+                // removed by unloadChunk()
+                idToLocationCache.put(id, packed);
+            } else {
+                // can not be resident
+                unloadChunk(key);
+            }
+        }
+    }
+
+    private void residentRemove(IntLocation location) {
+        long key = chunkKey(location);
+        loadingChunks.replace(key, Boolean.TRUE);
+        LongIntMap chunk = residentChunks.get(key);
+        if (chunk != null && packable(location)) {
+            chunk.remove(pack(location));
+        }
+    }
+
+    /**
+     * Start loading chunk.
+     *
+     * @param key chunk key
+     * @return false if already loading.
+     */
+    public boolean beginLoad(long key) {
+        return loadingChunks.putIfAbsent(key, Boolean.FALSE) == null;
+    }
+
+    /**
+     * Complete loading chunk.
+     *
+     * @param key       chunk key
+     * @param locations all protections in chunk
+     */
+    public void completeLoad(long key, List<Map.Entry<Integer, IntLocation>> locations) {
+        Boolean modified = loadingChunks.remove(key);
+        boolean resident = modified != null && !modified;
+        for (Map.Entry<Integer, IntLocation> entry : locations) {
+            if (!packable(entry.getValue())) {
+                resident = false;
+                break;
+            }
+        }
+
+        if (!resident) {
+            // Unloaded or modified while loading, loaded value may be old.
+            for (Map.Entry<Integer, IntLocation> entry : locations) {
+                IntLocation location = entry.getValue();
+                if (packable(location) && !locationToIdCache.containsKey(pack(location)) && !idToLocationCache.containsKey(entry.getKey())) {
+                    cacheLocation(pack(location), entry.getKey());
+                }
+            }
+            return;
+        }
+
+        LongIntMap chunk = new LongIntMap(locations.size());
+        for (Map.Entry<Integer, IntLocation> entry : locations) {
+            long location = pack(entry.getValue());
+            chunk.put(location, entry.getKey());
+            idToLocationCache.put(entry.getKey(), location);
+            // Resident chunk takes priority, cache is no longer needed.
+            locationToIdCache.remove(location);
+        }
+        residentChunks.put(key, chunk);
+    }
+
+    /**
+     * <p>Is the protection still at the location? (cache only)</p>
+     * <p>Used after {@link #completeLoad(long, List)} to detect protections removed or moved while loading.</p>
+     *
+     * @param id       protection id
+     * @param location loaded location
+     * @return false if removed, moved, or not cached.
+     */
+    public boolean isCachedAt(int id, IntLocation location) {
+        return packable(location) && cachedLocationToId(pack(location)) == id;
+    }
+
+    public void failLoad(long key) {
+        loadingChunks.remove(key);
+    }
+
+    /**
+     * Evict chunk from memory.
+     *
+     * @param key chunk key
+     * @return protection ids in chunk
+     */
+    public int[] unloadChunk(long key) {
+        loadingChunks.remove(key);
+        LongIntMap chunk = residentChunks.remove(key);
+        if (chunk == null) {
+            return new int[0];
+        }
+
+        int[] ids = chunk.values();
+        for (int id : ids) {
+            idToLocationCache.remove(id);
+        }
+        return ids;
+    }
+    // endregion
+
+    // region preload
+    public void cacheUser(int id, UUID uuid) {
+        UUIDToIdCache.put(uuid, id);
+        idToUUIDCache.put(id, uuid);
+    }
+
+    public void cacheAbsent(Location location) {
+        int world = worldToId(location.getWorld());
+        int x = location.getBlockX(), y = location.getBlockY(), z = location.getBlockZ();
+        if (packable(world, x, y, z)) {
+            long key = pack(world, x, y, z);
+            if (cachedLocationToId(key) == UNKNOWN) {
+                cacheLocation(key, NONE);
+            }
+        }
+    }
+    // endregion
+
+    /**
+     * Keep user id of online player until {@link #release(UUID)}.
+     *
+     * @param uuid player
+     * @return user id
+     */
+    public int intern(UUID uuid) {
+        int id = UUIDToId(uuid);
+        onlineUsers.put(uuid, id);
+        return id;
+    }
+
+    public void release(UUID uuid) {
+        onlineUsers.remove(uuid);
+    }
+
     public int UUIDToId(UUID uuid) {
-        Integer id = UUIDToIdCache.get(uuid);
+        Integer id = onlineUsers.get(uuid);
         if (id != null) {
             return id;
         }
 
+        id = UUIDToIdCache.get(uuid);
+        if (id != null && id != NONE) {
+            return id;
+        }
+
         id = idDriver.UUIDToId(uuid);
         UUIDToIdCache.put(uuid, id);
         idToUUIDCache.put(id, uuid);
         return id;
     }
 
+    /**
+     * <p>Get user id without assigning a new one.</p>
+     * <p>For read only checks (e.g. isMember), unknown users are not added to the database.</p>
+     *
+     * @param uuid user uuid
+     * @return user id, {@link #NONE} if the user is unknown.
+     */
+    public int findUserId(UUID uuid) {
+        Integer id = onlineUsers.get(uuid);
+        if (id != null) {
+            return id;
+        }
+
+        id = UUIDToIdCache.get(uuid);
+        if (id != null) {
+            return id;
+        }
+
+        OptionalInt found = idDriver.findUserId(uuid);
+        if (!found.isPresent()) {
+            UUIDToIdCache.put(uuid, NONE); // negative
+            return NONE;
+        }
+        cacheUser(found.getAsInt(), uuid);
+        return found.getAsInt();
+    }
+
     public UUID idToUUID(int id) {
         UUID uuid = idToUUIDCache.get(id);
         if (uuid != null) {
@@ -134,7 +643,10 @@ class IDRepository {
     }
 
     public int worldToId(World world) {
-        String name = world.getName();
+        return worldToId(world.getName());
+    }
+
+    public int worldToId(String name) {
         Integer id = worldToIdCache.get(name);
         if (id != null) {
             return id;
@@ -146,6 +658,26 @@ class IDRepository {
         return id;
     }
 
+    /**
+     * Get world id without assigning a new one.
+     *
+     * @param name world name
+     * @return world id, empty if the world is unknown.
+     */
+    public Optional<Integer> findWorldId(String name) {
+        Integer id = worldToIdCache.get(name);
+        if (id != null) {
+            return Optional.of(id);
+        }
+
+        Optional<Integer> found = idDriver.findWorldId(name);
+        found.ifPresent(i -> {
+            worldToIdCache.put(name, i);
+            idToWorldCache.put(i, Optional.of(name));
+        });
+        return found;
+    }
+
     @SuppressWarnings("OptionalAssignedToNull")
     public Optional<String> idToWorld(int id) {
         Optional<String> name = idToWorldCache.get(id);
@@ -163,7 +695,20 @@ class IDRepository {
         return idDriver.searchArea(world, x1, y1, z1, x2, y2, z2);
     }
 
+    public List<Map.Entry<Integer, IntLocation>> getProtections(int world, int x1, int y1, int z1, int x2, int y2, int z2) {
+        return idDriver.getProtections(world, x1, y1, z1, x2, y2, z2);
+    }
+
     public List<Map.Entry<Integer, IntLocation>> getProtections(int limit, int offsetId) {
         return idDriver.getProtections(limit, offsetId);
     }
+
+    /**
+     * Get the number of times protections were added, removed or moved.
+     *
+     * @return modification count
+     */
+    public int getModCount() {
+        return modCount;
+    }
 }
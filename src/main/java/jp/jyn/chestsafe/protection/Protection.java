@@ -4,6 +4,7 @@ import org.bukkit.block.Block;
 import org.bukkit.entity.Player;
 
 import java.util.Collection;
+import java.util.EnumMap;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.Optional;
@@ -28,7 +29,8 @@ public interface Protection {
     UUID getOwner();
 
     /**
-     * Get protection members
+     * <p>Get protection members</p>
+     * <p>Note: Members of the group are not included.</p>
      *
      * @return get all members
      */
@@ -42,6 +44,13 @@ public interface Protection {
      */
     Map<Flag, Boolean> getFlags();
 
+    /**
+     * Get protection group
+     *
+     * @return group, empty if not assigned.
+     */
+    Optional<ProtectionGroup> getGroup();
+
     // setter
 
     /**
@@ -163,6 +172,15 @@ public interface Protection {
      */
     Protection clearFlags();
 
+    /**
+     * <p>Set protection group</p>
+     * <p>Members of the group can use the protection in addition to the protection members.</p>
+     *
+     * @param group group, null to remove.
+     * @return for method chain
+     */
+    Protection setGroup(ProtectionGroup group);
+
     // functions
 
     /**
@@ -186,7 +204,7 @@ public interface Protection {
     }
 
     /**
-     * Is it included in the member
+     * Is it included in the member (or the member of the group)
      *
      * @param player target
      * @return result
@@ -225,6 +243,16 @@ public interface Protection {
      */
     boolean hasFlag();
 
+    /**
+     * <p>Get flags as bits.</p>
+     * <p>Lower 16 bits: the flag is set ({@link Flag#mask}), upper 16 bits: value of the flag.</p>
+     *
+     * @return flag bits
+     */
+    default int getFlagBits() {
+        return Flag.pack(getFlags());
+    }
+
     /**
      * True for owner or member
      *
@@ -262,10 +290,75 @@ public interface Protection {
         REDSTONE(3),
         MOB(4);
 
+        /**
+         * Value bits are shifted by this.
+         */
+        public final static int VALUE_SHIFT = 16;
+        public final static int SET_MASK = (1 << VALUE_SHIFT) - 1;
+
         public final int id;
+        /**
+         * Bit of the flag in the set mask. (1 &lt;&lt; id)
+         */
+        public final int mask;
 
         Flag(int id) {
             this.id = id;
+            this.mask = 1 << id;
+        }
+
+        /**
+         * Set flag to bits.
+         *
+         * @param bits  flag bits
+         * @param value flag value
+         * @return new bits
+         */
+        public int set(int bits, boolean value) {
+            bits |= mask;
+            return value ? bits | (mask << VALUE_SHIFT) : bits & ~(mask << VALUE_SHIFT);
+        }
+
+        /**
+         * Remove flag from bits.
+         *
+         * @param bits flag bits
+         * @return new bits
+         */
+        public int remove(int bits) {
+            return bits & ~(mask | (mask << VALUE_SHIFT));
+        }
+
+        /**
+         * Get flag value from bits.
+         *
+         * @param bits flag bits
+         * @return flag value, null if not set.
+         */
+        public Boolean get(int bits) {
+            if ((bits & mask) == 0) {
+                return null;
+            }
+            return (bits & (mask << VALUE_SHIFT)) != 0;
+        }
+
+        public static int pack(Map<Flag, Boolean> flags) {
+            int bits = 0;
+            for (Map.Entry<Flag, Boolean> entry : flags.entrySet()) {
+                bits = entry.getKey().set(bits, entry.getValue());
+            }
+            return bits;
+        }
+
+        public static Map<Flag, Boolean> unpack(int bits) {
+            Map<Flag, Boolean> flags = new EnumMap<>(Flag.class);
+            for (Flag flag : values()) {
+                Boolean value = flag.get(bits);
+                if (value != null) {
+                    flags.put(flag, value);
+                }
+            }
+            return flags;
         }
 
         private final static Map<Integer, Flag> byId = new HashMap<Integer, Flag>() {{
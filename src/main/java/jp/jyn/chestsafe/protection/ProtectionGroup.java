@@ -0,0 +1,113 @@
+package jp.jyn.chestsafe.protection;
+
+import jp.jyn.chestsafe.db.driver.ProtectionDriver;
+import jp.jyn.jbukkitlib.util.PackagePrivate;
+import org.bukkit.entity.Player;
+
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.UUID;
+
+/**
+ * <p>Named set of members shared by protections.</p>
+ * <p>Protections refer to the group by id, so changing members is a single write regardless of the number of protections.</p>
+ */
+public class ProtectionGroup {
+    public final int id;
+
+    private final ProtectionDriver protectionDriver;
+    private final ProtectionJournal journal;
+    private final IDRepository idRepository;
+
+    private final int owner; // user id
+    private final String name;
+    private final BitSet members = new BitSet(); // user ids
+
+    @PackagePrivate
+    ProtectionGroup(int id, ProtectionDriver protectionDriver, ProtectionJournal journal, IDRepository idRepository, int owner, String name) {
+        this.id = id;
+        this.protectionDriver = protectionDriver;
+        this.journal = journal;
+        this.idRepository = idRepository;
+        this.owner = owner;
+        this.name = name;
+    }
+
+    // region bulk load (not written to database)
+    @PackagePrivate
+    void loadMember(int member) {
+        members.set(member);
+    }
+
+    @PackagePrivate
+    int getOwnerId() {
+        return owner;
+    }
+    // endregion
+
+    public String getName() {
+        return name;
+    }
+
+    public UUID getOwner() {
+        return idRepository.idToUUID(owner);
+    }
+
+    public boolean isOwner(UUID player) {
+        return idRepository.findUserId(player) == owner;
+    }
+
+    public Set<UUID> getMembers() {
+        Set<UUID> result = new HashSet<>(members.cardinality() * 2);
+        for (int member = members.nextSetBit(0); member >= 0; member = members.nextSetBit(member + 1)) {
+            UUID uuid = idRepository.idToUUID(member);
+            if (uuid != null) { // broken member is left to the database.
+                result.add(uuid);
+            }
+        }
+        return Collections.unmodifiableSet(result);
+    }
+
+    public boolean isMember(UUID player) {
+        return !members.isEmpty() && isMember(idRepository.findUserId(player));
+    }
+
+    public boolean isMember(Player player) {
+        return isMember(player.getUniqueId());
+    }
+
+    @PackagePrivate
+    boolean isMember(int user) {
+        return members.get(user);
+    }
+
+    public ProtectionGroup addMember(UUID member) {
+        int memberId = idRepository.UUIDToId(member);
+        if (!members.get(memberId)) {
+            members.set(memberId);
+            journal.execute(() -> protectionDriver.addGroupMember(id, memberId));
+        }
+        return this;
+    }
+
+    public ProtectionGroup removeMember(UUID member) {
+        int memberId = idRepository.findUserId(member);
+        if (members.get(memberId)) {
+            members.clear(memberId);
+            journal.execute(() -> protectionDriver.removeGroupMember(id, memberId));
+        }
+        return this;
+    }
+
+    @Override
+    public String toString() {
+        return "ProtectionGroup{" +
+            "id=" + id + ", " +
+            "owner=" + owner + ", " +
+            "name=" + name + ", " +
+            "members=" + members +
+            "}";
+    }
+}
@@ -0,0 +1,217 @@
+package jp.jyn.chestsafe.protection;
+
+import jp.jyn.chestsafe.ChestSafe;
+import jp.jyn.chestsafe.db.driver.ProtectionDriver;
+import jp.jyn.chestsafe.db.driver.ProtectionDriver.Changes;
+import jp.jyn.jbukkitlib.util.PackagePrivate;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * <p>Write-behind journal between {@link SavedProtection} and {@link ProtectionDriver}.</p>
+ * <p>Changes are coalesced per protection id and written in a single transaction by a dedicated writer thread.
+ * Since there is only one writer, changes are always written in the order they were made.</p>
+ */
+@PackagePrivate
+class ProtectionJournal {
+    private final static long FLUSH_DELAY = 100; // ms
+    private final static long CLOSE_TIMEOUT = 60; // seconds
+
+    private final Logger logger = ChestSafe.getInstance().getLogger();
+    private final ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread thread = new Thread(r, "ChestSafe-Writer");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private final ProtectionDriver protectionDriver;
+
+    // guarded by this
+    private Map<Integer, Changes> pending = new HashMap<>();
+    // Protections that have not been written yet. (DB is older than this)
+    private final Map<Integer, SavedProtection> dirty = new HashMap<>();
+    private boolean scheduled = false;
+    private boolean closed = false;
+
+    // main thread only
+    private int modCount = 0;
+
+    public ProtectionJournal(ProtectionDriver protectionDriver) {
+        this.protectionDriver = protectionDriver;
+    }
+
+    /**
+     * Record changes.
+     *
+     * @param protection changed protection
+     * @param change     changes (called while holding the lock, must be fast)
+     */
+    public void write(SavedProtection protection, Consumer<Changes> change) {
+        modCount++;
+        synchronized (this) {
+            if (!closed) {
+                change.accept(pending.computeIfAbsent(protection.id, Changes::new));
+                dirty.put(protection.id, protection);
+                if (!scheduled) {
+                    scheduled = true;
+                    executor.schedule(this::flush, FLUSH_DELAY, TimeUnit.MILLISECONDS);
+                }
+                return;
+            }
+        }
+
+        // After close, write directly.
+        Changes changes = new Changes(protection.id);
+        change.accept(changes);
+        protectionDriver.apply(Collections.singletonList(changes));
+    }
+
+    /**
+     * <p>Run a write that is not bound to a single protection. (e.g. group members)</p>
+     * <p>It is run by the writer thread, in the order of the other changes.</p>
+     *
+     * @param write write
+     */
+    public void execute(Runnable write) {
+        modCount++;
+        synchronized (this) {
+            if (!closed) {
+                executor.execute(() -> {
+                    try {
+                        write.run();
+                    } catch (RuntimeException e) {
+                        logger.log(Level.WARNING, "Failed to save changes", e);
+                    }
+                });
+                return;
+            }
+        }
+
+        // After close, write directly.
+        write.run();
+    }
+
+    /**
+     * <p>Run a statement that changes many protections at once. (set-based)</p>
+     * <p>Changes recorded so far are written before the statement, so they do not overwrite it later.
+     * It is run by the writer thread, the caller does not wait for it.</p>
+     *
+     * @param write write
+     */
+    public void executeBulk(Runnable write) {
+        modCount++;
+        synchronized (this) {
+            if (!closed) {
+                Map<Integer, Changes> changes = pending;
+                pending = new HashMap<>();
+                executor.execute(() -> {
+                    write(changes);
+                    try {
+                        write.run();
+                    } catch (RuntimeException e) {
+                        logger.log(Level.WARNING, "Failed to save changes", e);
+                    }
+                });
+                return;
+            }
+        }
+
+        // After close, write directly.
+        write.run();
+    }
+
+    /**
+     * Get the number of recorded changes.
+     *
+     * @return modification count
+     */
+    public int getModCount() {
+        return modCount;
+    }
+
+    /**
+     * Get protection whose changes have not been written yet.
+     *
+     * @param id protection id
+     * @return protection, or null if there is no pending changes.
+     */
+    public synchronized SavedProtection getDirty(int id) {
+        return dirty.get(id);
+    }
+
+    /**
+     * Discard pending changes. (for removed protection)
+     *
+     * @param id protection id
+     */
+    public synchronized void discard(int id) {
+        pending.remove(id);
+        dirty.remove(id);
+    }
+
+    private void flush() {
+        Map<Integer, Changes> changes;
+        synchronized (this) {
+            changes = pending;
+            pending = new HashMap<>();
+            scheduled = false;
+        }
+        write(changes);
+    }
+
+    private void write(Map<Integer, Changes> changes) {
+        changes.values().removeIf(Changes::isEmpty);
+
+        try {
+            protectionDriver.apply(changes.values());
+        } catch (RuntimeException e) {
+            // One broken protection (e.g. removed during writing) should not discard the others.
+            for (Changes change : changes.values()) {
+                try {
+                    protectionDriver.apply(Collections.singletonList(change));
+                } catch (RuntimeException e2) {
+                    logger.log(Level.WARNING, "Failed to save protection (id=" + change.id + ")", e2);
+                }
+            }
+        }
+
+        synchronized (this) {
+            for (Integer id : changes.keySet()) {
+                if (!pending.containsKey(id)) {
+                    dirty.remove(id);
+                }
+            }
+        }
+    }
+
+    /**
+     * Write all pending changes and stop writer thread.
+     */
+    public void close() {
+        synchronized (this) {
+            if (closed) {
+                return;
+            }
+            closed = true;
+        }
+
+        executor.execute(this::flush);
+        executor.shutdown();
+        try {
+            if (!executor.awaitTermination(CLOSE_TIMEOUT, TimeUnit.SECONDS)) {
+                logger.severe("Timed out waiting for protections to be saved.");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            logger.severe("Interrupted while waiting for protections to be saved.");
+        }
+    }
+}
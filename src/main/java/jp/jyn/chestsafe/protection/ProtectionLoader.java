@@ -0,0 +1,94 @@
+package jp.jyn.chestsafe.protection;
+
+import jp.jyn.chestsafe.db.driver.IDDriver;
+import jp.jyn.chestsafe.db.driver.IDDriver.IntLocation;
+import jp.jyn.chestsafe.db.driver.ProtectionDriver;
+import jp.jyn.chestsafe.db.driver.ProtectionDriver.ProtectionData;
+import jp.jyn.chestsafe.db.driver.ProtectionDriver.UserProtection;
+import jp.jyn.jbukkitlib.util.PackagePrivate;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * <p>Loads protections from database without touching the caches.</p>
+ * <p>Everything in this class runs on loader threads, results must be applied to the caches on the main thread.</p>
+ */
+@PackagePrivate
+class ProtectionLoader {
+    private final static int THREADS = 2;
+
+    private final ExecutorService executor = Executors.newFixedThreadPool(THREADS, r -> {
+        Thread thread = new Thread(r, "ChestSafe-Loader");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private final IDDriver idDriver;
+    private final ProtectionDriver protectionDriver;
+
+    public ProtectionLoader(IDDriver idDriver, ProtectionDriver protectionDriver) {
+        this.idDriver = idDriver;
+        this.protectionDriver = protectionDriver;
+    }
+
+    /**
+     * Load all protections in chunk.
+     *
+     * @param world  world id
+     * @param chunkX chunk x
+     * @param chunkZ chunk z
+     * @return loaded chunk
+     */
+    public CompletableFuture<ChunkData> loadChunk(int world, int chunkX, int chunkZ) {
+        return CompletableFuture.supplyAsync(() -> load(world, chunkX, chunkZ), executor);
+    }
+
+    private ChunkData load(int world, int chunkX, int chunkZ) {
+        int x = chunkX << 4, z = chunkZ << 4;
+        ChunkData data = new ChunkData(world, chunkX, chunkZ, idDriver.getProtections(
+            world, x, Integer.MIN_VALUE, z, x + 15, Integer.MAX_VALUE, z + 15
+        ));
+
+        // Missing (inconsistent) protections are left to the main thread.
+        int[] ids = data.locations.stream().mapToInt(Map.Entry::getKey).toArray();
+        data.protections.putAll(protectionDriver.getProtectionData(ids));
+        return data;
+    }
+
+    /**
+     * Get protections of the user. (see {@link ProtectionDriver#getUserProtections(int, int, int)})
+     *
+     * @param user     user id
+     * @param limit    maximum number of protections
+     * @param offsetId id of the last protection of the previous page
+     * @return protections
+     */
+    public CompletableFuture<List<UserProtection>> getUserProtections(int user, int limit, int offsetId) {
+        return CompletableFuture.supplyAsync(() -> protectionDriver.getUserProtections(user, limit, offsetId), executor);
+    }
+
+    public void close() {
+        executor.shutdownNow();
+    }
+
+    public final static class ChunkData {
+        public final int world;
+        public final int chunkX;
+        public final int chunkZ;
+
+        public final List<Map.Entry<Integer, IntLocation>> locations;
+        public final Map<Integer, ProtectionData> protections = new HashMap<>();
+
+        private ChunkData(int world, int chunkX, int chunkZ, List<Map.Entry<Integer, IntLocation>> locations) {
+            this.world = world;
+            this.chunkX = chunkX;
+            this.chunkZ = chunkZ;
+            this.locations = locations;
+        }
+    }
+}
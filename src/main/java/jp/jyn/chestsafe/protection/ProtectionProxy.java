@@ -48,6 +48,11 @@ public class ProtectionProxy implements Protection {
         return real.getFlags();
     }
 
+    @Override
+    public Optional<ProtectionGroup> getGroup() {
+        return real.getGroup();
+    }
+
     @Override
     public Protection setType(Type type) {
         real.setType(type);
@@ -108,6 +113,12 @@ public class ProtectionProxy implements Protection {
         return this;
     }
 
+    @Override
+    public Protection setGroup(ProtectionGroup group) {
+        real.setGroup(group);
+        return this;
+    }
+
     @Override
     public boolean isMember(UUID player) {
         return real.isMember(player);
@@ -128,6 +139,11 @@ public class ProtectionProxy implements Protection {
         return real.hasFlag();
     }
 
+    @Override
+    public int getFlagBits() {
+        return real.getFlagBits();
+    }
+
     @Override
     public String toString() {
         return "ProtectionProxy[" + real.toString() + "]";
@@ -1,35 +1,54 @@
 package jp.jyn.chestsafe.protection;
 
+import jp.jyn.chestsafe.ChestSafe;
 import jp.jyn.chestsafe.config.MainConfig;
 import jp.jyn.chestsafe.db.DBConnector;
+import jp.jyn.chestsafe.db.driver.IDDriver;
 import jp.jyn.chestsafe.db.driver.IDDriver.IntLocation;
 import jp.jyn.chestsafe.db.driver.ProtectionDriver;
-import jp.jyn.chestsafe.db.driver.ProtectionDriver.ProtectionInfo;
+import jp.jyn.chestsafe.db.driver.ProtectionDriver.ProtectionData;
 import jp.jyn.chestsafe.event.ProtectionSetEvent;
+import jp.jyn.chestsafe.util.metrics.Metrics;
 import jp.jyn.chestsafe.util.normalizer.BedNormalizer;
 import jp.jyn.chestsafe.util.normalizer.ChestNormalizer;
 import jp.jyn.chestsafe.util.normalizer.DoorNormalizer;
 import jp.jyn.chestsafe.util.normalizer.LocationNormalizer;
 import jp.jyn.chestsafe.util.normalizer.NoOpNormalizer;
+import jp.jyn.jbukkitlib.cache.CacheFactory;
 import jp.jyn.jbukkitlib.util.lazy.Lazy;
 import org.bukkit.Bukkit;
+import org.bukkit.Chunk;
 import org.bukkit.Location;
 import org.bukkit.Material;
 import org.bukkit.World;
 import org.bukkit.block.Block;
+import org.bukkit.block.BlockFace;
+import org.bukkit.entity.Player;
+import org.bukkit.plugin.Plugin;
 import org.bukkit.plugin.PluginManager;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.EnumMap;
 import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
-import java.util.OptionalInt;
 import java.util.Queue;
 import java.util.Set;
-import java.util.stream.Collectors;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BiPredicate;
+import java.util.function.Consumer;
+import java.util.function.IntSupplier;
+import java.util.logging.Level;
 
 public class ProtectionRepository {
 
@@ -56,28 +75,108 @@ public class ProtectionRepository {
         CANCELLED
     }
 
+    // Number of protections hydrated by one query in searchArea.
+    private final static int SEARCH_BATCH = 500;
+    // Number of protections removed by one transaction in purge.
+    private final static int PURGE_BATCH = 1000;
+
     private final Map<Material, LocationNormalizer> normalizer = new EnumMap<>(Material.class);
     private final Set<Material> protectable = EnumSet.noneOf(Material.class);
 
+    private final Plugin plugin = ChestSafe.getInstance();
+    private final Set<Integer> brokenProtections = new HashSet<>(); // warned once
     private final PluginManager pluginManager = Bukkit.getServer().getPluginManager();
 
     private final ProtectionDriver protectionDriver;
+    private final ProtectionJournal journal;
+    private final ProtectionLoader loader;
     private final IDRepository idRepository;
+    private final GroupRepository groupRepository;
 
     private final Map<Integer, Protection> idToProtectionCache;
+    // All protections are in memory.
+    private final boolean resident;
+    // chunks being loaded by loader (main thread only)
+    private final Map<Long, CompletableFuture<Void>> loading = new HashMap<>();
+    // Number of set-based changes, protections loaded before it are outdated. (main thread only)
+    private int bulkCount = 0;
+    // Chunk is being loaded by getChunkWithoutPreload(), ChunkLoadEvent is ignored. (main thread only)
+    private boolean skipPreload = false;
+
+    public ProtectionRepository(MainConfig config, DBConnector db, Metrics metrics) {
+        this(config, db.idDriver, db.protectionDriver, metrics);
+    }
 
-    public ProtectionRepository(MainConfig config, DBConnector db) {
-        this.protectionDriver = db.protectionDriver;
+    public ProtectionRepository(MainConfig config, IDDriver idDriver, ProtectionDriver protectionDriver, Metrics metrics) {
+        this.protectionDriver = protectionDriver;
+        this.journal = new ProtectionJournal(protectionDriver);
+        this.loader = new ProtectionLoader(idDriver, protectionDriver);
 
-        idRepository = new IDRepository(config.cache, db.idDriver);
+        idRepository = new IDRepository(config.cache, idDriver, metrics);
+        groupRepository = new GroupRepository(protectionDriver, journal, idRepository);
         protectable.addAll(config.protectable.keySet());
-        idToProtectionCache = config.cache.protection.create();
+        resident = config.cache.resident;
+        idToProtectionCache = metrics.cache("idToProtection", resident ? CacheFactory.INFINITY.create() : config.cache.protection.create());
 
         // add normalizer
         normalizer.put(Material.CHEST, ChestNormalizer.getInstance());
         normalizer.put(Material.TRAPPED_CHEST, ChestNormalizer.getInstance());
         BedNormalizer.getBeds().forEach(material -> normalizer.put(material, BedNormalizer.getInstance()));
         DoorNormalizer.getDoors().forEach(material -> normalizer.put(material, DoorNormalizer.getInstance()));
+
+        if (resident) {
+            loadAll();
+        }
+        // World id is required to load chunk.
+        Bukkit.getWorlds().forEach(idRepository::worldToId);
+        // reload
+        Bukkit.getOnlinePlayers().forEach(this::join);
+    }
+
+    /**
+     * Keep the user id of the player while online. (for member checks)
+     *
+     * @param player joined player
+     */
+    public void join(Player player) {
+        idRepository.intern(player.getUniqueId());
+    }
+
+    public void quit(Player player) {
+        idRepository.release(player.getUniqueId());
+    }
+
+    private void loadAll() {
+        long start = System.nanoTime();
+        int locations = idRepository.loadAll();
+
+        protectionDriver.forEachProtection((id, info) -> {
+            UUID owner = idRepository.idToUUID(info.owner);
+            if (owner != null) { // broken protection is left to the database.
+                idToProtectionCache.put(id, new SavedProtection(id, journal, idRepository, groupRepository, Protection.Type.valueOf(info.type), owner, info.flags, info.group));
+            }
+        });
+
+        int[] count = {0};
+        protectionDriver.forEachMember((id, member) -> {
+            // UUIDs of members are resolved when needed.
+            SavedProtection protection = (SavedProtection) Metrics.peek(idToProtectionCache, id);
+            if (protection != null) {
+                protection.loadMember(member);
+                count[0]++;
+            }
+        });
+
+        // Rough estimate. (64bit JVM, compressed oops)
+        long bytes = locations * 48L // primitive location index
+            + idToProtectionCache.size() * 96L // SavedProtection, HashMap entry
+            + count[0] * 4L; // member id array
+        plugin.getLogger().info(String.format(
+            "Loaded %d protections (%d members) in %d ms, estimated memory usage: %.1f MB",
+            idToProtectionCache.size(), count[0],
+            TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start),
+            bytes / 1024.0 / 1024.0
+        ));
     }
 
     /**
@@ -99,11 +198,286 @@ public class ProtectionRepository {
         }
 
         // search protection id
-        OptionalInt optionalInt = idRepository.locationToId(normalizeLocation(block));
-        if (!optionalInt.isPresent()) {
+        int id = idRepository.locationToId(normalizeLocation(block));
+        if (id == IDRepository.NONE) {
             return Optional.empty();
         }
-        return Optional.ofNullable(get(optionalInt.getAsInt()));
+        return Optional.ofNullable(get(id));
+    }
+
+    /**
+     * <p>Get protections of the blocks.</p>
+     * <p>Blocks of the same protection (e.g. double chest) are looked up once,
+     * locations and protections not in the cache are loaded with one query each.</p>
+     * <p>Note: the same warning as {@link #get(Block)} applies to the acquired Protection.</p>
+     *
+     * @param blocks target blocks
+     * @return block to protection, blocks without protection are not included.
+     */
+    public Map<Block, Protection> getAll(Collection<Block> blocks) {
+        Map<Block, Protection> result = new HashMap<>();
+        find(blocks, (block, protection) -> {
+            result.put(block, protection);
+            return false;
+        });
+        return result;
+    }
+
+    /**
+     * <p>Find a protection of the blocks that matches the predicate.</p>
+     * <p>Same as {@link #getAll(Collection)}, but stops at the first match.
+     * Cached protections are tested first, the database is not accessed if one of them matches.</p>
+     *
+     * @param blocks    target blocks
+     * @param predicate block and its protection
+     * @return matched protection
+     */
+    public Optional<Protection> findAny(Collection<Block> blocks, BiPredicate<Block, Protection> predicate) {
+        return Optional.ofNullable(find(blocks, predicate));
+    }
+
+    private Protection find(Collection<Block> blocks, BiPredicate<Block, Protection> predicate) {
+        // normalized location -> blocks (double chest, door, bed)
+        Map<Location, List<Block>> locations = new HashMap<>();
+        for (Block block : blocks) {
+            if (protectable.contains(block.getType())) {
+                locations.computeIfAbsent(normalizeLocation(block), k -> new ArrayList<>(2)).add(block);
+            }
+        }
+
+        // cache
+        List<Location> unknown = new ArrayList<>();
+        Map<Integer, List<Block>> load = new HashMap<>();
+        for (Map.Entry<Location, List<Block>> entry : locations.entrySet()) {
+            int id = idRepository.peekLocationToId(entry.getKey());
+            if (id == IDRepository.UNKNOWN) {
+                unknown.add(entry.getKey());
+                continue;
+            }
+            if (id != IDRepository.NONE && test(id, entry.getValue(), load, predicate)) {
+                return Metrics.peek(idToProtectionCache, id); // counted by test()
+            }
+        }
+
+        // database
+        if (!unknown.isEmpty()) {
+            for (Map.Entry<Location, Integer> entry : idRepository.loadLocationToIds(unknown).entrySet()) {
+                int id = entry.getValue();
+                if (id != IDRepository.NONE && test(id, locations.get(entry.getKey()), load, predicate)) {
+                    return Metrics.peek(idToProtectionCache, id); // counted by test()
+                }
+            }
+        }
+        if (load.isEmpty()) {
+            return null;
+        }
+
+        Protection[] found = new Protection[1];
+        hydrate(load.keySet().stream().mapToInt(Integer::intValue).toArray(), protection -> {
+            if (found[0] != null) {
+                return;
+            }
+            for (Block block : load.get(castSaved(protection).id)) {
+                if (predicate.test(block, protection)) {
+                    found[0] = protection;
+                    return;
+                }
+            }
+        });
+        return found[0];
+    }
+
+    private boolean test(int id, List<Block> blocks, Map<Integer, List<Block>> load, BiPredicate<Block, Protection> predicate) {
+        Protection protection = peek(id);
+        if (protection == null) {
+            load.computeIfAbsent(id, k -> new ArrayList<>(2)).addAll(blocks);
+            return false;
+        }
+
+        for (Block block : blocks) {
+            if (predicate.test(block, protection)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * <p>Get protection without blocking on the database.</p>
+     * <p>If the protection is resident in the cache, the returned future is already completed.
+     * Otherwise the chunk containing the block is loaded asynchronously,
+     * and the future is completed on the main thread after the cache is updated.</p>
+     * <p>Note: the same warning as {@link #get(Block)} applies to the acquired Protection.</p>
+     *
+     * @param block target block
+     * @return protection
+     */
+    public CompletableFuture<Optional<Protection>> getAsync(Block block) {
+        // Protectable check.
+        if (!protectable.contains(block.getType())) {
+            return CompletableFuture.completedFuture(Optional.empty());
+        }
+
+        Location location = normalizeLocation(block);
+        int id = idRepository.peekLocationToId(location);
+        if (id != IDRepository.UNKNOWN) {
+            if (id == IDRepository.NONE) {
+                return CompletableFuture.completedFuture(Optional.empty());
+            }
+            Protection protection = peek(id);
+            if (protection != null) {
+                return CompletableFuture.completedFuture(Optional.of(protection));
+            }
+        }
+
+        return loadChunk(location.getWorld(), location.getBlockX() >> 4, location.getBlockZ() >> 4).thenApply(ignore -> {
+            // Everything in the chunk is in the cache, so there is no protection here.
+            idRepository.cacheAbsent(location);
+            return get(block);
+        });
+    }
+
+    private Protection peek(int id) {
+        Protection protection = idToProtectionCache.get(id);
+        if (protection != null) {
+            return protection;
+        }
+
+        protection = journal.getDirty(id);
+        if (protection != null) {
+            idToProtectionCache.put(id, protection);
+        }
+        return protection;
+    }
+
+    /**
+     * <p>Load all protections in chunk asynchronously.</p>
+     * <p>While the chunk is loaded, protections in the chunk are kept in memory,
+     * and lookups in the chunk never hit the database.</p>
+     *
+     * @param chunk chunk
+     */
+    public void loadChunk(Chunk chunk) {
+        if (resident || skipPreload) {
+            return;
+        }
+        loadChunk(chunk.getWorld(), chunk.getX(), chunk.getZ());
+    }
+
+    /**
+     * <p>Get chunk, protections in the chunk are not preloaded even if the chunk is loaded by this call.</p>
+     * <p>For chunks that are read once and left to the server. (e.g. cleanup)
+     * Lookups in the chunk still load protections on demand.</p>
+     *
+     * @param world  world
+     * @param chunkX chunk x
+     * @param chunkZ chunk z
+     * @return chunk
+     */
+    public Chunk getChunkWithoutPreload(World world, int chunkX, int chunkZ) {
+        skipPreload = true;
+        try {
+            // ChunkLoadEvent is called synchronously while loading.
+            return world.getChunkAt(chunkX, chunkZ);
+        } finally {
+            skipPreload = false;
+        }
+    }
+
+    /**
+     * Evict protections in chunk from memory.
+     *
+     * @param chunk chunk
+     */
+    public void unloadChunk(Chunk chunk) {
+        if (resident) {
+            return;
+        }
+        long key = IDRepository.chunkKey(idRepository.worldToId(chunk.getWorld()), chunk.getX(), chunk.getZ());
+        for (int id : idRepository.unloadChunk(key)) {
+            idToProtectionCache.remove(id);
+        }
+    }
+
+    private CompletableFuture<Void> loadChunk(World world, int chunkX, int chunkZ) {
+        if (resident) {
+            // Everything is already in memory. (except for broken protections)
+            return CompletableFuture.completedFuture(null);
+        }
+
+        int worldId = idRepository.worldToId(world);
+        long key = IDRepository.chunkKey(worldId, chunkX, chunkZ);
+        CompletableFuture<Void> future = loading.get(key);
+        if (future != null) {
+            return future;
+        }
+
+        CompletableFuture<Void> result = new CompletableFuture<>();
+        loading.put(key, result);
+        idRepository.beginLoad(key);
+        int bulk = bulkCount;
+        loader.loadChunk(worldId, chunkX, chunkZ).whenComplete((data, e) -> Bukkit.getScheduler().runTask(plugin, () -> {
+            loading.remove(key);
+            if (e != null) {
+                idRepository.failLoad(key);
+                plugin.getLogger().log(Level.WARNING, "Failed to load protections in chunk", e);
+                result.completeExceptionally(e);
+                return;
+            }
+            apply(key, data, bulk == bulkCount);
+            result.complete(null);
+        }));
+        return result;
+    }
+
+    private void apply(long key, ProtectionLoader.ChunkData data, boolean upToDate) {
+        idRepository.completeLoad(key, data.locations);
+        if (!upToDate) {
+            // Changed by set-based statement while loading, it will be read again by get().
+            return;
+        }
+        Map<Integer, IntLocation> locations = new HashMap<>(data.locations.size() * 2);
+        for (Map.Entry<Integer, IntLocation> entry : data.locations) {
+            locations.put(entry.getKey(), entry.getValue());
+        }
+        data.protections.forEach((id, protection) -> {
+            // Removed (or moved) while loading, caching it would bring it back.
+            IntLocation location = locations.get(id);
+            if (location == null || !idRepository.isCachedAt(id, location)) {
+                return;
+            }
+            if (isBroken(id, protection)) {
+                return;
+            }
+            cacheUsers(protection);
+            // cache or journal is newer than loaded value.
+            if (!idToProtectionCache.containsKey(id) && journal.getDirty(id) == null) {
+                idToProtectionCache.put(id, new SavedProtection(id, journal, idRepository, groupRepository, protection));
+            }
+        });
+    }
+
+    /**
+     * <p>The owner is missing from id_user, the protection can not be used.</p>
+     * <p>It is left in the database. (removing a real protection is worse than ignoring it)</p>
+     *
+     * @param id   protection id
+     * @param data loaded protection
+     * @return true if broken
+     */
+    private boolean isBroken(int id, ProtectionData data) {
+        if (data.ownerUUID != null) {
+            return false;
+        }
+        if (brokenProtections.add(id)) {
+            plugin.getLogger().warning(String.format("Protection %d has unknown owner (user id %d), ignored", id, data.owner));
+        }
+        return true;
+    }
+
+    private void cacheUsers(ProtectionData data) {
+        idRepository.cacheUser(data.owner, data.ownerUUID);
+        data.members.forEach(idRepository::cacheUser);
     }
 
     private Protection get(int id) {
@@ -113,16 +487,27 @@ public class ProtectionRepository {
             return protection;
         }
 
+        // not yet written protection (DB is older than this)
+        protection = journal.getDirty(id);
+        if (protection != null) {
+            idToProtectionCache.put(id, protection);
+            return protection;
+        }
+
         // db request
-        Optional<ProtectionInfo> infoOptional = protectionDriver.getProtection(id);
-        if (!infoOptional.isPresent()) {
+        Optional<ProtectionData> data = protectionDriver.getProtectionData(id);
+        if (!data.isPresent()) {
             // Inconsistent
-            idRepository.remove(id);
+            remove(id);
+            return null;
+        }
+        if (isBroken(id, data.get())) {
             return null;
         }
 
         // update cache
-        protection = new SavedProtection(id, protectionDriver, idRepository, infoOptional.get());
+        cacheUsers(data.get());
+        protection = new SavedProtection(id, journal, idRepository, groupRepository, data.get());
         idToProtectionCache.put(id, protection);
         return protection;
     }
@@ -141,7 +526,7 @@ public class ProtectionRepository {
 
         Location location = normalizeLocation(block);
         // duplicate check
-        if (idRepository.locationToId(location).isPresent()) {
+        if (idRepository.locationToId(location) != IDRepository.NONE) {
             return Result.ALREADY_PROTECTED;
         }
 
@@ -157,19 +542,16 @@ public class ProtectionRepository {
 
         // set value
         int[] members = protection.getMembers().stream().mapToInt(idRepository::UUIDToId).toArray();
-        Map<Integer, Boolean> flags = protection.getFlags().entrySet().stream().collect(
-            Collectors.toMap(v -> v.getKey().id, Map.Entry::getValue)
-        );
-
         protectionDriver.add(
             id,
             idRepository.UUIDToId(protection.getOwner()),
             protection.getType().id,
             members,
-            flags
+            protection.getFlagBits(),
+            protection.getGroup().map(g -> g.id).orElse(0)
         );
         // update cache
-        Protection newProtection = new SavedProtection(id, protectionDriver, idRepository, protection);
+        Protection newProtection = new SavedProtection(id, journal, idRepository, groupRepository, protection);
         idToProtectionCache.put(id, newProtection);
 
         // Replace contents.
@@ -193,7 +575,7 @@ public class ProtectionRepository {
         }
 
         Location normalized = ChestNormalizer.getInstance().normalize(block);
-        if (idRepository.locationToId(normalized).isPresent()) {
+        if (idRepository.locationToId(normalized) != IDRepository.NONE) {
             // normalized protection.
             return true;
         }
@@ -210,9 +592,9 @@ public class ProtectionRepository {
             target = pair.get();
         }
 
-        OptionalInt id = idRepository.locationToId(target.getLocation());
-        if (id.isPresent()) {
-            idRepository.move(id.getAsInt(), intLocation(normalized));
+        int id = idRepository.locationToId(target.getLocation());
+        if (id != IDRepository.NONE) {
+            idRepository.move(id, intLocation(normalized));
             return true;
         }
         return false;
@@ -255,7 +637,7 @@ public class ProtectionRepository {
 
         Location location = normalizeLocation(moveTo);
         // duplicate check
-        if (idRepository.locationToId(location).isPresent()) {
+        if (idRepository.locationToId(location) != IDRepository.NONE) {
             return Result.ALREADY_PROTECTED;
         }
 
@@ -263,6 +645,128 @@ public class ProtectionRepository {
         return Result.SUCCESS;
     }
 
+    /**
+     * <p>Can protections of the blocks be moved by one block? (e.g. pushed by piston)</p>
+     * <p>Protections are looked up at once and left in the cache for {@link #moveAll(Collection, BlockFace)}.
+     * Protections of multiple blocks (double chest, door, bed) can not be moved.</p>
+     *
+     * @param blocks    blocks to be moved
+     * @param direction direction of movement
+     * @return false if any protection can not be moved.
+     */
+    public boolean canMoveAll(Collection<Block> blocks, BlockFace direction) {
+        return planMove(blocks, direction, new HashMap<>(), new LinkedHashMap<>());
+    }
+
+    /**
+     * <p>Move protections of the blocks by one block in a single transaction.</p>
+     * <p>Note: Call it only when the move really happens. (e.g. MONITOR priority of the uncancelled event)
+     * Nothing is changed if {@link #canMoveAll(Collection, BlockFace)} is false.</p>
+     *
+     * @param blocks    blocks to be moved
+     * @param direction direction of movement
+     */
+    public void moveAll(Collection<Block> blocks, BlockFace direction) {
+        Map<Integer, IntLocation> current = new HashMap<>();
+        Map<Integer, IntLocation> locations = new LinkedHashMap<>();
+        if (planMove(blocks, direction, current, locations) && !locations.isEmpty()) {
+            idRepository.moveAll(locations, current);
+        }
+    }
+
+    /**
+     * Plan the move.
+     *
+     * @param blocks    moving blocks
+     * @param direction direction
+     * @param current   (out) protection id to current location
+     * @param locations (out) protection id to destination, frontmost first.
+     * @return false if any protection can not be moved.
+     */
+    private boolean planMove(Collection<Block> blocks, BlockFace direction, Map<Integer, IntLocation> current, Map<Integer, IntLocation> locations) {
+        Map<Location, Integer> destinations = resolveMove(blocks, direction);
+        if (destinations == null) {
+            return true; // nothing protectable
+        }
+        Map<Block, Protection> protections = getAll(blocks);
+        if (protections.isEmpty()) {
+            return true;
+        }
+
+        // Frontmost first, the destination of the next one has been vacated.
+        List<Block> sorted = new ArrayList<>(protections.keySet());
+        sorted.sort(Comparator.comparingInt((Block b) ->
+            b.getX() * direction.getModX() + b.getY() * direction.getModY() + b.getZ() * direction.getModZ()
+        ).reversed());
+
+        for (Block block : sorted) {
+            SavedProtection saved = castSaved(protections.get(block));
+            if (normalizer.containsKey(block.getType()) || saved == null || current.containsKey(saved.id)) {
+                return false;
+            }
+
+            IntLocation location = intLocation(block.getLocation());
+            current.put(saved.id, location);
+            locations.put(saved.id, new IntLocation(
+                location.world,
+                location.x + direction.getModX(),
+                location.y + direction.getModY(),
+                location.z + direction.getModZ()
+            ));
+        }
+
+        // The destination may have a protection that does not move. (e.g. destroyed by piston)
+        Set<IntLocation> vacated = new HashSet<>(current.values());
+        for (Block block : sorted) {
+            Location destination = block.getRelative(direction).getLocation();
+            if (!vacated.contains(intLocation(destination)) &&
+                destinations.getOrDefault(destination, IDRepository.UNKNOWN) != IDRepository.NONE) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * <p>Resolve sources and destinations of the move in a single query.</p>
+     * <p>Sources are left in the cache for {@link #getAll(Collection)}, destinations are returned.</p>
+     *
+     * @param blocks    moving blocks
+     * @param direction direction
+     * @return destination to protection id ({@link IDRepository#UNKNOWN} if not resolved), null if no block is protectable.
+     */
+    private Map<Location, Integer> resolveMove(Collection<Block> blocks, BlockFace direction) {
+        List<Location> unknown = new ArrayList<>();
+        boolean any = false;
+        for (Block block : blocks) {
+            if (protectable.contains(block.getType())) {
+                any = true;
+                Location source = normalizeLocation(block);
+                if (idRepository.peekLocationToId(source) == IDRepository.UNKNOWN) {
+                    unknown.add(source);
+                }
+            }
+        }
+        if (!any) {
+            return null;
+        }
+
+        Map<Location, Integer> destinations = new HashMap<>();
+        for (Block block : blocks) {
+            Location destination = block.getRelative(direction).getLocation();
+            int id = idRepository.peekLocationToId(destination);
+            destinations.put(destination, id);
+            if (id == IDRepository.UNKNOWN) {
+                unknown.add(destination);
+            }
+        }
+
+        if (!unknown.isEmpty()) {
+            idRepository.loadLocationToIds(unknown).forEach((location, id) -> destinations.computeIfPresent(location, (k, v) -> id));
+        }
+        return destinations;
+    }
+
     /**
      * remove protection
      *
@@ -275,10 +779,95 @@ public class ProtectionRepository {
             return Result.NOT_SAVED;
         }
 
-        idRepository.remove(p.id);
+        remove(p.id);
         return Result.SUCCESS;
     }
 
+    private void remove(int id) {
+        journal.discard(id);
+        idToProtectionCache.remove(id);
+        idRepository.remove(id);
+    }
+
+    /**
+     * Is the world known to the database? (no new world id is assigned)
+     *
+     * @param world world name
+     * @return result
+     */
+    public boolean isKnownWorld(String world) {
+        return idRepository.findWorldId(world).isPresent();
+    }
+
+    /**
+     * <p>Remove all protections in the world.</p>
+     * <p>The protections are searched and removed from the database on the writer thread,
+     * {@value #PURGE_BATCH} protections per transaction. The cache is updated on the main thread.</p>
+     *
+     * @param world world name (the world does not have to be loaded)
+     * @return number of removed protections (completed on the main thread), empty if the world is unknown.
+     */
+    public Optional<CompletableFuture<Integer>> removeAll(String world) {
+        Optional<Integer> worldId = idRepository.findWorldId(world);
+        if (!worldId.isPresent()) {
+            return Optional.empty();
+        }
+
+        CompletableFuture<Integer> result = new CompletableFuture<>();
+        journal.execute(() -> {
+            List<Map.Entry<Integer, IntLocation>> protections;
+            try {
+                protections = idRepository.getProtections(
+                    worldId.get(),
+                    Integer.MIN_VALUE, Integer.MIN_VALUE, Integer.MIN_VALUE,
+                    Integer.MAX_VALUE, Integer.MAX_VALUE, Integer.MAX_VALUE
+                );
+            } catch (RuntimeException e) {
+                Bukkit.getScheduler().runTask(plugin, () -> result.completeExceptionally(e));
+                throw e; // logged by journal
+            }
+            Bukkit.getScheduler().runTask(plugin, () -> purge(protections, result));
+        });
+        return Optional.of(result);
+    }
+
+    private void purge(List<Map.Entry<Integer, IntLocation>> protections, CompletableFuture<Integer> result) {
+        Map<Integer, IntLocation> remove = new HashMap<>(protections.size() * 2);
+        for (Map.Entry<Integer, IntLocation> entry : protections) {
+            remove.put(entry.getKey(), entry.getValue());
+            journal.discard(entry.getKey());
+            idToProtectionCache.remove(entry.getKey());
+        }
+        // Forget first, loaded protections are not cached again. (see apply())
+        int[] ids = idRepository.forgetAll(remove);
+        for (int from = 0; from < ids.length; from += PURGE_BATCH) {
+            int[] batch = Arrays.copyOfRange(ids, from, Math.min(ids.length, from + PURGE_BATCH));
+            journal.execute(() -> idRepository.deleteAll(batch));
+        }
+        journal.execute(() -> Bukkit.getScheduler().runTask(plugin, () -> result.complete(ids.length)));
+    }
+
+    /**
+     * Remove protections that failed the check in a single transaction.
+     *
+     * @param elements protections
+     */
+    public void removeAll(Collection<CheckElement> elements) {
+        Map<Integer, IntLocation> remove = new HashMap<>(elements.size() * 2);
+        for (CheckElement element : elements) {
+            remove.put(element.id, element.location);
+        }
+        removeAll(remove);
+    }
+
+    private void removeAll(Map<Integer, IntLocation> protections) {
+        for (Integer id : protections.keySet()) {
+            journal.discard(id);
+            idToProtectionCache.remove(id);
+        }
+        idRepository.removeAll(protections);
+    }
+
     /**
      * Search for protection within area.
      *
@@ -292,25 +881,65 @@ public class ProtectionRepository {
      * @return Protection within area.
      */
     public List<Protection> searchArea(World world, int x1, int y1, int z1, int x2, int y2, int z2) {
+        List<Protection> result = new ArrayList<>();
+        searchArea(world, x1, y1, z1, x2, y2, z2, result::add);
+        return result;
+    }
+
+    /**
+     * <p>Search for protection within area.</p>
+     * <p>Protections are passed to consumer in batches, so a huge area does not have to be in memory at once.</p>
+     *
+     * @param world    world
+     * @param x1       x1
+     * @param y1       y1
+     * @param z1       z1
+     * @param x2       z2
+     * @param y2       y2
+     * @param z2       z2
+     * @param consumer Protection within area.
+     */
+    public void searchArea(World world, int x1, int y1, int z1, int x2, int y2, int z2, Consumer<Protection> consumer) {
         int worldId = idRepository.worldToId(world);
 
-        Collection<Integer> protections = idRepository.searchArea(worldId, x1, y1, z1, x2, y2, z2);
-        List<Protection> result = new ArrayList<>(protections.size());
+        int[] batch = new int[SEARCH_BATCH];
+        int size = 0;
+        for (Integer id : idRepository.searchArea(worldId, x1, y1, z1, x2, y2, z2)) {
+            Protection protection = peek(id);
+            if (protection != null) {
+                consumer.accept(protection);
+                continue;
+            }
+
+            batch[size++] = id;
+            if (size == batch.length) {
+                hydrate(batch, consumer);
+                size = 0;
+            }
+        }
+        if (size != 0) {
+            hydrate(Arrays.copyOf(batch, size), consumer);
+        }
+    }
 
-        for (Integer protection : protections) {
-            Protection p = idToProtectionCache.computeIfAbsent(protection, id -> {
-                Optional<ProtectionInfo> info = protectionDriver.getProtection(id);
-                if (!info.isPresent()) {
-                    idRepository.remove(id);
-                    return null;
-                }
-                return new SavedProtection(id, protectionDriver, idRepository, info.get());
-            });
-            if (p != null) {
-                result.add(p);
+    private void hydrate(int[] ids, Consumer<Protection> consumer) {
+        Map<Integer, ProtectionData> data = protectionDriver.getProtectionData(ids);
+        for (int id : ids) {
+            ProtectionData d = data.get(id);
+            if (d == null) {
+                // Inconsistent
+                remove(id);
+                continue;
+            }
+            if (isBroken(id, d)) {
+                continue;
             }
+
+            cacheUsers(d);
+            Protection protection = new SavedProtection(id, journal, idRepository, groupRepository, d);
+            idToProtectionCache.put(id, protection);
+            consumer.accept(protection);
         }
-        return result;
     }
 
     /**
@@ -322,21 +951,228 @@ public class ProtectionRepository {
      * @throws IllegalArgumentException In the case of Location of argument is different world
      */
     public List<Protection> searchArea(Location location1, Location location2) throws IllegalArgumentException {
+        List<Protection> result = new ArrayList<>();
+        searchArea(location1, location2, result::add);
+        return result;
+    }
+
+    /**
+     * Search for protection within area.
+     *
+     * @param location1 location1
+     * @param location2 location2
+     * @param consumer  Protection within area.
+     * @throws IllegalArgumentException In the case of Location of argument is different world
+     */
+    public void searchArea(Location location1, Location location2, Consumer<Protection> consumer) throws IllegalArgumentException {
         if (!location1.getWorld().equals(location2.getWorld())) {
             throw new IllegalArgumentException("Different world.");
         }
 
-        return searchArea(
+        searchArea(
             location1.getWorld(),
             location1.getBlockX(),
             location1.getBlockY(),
             location1.getBlockZ(),
             location2.getBlockX(),
             location2.getBlockY(),
-            location2.getBlockZ()
+            location2.getBlockZ(),
+            consumer
         );
     }
 
+    /**
+     * <p>Get protections owned by the player, or the player is a member of.</p>
+     * <p>Paginated by protection id, pass the id of the last protection to get the next page. (0 for the first page)
+     * The future is completed on the main thread.</p>
+     * <p>Note: Changes that have not yet been written by the journal are not included.</p>
+     *
+     * @param player   owner or member
+     * @param limit    maximum number of protections
+     * @param offsetId id of the last protection of the previous page
+     * @return protections, ordered by id.
+     */
+    public CompletableFuture<List<ListedProtection>> getProtections(UUID player, int limit, int offsetId) {
+        int user = idRepository.findUserId(player);
+        if (user == IDRepository.NONE) {
+            return CompletableFuture.completedFuture(Collections.emptyList());
+        }
+        CompletableFuture<List<ListedProtection>> result = new CompletableFuture<>();
+        loader.getUserProtections(user, limit, offsetId).whenComplete((list, e) -> Bukkit.getScheduler().runTask(plugin, () -> {
+            if (e != null) {
+                result.completeExceptionally(e);
+                return;
+            }
+
+            List<ListedProtection> protections = new ArrayList<>(list.size());
+            for (ProtectionDriver.UserProtection protection : list) {
+                IntLocation location = protection.location;
+                // The world may be deleted.
+                String world = idRepository.idToWorld(location.world).orElse("#" + location.world);
+                protections.add(new ListedProtection(protection.id, protection.owner, world, location.x, location.y, location.z));
+            }
+            result.complete(protections);
+        }));
+        return result;
+    }
+
+    public final static class ListedProtection {
+        public final int id;
+        /**
+         * false: member
+         */
+        public final boolean owner;
+        public final String world;
+        public final int x;
+        public final int y;
+        public final int z;
+
+        private ListedProtection(int id, boolean owner, String world, int x, int y, int z) {
+            this.id = id;
+            this.owner = owner;
+            this.world = world;
+            this.x = x;
+            this.y = y;
+            this.z = z;
+        }
+    }
+
+    /**
+     * <p>Transfer all protections owned by the player, in a single statement.</p>
+     * <p>Cached protections are changed immediately, the statement is run by the writer thread.</p>
+     *
+     * @param from current owner
+     * @param to   new owner
+     * @return number of transferred protections (completed on the main thread)
+     */
+    public CompletableFuture<Integer> transferAll(UUID from, UUID to) {
+        int fromId = idRepository.UUIDToId(from);
+        int toId = idRepository.UUIDToId(to);
+
+        // Update cache in one pass, instead of writing each protection again.
+        List<Integer> changed = new ArrayList<>();
+        for (Protection protection : idToProtectionCache.values()) {
+            SavedProtection saved = (SavedProtection) protection;
+            if (saved.getOwner().equals(from)) {
+                saved.loadOwner(to);
+                saved.loadGroup(0); // group belongs to the previous owner
+                changed.add(saved.id);
+            }
+        }
+        return executeBulk(() -> protectionDriver.transferAll(fromId, toId), changed);
+    }
+
+    /**
+     * <p>Add a member to all protections owned by the player, in a single statement.</p>
+     * <p>Cached protections are changed immediately, the statement is run by the writer thread.</p>
+     *
+     * @param owner  owner
+     * @param member new member
+     * @return number of changed protections (completed on the main thread)
+     */
+    public CompletableFuture<Integer> addMemberAll(UUID owner, UUID member) {
+        int ownerId = idRepository.UUIDToId(owner);
+        int memberId = idRepository.UUIDToId(member);
+
+        List<Integer> changed = new ArrayList<>();
+        for (Protection protection : idToProtectionCache.values()) {
+            SavedProtection saved = (SavedProtection) protection;
+            if (saved.getOwner().equals(owner)) {
+                saved.loadMember(memberId);
+                changed.add(saved.id);
+            }
+        }
+        return executeBulk(() -> protectionDriver.addMemberAll(ownerId, memberId), changed);
+    }
+
+    /**
+     * Run a set-based statement by the writer thread, after the changes recorded so far.
+     *
+     * @param statement statement, returns the number of changed rows.
+     * @param changed   cached protections already changed, they are evicted if the statement fails.
+     * @return result of the statement (completed on the main thread)
+     */
+    private CompletableFuture<Integer> executeBulk(IntSupplier statement, Collection<Integer> changed) {
+        CompletableFuture<Integer> result = new CompletableFuture<>();
+        // Protections being loaded are outdated.
+        bulkCount++;
+        journal.executeBulk(() -> {
+            int count;
+            try {
+                count = statement.getAsInt();
+            } catch (RuntimeException e) {
+                Bukkit.getScheduler().runTask(plugin, () -> {
+                    bulkCount++;
+                    // The database was not changed, load them again.
+                    changed.forEach(idToProtectionCache::remove);
+                    result.completeExceptionally(e);
+                });
+                throw e; // logged by journal
+            }
+            Bukkit.getScheduler().runTask(plugin, () -> {
+                // Loaded while waiting for the statement.
+                bulkCount++;
+                result.complete(count);
+            });
+        });
+        return result;
+    }
+
+    /**
+     * Get group
+     *
+     * @param owner owner of the group
+     * @param name  group name (case insensitive)
+     * @return group
+     */
+    public Optional<ProtectionGroup> getGroup(UUID owner, String name) {
+        return groupRepository.get(owner, name);
+    }
+
+    /**
+     * Get groups of the player.
+     *
+     * @param owner owner of the groups
+     * @return groups, ordered by name.
+     */
+    public Collection<ProtectionGroup> getGroups(UUID owner) {
+        return groupRepository.getGroups(owner);
+    }
+
+    /**
+     * Create group
+     *
+     * @param owner owner of the group
+     * @param name  group name (case insensitive)
+     * @return created group, empty if the owner already has the group of the same name.
+     */
+    public Optional<ProtectionGroup> createGroup(UUID owner, String name) {
+        return groupRepository.create(owner, name);
+    }
+
+    /**
+     * <p>Remove group, protections no longer refer to it.</p>
+     * <p>Cached protections are changed immediately, the statement is run by the writer thread.</p>
+     *
+     * @param group group
+     */
+    public void removeGroup(ProtectionGroup group) {
+        if (!groupRepository.remove(group)) {
+            return;
+        }
+
+        List<Integer> changed = new ArrayList<>();
+        for (Protection protection : idToProtectionCache.values()) {
+            SavedProtection saved = (SavedProtection) protection;
+            if (saved.getGroupId() == group.id) {
+                saved.loadGroup(0);
+                changed.add(saved.id);
+            }
+        }
+        // Pending changes may refer to the group, they are written first.
+        executeBulk(() -> protectionDriver.removeGroup(group.id), changed);
+    }
+
     /**
      * Check all protections.
      *
@@ -353,7 +1189,7 @@ public class ProtectionRepository {
         int id = protections.size() < limit ? -1 : protections.get(protections.size() - 1).getKey();
 
         for (Map.Entry<Integer, IntLocation> protection : protections) {
-            CheckElement e = new CheckElement(idRepository, idToProtectionCache, protection.getKey(), protection.getValue());
+            CheckElement e = new CheckElement(idRepository, journal, idToProtectionCache, protection.getKey(), protection.getValue());
             if (!queue.offer(e)) { // 容量制限
                 id = e.id - 1; // offsetIdはその値を"含まない"。なので挿入できなかったものはIDを-1しておけば次のサイクルで入る。
                 break;
@@ -365,9 +1201,10 @@ public class ProtectionRepository {
 
     public final static class CheckElement {
         private final IDRepository idRepository;
+        private final ProtectionJournal journal;
         private final Map<Integer, Protection> idToProtectionCache;
 
-        private final Integer id;
+        public final int id;
         private final IntLocation location;
 
         /**
@@ -377,15 +1214,21 @@ public class ProtectionRepository {
         public final int x;
         public final int y;
         public final int z;
+        /**
+         * Elements with the same value are in the same chunk of the same world.
+         */
+        public final long chunk;
 
-        private CheckElement(IDRepository idRepository, Map<Integer, Protection> idToProtectionCache, Integer id, IntLocation location) {
+        private CheckElement(IDRepository idRepository, ProtectionJournal journal, Map<Integer, Protection> idToProtectionCache, int id, IntLocation location) {
             this.idRepository = idRepository;
+            this.journal = journal;
             this.idToProtectionCache = idToProtectionCache;
             this.id = id;
             this.location = location;
             x = location.x;
             y = location.y;
             z = location.z;
+            chunk = IDRepository.chunkKey(location.world, location.x >> 4, location.z >> 4);
             world = Lazy.of(() -> this.idRepository.idToWorld(this.location.world)
                 .orElseThrow(() -> new IllegalArgumentException(
                     String.format("Database broken (world id %d is not found)", this.location.world)
@@ -397,11 +1240,32 @@ public class ProtectionRepository {
          * must NOT be called from the not main thread.
          */
         public void remove() {
+            journal.discard(id);
             idToProtectionCache.remove(id);
             idRepository.remove(id, location);
         }
     }
 
+    /**
+     * <p>Get modification count</p>
+     * <p>The value changes whenever a protection is created, removed, moved or modified.
+     * It can be used to invalidate values derived from protections.</p>
+     *
+     * @return modification count
+     */
+    public int getModCount() {
+        return idRepository.getModCount() + journal.getModCount() + bulkCount;
+    }
+
+    /**
+     * <p>Write all pending changes to the database.</p>
+     * <p>Note: This is called when ChestSafe is disabled, changes after close are written synchronously.</p>
+     */
+    public void close() {
+        loader.close();
+        journal.close();
+    }
+
     private Location normalizeLocation(Block block) {
         return normalizer.getOrDefault(block.getType(), NoOpNormalizer.getInstance()).normalize(block);
     }
@@ -2,83 +2,110 @@ package jp.jyn.chestsafe.protection;
 
 import jp.jyn.chestsafe.db.driver.ProtectionDriver;
 import jp.jyn.jbukkitlib.util.PackagePrivate;
-import jp.jyn.jbukkitlib.util.lazy.Lazy;
-import jp.jyn.jbukkitlib.util.lazy.SimpleLazy;
 
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
-import java.util.EnumMap;
 import java.util.HashSet;
-import java.util.List;
 import java.util.Map;
-import java.util.Objects;
 import java.util.Optional;
 import java.util.Set;
 import java.util.UUID;
 import java.util.stream.Collectors;
+import java.util.stream.IntStream;
 
 public class SavedProtection implements Protection {
     public final int id;
 
-    private final ProtectionDriver protectionDriver;
+    private final ProtectionJournal journal;
     private final IDRepository idRepository;
+    private final GroupRepository groupRepository;
 
     private Type type;
     private UUID owner;
-    private final Lazy<Set<UUID>> members;
-    private final Lazy<Map<Flag, Boolean>> flags;
+    private final static int[] EMPTY = new int[0];
+    private int[] members; // sorted user ids
+    private int flags; // Flag bits, see Protection#getFlagBits()
+    private int group; // group id, 0: no group
 
     @PackagePrivate
-    SavedProtection(int id, ProtectionDriver protectionDriver, IDRepository idRepository, Protection protection) {
+    SavedProtection(int id, ProtectionJournal journal, IDRepository idRepository, GroupRepository groupRepository, Protection protection) {
         this.id = id;
-        this.protectionDriver = protectionDriver;
+        this.journal = journal;
         this.idRepository = idRepository;
+        this.groupRepository = groupRepository;
 
         type = protection.getType();
         owner = protection.getOwner();
 
-        members = Lazy.of(HashSet::new);
-        members.get().addAll(protection.getMembers());
-        flags = Lazy.of(() -> new EnumMap<>(Flag.class));
-        protection.getFlags().forEach((key, value) -> flags.get().put(key, value));
+        members = protection.getMembers().stream().mapToInt(idRepository::UUIDToId).distinct().sorted().toArray();
+        flags = protection.getFlagBits();
+        group = protection.getGroup().map(g -> g.id).orElse(0);
     }
 
     @PackagePrivate
-    SavedProtection(int id, ProtectionDriver protectionDriver, IDRepository idRepository, ProtectionDriver.ProtectionInfo info) {
+    SavedProtection(int id, ProtectionJournal journal, IDRepository idRepository, GroupRepository groupRepository, ProtectionDriver.ProtectionData data) {
         this.id = id;
-        this.protectionDriver = protectionDriver;
+        this.journal = journal;
         this.idRepository = idRepository;
+        this.groupRepository = groupRepository;
 
-        type = Type.valueOf(info.type);
-        owner = Objects.requireNonNull(idRepository.idToUUID(info.owner));
+        type = Type.valueOf(data.type);
+        owner = data.ownerUUID;
 
-        members = new SimpleLazy<>(info.hasMember ? this::loadMembers : HashSet::new);
-        flags = Lazy.of(info.hasFlag ? this::loadFlags : () -> new EnumMap<>(Flag.class));
+        members = data.members.keySet().stream().mapToInt(Integer::intValue).sorted().toArray();
+        flags = data.flags;
+        group = data.group;
     }
 
-    // region lazyload
-    private Set<UUID> loadMembers() {
-        return protectionDriver.getMembers(this.id)
-            .stream()
-            .map(idRepository::idToUUID)
-            .collect(Collectors.toCollection(HashSet::new));
+    /**
+     * For bulk loading, members are added by {@link #loadMember(int)}.
+     */
+    @PackagePrivate
+    SavedProtection(int id, ProtectionJournal journal, IDRepository idRepository, GroupRepository groupRepository,
+                    Type type, UUID owner, int flags, int group) {
+        this.id = id;
+        this.journal = journal;
+        this.idRepository = idRepository;
+        this.groupRepository = groupRepository;
+
+        this.type = type;
+        this.owner = owner;
+
+        members = EMPTY;
+        this.flags = flags;
+        this.group = group;
+    }
+
+    // region bulk load (not written to database)
+    @PackagePrivate
+    void loadMember(int member) {
+        members = insert(members, member);
+    }
+
+    @PackagePrivate
+    void loadOwner(UUID owner) {
+        this.owner = owner;
+    }
+
+    @PackagePrivate
+    void loadGroup(int group) {
+        this.group = group;
     }
 
-    private Map<Flag, Boolean> loadFlags() {
-        return protectionDriver.getFlags(this.id)
-            .entrySet()
-            .stream()
-            .collect(Collectors.toMap(
-                v -> Flag.valueOf(v.getKey()),
-                Map.Entry::getValue,
-                (v1, v2) -> v1,
-                () -> new EnumMap<>(Flag.class)
-            ));
+    @PackagePrivate
+    int getGroupId() {
+        return group;
     }
     // endregion
 
     private void update() {
-        protectionDriver.updateProtection(id, idRepository.UUIDToId(owner), type.id, hasMember(), hasFlag());
+        int owner = idRepository.UUIDToId(this.owner);
+        int type = this.type.id;
+        boolean hasMember = hasMember();
+        int flags = this.flags;
+        int group = this.group;
+        journal.write(this, c -> c.updateProtection(owner, type, hasMember, flags, group));
     }
 
     @Override
@@ -94,6 +121,8 @@ public class SavedProtection implements Protection {
     public Protection setOwner(UUID owner) {
         if (!this.owner.equals(owner)) {
             this.owner = owner;
+            // The group belongs to the previous owner.
+            group = 0;
             update();
         }
         return this;
@@ -101,14 +130,16 @@ public class SavedProtection implements Protection {
 
     @Override
     public Protection addMember(UUID member) {
-        if (members.get().contains(member)) {
+        int memberId = idRepository.UUIDToId(member);
+        int[] added = insert(members, memberId);
+        if (added == members) {
             return this;
         }
 
         boolean modify = !hasMember();
 
-        protectionDriver.addMember(id, idRepository.UUIDToId(member));
-        members.get().add(member);
+        journal.write(this, c -> c.addMember(memberId));
+        members = added;
 
         if (modify) {
             update();
@@ -120,28 +151,43 @@ public class SavedProtection implements Protection {
     public Protection addMembers(Collection<UUID> members) {
         boolean modify = !hasMember();
 
-        List<Integer> ids = members.stream()
-            .filter(uuid -> !this.members.get().contains(uuid))
-            .map(idRepository::UUIDToId)
-            .collect(Collectors.toList());
-        if (ids.isEmpty()) {
+        int[] ids = members.stream()
+            .mapToInt(idRepository::UUIDToId)
+            .filter(id -> !isMember(id))
+            .distinct()
+            .toArray();
+        if (ids.length == 0) {
             return this;
         }
 
-        protectionDriver.addMembers(id, ids);
-        this.members.get().addAll(members);
+        journal.write(this, c -> {
+            for (int id : ids) {
+                c.addMember(id);
+            }
+        });
+        int[] added = Arrays.copyOf(this.members, this.members.length + ids.length);
+        System.arraycopy(ids, 0, added, this.members.length, ids.length);
+        Arrays.sort(added);
+        this.members = added;
 
         if (modify) {
             update();
         }
-        return null;
+        return this;
     }
 
     @Override
     public Protection removeMember(UUID member) {
-        if (members.get().contains(member)) {
-            protectionDriver.removeMember(id, idRepository.UUIDToId(member));
-            members.get().remove(member);
+        if (!hasMember()) {
+            return this;
+        }
+
+        // Unknown user is not a member. (NONE is never in members)
+        int memberId = idRepository.findUserId(member);
+        int[] removed = delete(members, memberId);
+        if (removed != members) {
+            journal.write(this, c -> c.removeMember(memberId));
+            members = removed;
 
             if (!hasMember()) {
                 update();
@@ -157,16 +203,22 @@ public class SavedProtection implements Protection {
             return this;
         }
 
-        List<Integer> ids = members.stream()
-            .filter(uuid -> this.members.get().contains(uuid))
-            .map(idRepository::UUIDToId)
-            .collect(Collectors.toList());
-        if (ids.isEmpty()) {
+        int[] ids = members.stream()
+            .mapToInt(idRepository::findUserId)
+            .filter(this::isMember)
+            .distinct()
+            .sorted()
+            .toArray();
+        if (ids.length == 0) {
             return this;
         }
 
-        protectionDriver.removeMembers(id, ids);
-        this.members.get().removeAll(members);
+        journal.write(this, c -> {
+            for (int id : ids) {
+                c.removeMember(id);
+            }
+        });
+        this.members = IntStream.of(this.members).filter(id -> Arrays.binarySearch(ids, id) < 0).toArray();
 
         if (!hasMember()) {
             update();
@@ -177,27 +229,66 @@ public class SavedProtection implements Protection {
     @Override
     public Protection clearMembers() {
         if (hasMember()) {
-            protectionDriver.clearMembers(id);
-            members.get().clear();
+            journal.write(this, ProtectionDriver.Changes::clearMembers);
+            members = EMPTY;
             update();
         }
 
         return this;
     }
 
-    @Override
-    public Protection setFlag(Flag flag, boolean value) {
-        Boolean current = flags.get().get(flag);
-        if (current != null && current == value) {
-            return this;
+    private boolean isMember(int id) {
+        return Arrays.binarySearch(members, id) >= 0;
+    }
+
+    /**
+     * Insert into sorted array.
+     *
+     * @param array sorted array
+     * @param value value
+     * @return new array, or the same array if already contained.
+     */
+    private static int[] insert(int[] array, int value) {
+        int i = Arrays.binarySearch(array, value);
+        if (i >= 0) {
+            return array;
         }
 
-        boolean modify = !hasFlag();
+        i = -(i + 1);
+        int[] result = new int[array.length + 1];
+        System.arraycopy(array, 0, result, 0, i);
+        result[i] = value;
+        System.arraycopy(array, i, result, i + 1, array.length - i);
+        return result;
+    }
+
+    /**
+     * Delete from sorted array.
+     *
+     * @param array sorted array
+     * @param value value
+     * @return new array, or the same array if not contained.
+     */
+    private static int[] delete(int[] array, int value) {
+        int i = Arrays.binarySearch(array, value);
+        if (i < 0) {
+            return array;
+        }
+        if (array.length == 1) {
+            return EMPTY;
+        }
 
-        protectionDriver.setFlag(id, flag.id, value);
-        flags.get().put(flag, value);
+        int[] result = new int[array.length - 1];
+        System.arraycopy(array, 0, result, 0, i);
+        System.arraycopy(array, i + 1, result, i, array.length - i - 1);
+        return result;
+    }
 
-        if (modify) {
+    @Override
+    public Protection setFlag(Flag flag, boolean value) {
+        int bits = flag.set(flags, value);
+        if (bits != flags) {
+            flags = bits;
             update();
         }
         return this;
@@ -205,29 +296,34 @@ public class SavedProtection implements Protection {
 
     @Override
     public Protection removeFlag(Flag flag) {
-        if (flags.get().containsKey(flag)) {
-            protectionDriver.removeFlag(id, flag.id);
-            flags.get().remove(flag);
-
-            if (!hasFlag()) {
-                update();
-            }
+        int bits = flag.remove(flags);
+        if (bits != flags) {
+            flags = bits;
+            update();
         }
-
         return this;
     }
 
     @Override
     public Protection clearFlags() {
-        if (hasFlag()) {
-            protectionDriver.clearFlags(id);
-            flags.get().clear();
+        if (flags != 0) {
+            flags = 0;
             update();
         }
 
         return this;
     }
 
+    @Override
+    public Protection setGroup(ProtectionGroup group) {
+        int id = group == null ? 0 : group.id;
+        if (this.group != id) {
+            this.group = id;
+            update();
+        }
+        return this;
+    }
+
     // region getter
     @Override
     public Type getType() {
@@ -241,32 +337,59 @@ public class SavedProtection implements Protection {
 
     @Override
     public Set<UUID> getMembers() {
-        return Collections.unmodifiableSet(members.get());
+        // UUIDs are resolved only when needed. (most checks use isMember)
+        Set<UUID> result = new HashSet<>(members.length * 2);
+        for (int member : members) {
+            UUID uuid = idRepository.idToUUID(member);
+            if (uuid != null) { // broken member is left to the database.
+                result.add(uuid);
+            }
+        }
+        return Collections.unmodifiableSet(result);
     }
 
     @Override
     public boolean isMember(UUID player) {
-        return members.get().contains(player);
+        if (!hasMember() && group == 0) {
+            return false;
+        }
+        int id = idRepository.findUserId(player);
+        if (id == IDRepository.NONE) {
+            return false;
+        }
+        // group: 1 bit lookup, no matter how many protections share it.
+        return isMember(id) || groupRepository.isMember(group, id);
     }
 
     @Override
     public boolean hasMember() {
-        return !members.get().isEmpty();
+        return members.length != 0;
     }
 
     @Override
     public Map<Flag, Boolean> getFlags() {
-        return Collections.unmodifiableMap(flags.get());
+        return Collections.unmodifiableMap(Flag.unpack(flags));
     }
 
     @Override
     public Optional<Boolean> getFlag(Flag flag) {
-        return Optional.ofNullable(flags.get().get(flag));
+        return Optional.ofNullable(flag.get(flags));
+    }
+
+    @Override
+    public Optional<ProtectionGroup> getGroup() {
+        // the group may be removed.
+        return Optional.ofNullable(groupRepository.get(group));
     }
 
     @Override
     public boolean hasFlag() {
-        return !flags.get().isEmpty();
+        return (flags & Flag.SET_MASK) != 0;
+    }
+
+    @Override
+    public int getFlagBits() {
+        return flags;
     }
     // endregion
 
@@ -276,8 +399,9 @@ public class SavedProtection implements Protection {
             "id=" + id + ", " +
             "type=" + type.name() + ", " +
             "owner=" + owner.toString() + ", " +
-            "members=" + members.get().stream().map(UUID::toString).collect(Collectors.joining(",", "[", "]")) + ", " +
-            "flags=" + flags.get().entrySet().stream().map(flag -> flag.getKey() + "=" + flag.getValue()).collect(Collectors.joining(",", "{", "}")) +
+            "members=" + getMembers().stream().map(UUID::toString).collect(Collectors.joining(",", "[", "]")) + ", " +
+            "flags=" + Flag.unpack(flags).entrySet().stream().map(flag -> flag.getKey() + "=" + flag.getValue()).collect(Collectors.joining(",", "{", "}")) + ", " +
+            "group=" + group +
             "}";
     }
 }
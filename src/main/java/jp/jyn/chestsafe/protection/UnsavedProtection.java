@@ -22,6 +22,7 @@ public class UnsavedProtection implements Protection {
     private UUID owner;
     private final Set<UUID> members = new HashSet<>();
     private final Map<Flag, Boolean> flags = new EnumMap<>(Flag.class);
+    private ProtectionGroup group = null;
 
     @Override
     public Type getType() {
@@ -40,7 +41,7 @@ public class UnsavedProtection implements Protection {
 
     @Override
     public boolean isMember(UUID player) {
-        return members.contains(player);
+        return members.contains(player) || (group != null && group.isMember(player));
     }
 
     @Override
@@ -58,6 +59,11 @@ public class UnsavedProtection implements Protection {
         return Optional.ofNullable(flags.get(flag));
     }
 
+    @Override
+    public Optional<ProtectionGroup> getGroup() {
+        return Optional.ofNullable(group);
+    }
+
     @Override
     public boolean hasFlag() {
         return !flags.isEmpty();
@@ -71,6 +77,10 @@ public class UnsavedProtection implements Protection {
 
     @Override
     public Protection setOwner(UUID owner) {
+        if (this.owner != null && !this.owner.equals(owner)) {
+            // The group belongs to the previous owner.
+            group = null;
+        }
         this.owner = owner;
         return this;
     }
@@ -123,13 +133,20 @@ public class UnsavedProtection implements Protection {
         return this;
     }
 
+    @Override
+    public Protection setGroup(ProtectionGroup group) {
+        this.group = group;
+        return this;
+    }
+
     @Override
     public String toString() {
         return "UnsavedProtection{" +
             "type=" + type.name() + ", " +
             "owner=" + owner.toString() + ", " +
             "members=" + members.stream().map(UUID::toString).collect(Collectors.joining(",", "[", "]")) + ", " +
-            "flags=" + flags.entrySet().stream().map(flag -> flag.getKey() + "=" + flag.getValue()).collect(Collectors.joining(",", "{", "}")) +
+            "flags=" + flags.entrySet().stream().map(flag -> flag.getKey() + "=" + flag.getValue()).collect(Collectors.joining(",", "{", "}")) + ", " +
+            "group=" + (group == null ? "null" : group.getName()) +
             "}";
     }
 }
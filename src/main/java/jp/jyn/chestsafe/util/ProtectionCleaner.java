@@ -3,66 +3,110 @@ package jp.jyn.chestsafe.util;
 import jp.jyn.chestsafe.ChestSafe;
 import jp.jyn.chestsafe.config.MainConfig;
 import jp.jyn.chestsafe.config.MessageConfig;
+import jp.jyn.chestsafe.db.driver.MetaDriver;
 import jp.jyn.chestsafe.protection.ProtectionRepository;
 import jp.jyn.chestsafe.protection.ProtectionRepository.CheckElement;
 import jp.jyn.jbukkitlib.config.locale.BukkitLocale;
 import jp.jyn.jbukkitlib.config.parser.component.ComponentParser;
 import jp.jyn.jbukkitlib.config.parser.component.ComponentVariable;
 import org.bukkit.Bukkit;
+import org.bukkit.ChunkSnapshot;
 import org.bukkit.Material;
 import org.bukkit.World;
 import org.bukkit.command.CommandSender;
-import org.bukkit.plugin.Plugin;
 
-import java.math.BigDecimal;
-import java.math.MathContext;
-import java.math.RoundingMode;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
 import java.util.ArrayDeque;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
 import java.util.Queue;
 import java.util.Set;
+import java.util.concurrent.CancellationException;
 import java.util.concurrent.CopyOnWriteArraySet;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.Executors;
-import java.util.concurrent.Future;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicReference;
 import java.util.function.Function;
+import java.util.stream.Collectors;
 
+/**
+ * <p>Remove protections whose block no longer exists.</p>
+ * <p>Candidates are grouped by chunk, the main thread only takes {@link ChunkSnapshot}s (within limit) and removes protections.
+ * Main thread work is run by {@link WorkScheduler}, so it backs off while the server is lagging.
+ * Block types are checked from the snapshots on other threads in parallel.</p>
+ */
 public class ProtectionCleaner implements Runnable {
-    private final static int DEFAULT_CHECK_SIZE = 100;
+    private final static int FETCH_SIZE = 1000;
+    // Progress is saved in meta table, and resumed by the next cleanup.
+    private final static String KEY_OFFSET = "cleanup.offset";
+    private final static String KEY_CHECKED = "cleanup.checked";
+    private final static String KEY_REMOVED = "cleanup.removed";
+    private final static String KEY_START = "cleanup.start";
+    // First offset of the cleanup, 0 if it checks all protections.
+    private final static String KEY_BASE = "cleanup.base";
+    // Last id checked by the last completed cleanup. (for incremental)
+    private final static String KEY_LAST = "cleanup.last";
+    // Start time of the last completed full cleanup. (for incremental)
+    private final static String KEY_FULL = "cleanup.full";
     private final static AtomicReference<ProtectionCleaner> RUNNING = new AtomicReference<>();
 
     private final ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor();
     private final Set<Material> protectable = EnumSet.noneOf(Material.class);
     private final ComponentVariable variable = ComponentVariable.init();
 
-    private final Plugin plugin;
+    private final WorkScheduler scheduler;
     private final BukkitLocale<MessageConfig> message;
     private final ProtectionRepository repository;
+    private final MetaDriver meta;
     private final long limit;
     private final boolean unloaded;
+    private final boolean incremental;
+    private final long fullInterval;
     private final Set<CommandSender> senders = new CopyOnWriteArraySet<>();
 
+    // count and average are per run. (checked is restored on resume, so the average excludes it)
     private final AtomicInteger count = new AtomicInteger();
-    private volatile BigDecimal average = BigDecimal.ZERO;
+    private volatile double average = 0;
 
     // もしかするとvolatile intで十分かもしれない……けど、大した負荷じゃないし念のため
     private final AtomicInteger offset = new AtomicInteger();
     private final AtomicInteger checked = new AtomicInteger();
     private final AtomicInteger removed = new AtomicInteger();
-    private final AtomicInteger checkPerCycle = new AtomicInteger(DEFAULT_CHECK_SIZE);
-    private final Queue<CheckElement> queue = new ArrayDeque<>(DEFAULT_CHECK_SIZE);
+    private final AtomicInteger checkPerCycle = new AtomicInteger();
+    // chunk -> candidates, in the order fetched. (main thread accesses it only while the cleaner thread waits)
+    private final Map<Long, List<CheckElement>> pending = new LinkedHashMap<>();
+    private final AtomicInteger pendingSize = new AtomicInteger();
+    // cleaner thread only
+    private boolean initialized = false;
+    private int maxId = 0;
+    private int base = 0;
+    private int resumedChecked = 0;
+    private long start = System.currentTimeMillis();
+    // main thread only (while the cleaner thread waits)
+    private long used;
 
-    public ProtectionCleaner(Plugin plugin, MainConfig config, BukkitLocale<MessageConfig> message, ProtectionRepository repository,
-                             long limit, TimeUnit unit, boolean unloaded, CommandSender... senders) {
-        this.plugin = plugin;
+    public ProtectionCleaner(WorkScheduler scheduler, MainConfig config, BukkitLocale<MessageConfig> message, ProtectionRepository repository, MetaDriver meta,
+                             long limit, TimeUnit unit, boolean unloaded, boolean incremental, CommandSender... senders) {
+        this.scheduler = scheduler;
         this.message = message;
         this.repository = repository;
+        this.meta = meta;
         this.unloaded = unloaded;
+        this.incremental = incremental;
+        this.fullInterval = TimeUnit.SECONDS.toMillis(config.cleanup.fullInterval);
         this.senders.addAll(Arrays.asList(senders));
         this.protectable.addAll(config.protectable.keySet());
 
@@ -76,11 +120,14 @@ public class ProtectionCleaner implements Runnable {
         variable.put("checked", c -> c.setText(checked.toString()));
         variable.put("removed", c -> c.setText(removed.toString()));
         variable.put("speed", c -> c.setText(checkPerCycle.toString()));
-        variable.put("average", c -> c.setText(average.setScale(1, RoundingMode.HALF_UP).toPlainString()));
+        variable.put("average", c -> c.setText(String.format("%.1f", average)));
+        variable.put("start", () -> DateTimeFormatter.ISO_LOCAL_DATE_TIME.format(
+            LocalDateTime.ofInstant(Instant.ofEpochMilli(start), ZoneId.systemDefault()).withNano(0)
+        ));
         // デバッグ用隠し変数
         variable.put("__offset", c -> c.setText(offset.toString()));
         variable.put("__count", c -> c.setText(count.toString()));
-        variable.put("__size", c -> c.setText(String.valueOf(queue.size())));
+        variable.put("__size", c -> c.setText(pendingSize.toString()));
 
         if (!RUNNING.compareAndSet(null, this)) {
             throw new IllegalStateException("Already running.");
@@ -95,17 +142,46 @@ public class ProtectionCleaner implements Runnable {
             return; // 既に終わってたら何もしない
         }
 
-        if (offset.get() != -1 && // オフセットが-1ではない == 終端まで行ってなくて
-            queue.size() < checkPerCycle.get()) { // キュー残数がサイクルあたり処理数より少ない == 処理速度が間に合ってる時だけ問い合わせ
-            offset.set(repository.checkExists(queue, offset.get(), checkPerCycle.get()));
-        }
+        try {
+            if (!initialized) {
+                initialized = true;
+                restore();
+            }
 
-        int size = queue.size();
+            // 処理速度が間に合ってる時だけ問い合わせ (チャンク単位でまとめるため、多めに取っておく)
+            if (offset.get() != -1 && pendingSize.get() < Math.max(FETCH_SIZE, checkPerCycle.get() * 2)) {
+                fetch();
+            }
 
-        Future<Long> f = Bukkit.getScheduler().callSyncMethod(plugin, this::check);
-        long time;
-        try {
-            time = f.get();
+            // main thread: take snapshots within limit.
+            List<Snapshot> snapshots = new ArrayList<>();
+            used = 0;
+            scheduler.submit(() -> snapshot(snapshots)).get();
+            int check = snapshots.stream().mapToInt(s -> s.elements.size()).sum();
+
+            // off main thread: check block types in parallel.
+            List<CheckElement> remove = snapshots.parallelStream()
+                .flatMap(s -> s.check().stream())
+                .collect(Collectors.toList());
+            snapshots.clear(); // snapshots are large, release before waiting for the main thread.
+
+            // main thread: batched delete.
+            if (!remove.isEmpty()) {
+                scheduler.execute(() -> remove(remove)).get();
+            }
+
+            int ced = this.checked.addAndGet(check);
+            // 平均値
+            int co = count.incrementAndGet();
+            average = (double) (ced - resumedChecked) / co;
+            checkPerCycle.set(check);
+            // 途中経過
+            send(m -> m.progress);
+
+            save();
+        } catch (CancellationException e) {
+            // The scheduler has been closed. (plugin disabled)
+            return;
         } catch (InterruptedException | ExecutionException e) {
             ChestSafe.getInstance().getLogger().severe("Unknown error!");
             e.printStackTrace();
@@ -113,32 +189,114 @@ public class ProtectionCleaner implements Runnable {
             return;
         }
 
-        int check = size - queue.size();
-        int ced = this.checked.addAndGet(check);
-        // 平均値
-        int co = count.incrementAndGet();
-        BigDecimal avg = average = BigDecimal.valueOf(ced).divide(BigDecimal.valueOf(co), MathContext.DECIMAL64);
-        // 途中経過
-        send(m -> m.progress);
+        if (finished()) {
+            cancel();
+        }
+    }
+
+    private void fetch() {
+        Queue<CheckElement> queue = new ArrayDeque<>(FETCH_SIZE);
+        offset.set(repository.checkExists(queue, offset.get(), FETCH_SIZE));
+        for (CheckElement e : queue) {
+            pending.computeIfAbsent(e.chunk, k -> new ArrayList<>()).add(e);
+            maxId = Math.max(maxId, e.id);
+        }
+        pendingSize.addAndGet(queue.size());
+    }
+
+    private void restore() {
+        Optional<String> savedOffset = meta.get(KEY_OFFSET);
+        if (savedOffset.isPresent()) {
+            // Interrupted by restart (or cancel), resume it.
+            offset.set(Integer.parseInt(savedOffset.get()));
+            resumedChecked = meta.get(KEY_CHECKED).map(Integer::parseInt).orElse(0);
+            checked.set(resumedChecked);
+            removed.set(meta.get(KEY_REMOVED).map(Integer::parseInt).orElse(0));
+            start = meta.get(KEY_START).map(Long::parseLong).orElse(start);
+            base = meta.get(KEY_BASE).map(Integer::parseInt).orElse(0);
+            maxId = offset.get();
+            send(m -> m.resumed);
+            return;
+        }
+
+        if (incremental && !isFullDue()) {
+            // Only protections created after the last cleanup.
+            offset.set(meta.get(KEY_LAST).map(Integer::parseInt).orElse(0));
+            maxId = offset.get();
+            base = offset.get();
+        }
+    }
 
-        // チェック数の自動調整 (許容時間/(処理時間/処理数=1個辺りの所要時間)=許容時間内に処理できる数)
-        BigDecimal timePerCheck = BigDecimal.valueOf(time).divide(BigDecimal.valueOf(check), MathContext.DECIMAL64);
-        BigDecimal newSpeed = BigDecimal.valueOf(this.limit/*キャッシュできる*/).divide(timePerCheck, MathContext.DECIMAL64);
-        if (newSpeed.compareTo(BigDecimal.ZERO) == 0 || // 新しい速度が0 (確認処理がが遅すぎる) か
-            newSpeed.compareTo(avg.scaleByPowerOfTen(1)) >= 0) { // 平均値の10倍を超えている (異常値) なら
-            newSpeed = avg; // 次の周期には平均値でやる
+    private boolean isFullDue() {
+        if (fullInterval <= 0) {
+            return false;
         }
-        checkPerCycle.set(newSpeed.intValue());
+        // Old protections may be moved, or their blocks removed by other plugins.
+        long last = meta.get(KEY_FULL).map(Long::parseLong).orElse(0L);
+        return System.currentTimeMillis() - last >= fullInterval;
+    }
 
+    private void save() {
         if (finished()) {
-            cancel();
+            meta.remove(Arrays.asList(KEY_OFFSET, KEY_CHECKED, KEY_REMOVED, KEY_START, KEY_BASE));
+            Map<String, String> values = new HashMap<>();
+            values.put(KEY_LAST, String.valueOf(maxId));
+            if (base == 0) {
+                values.put(KEY_FULL, String.valueOf(start));
+            }
+            meta.set(values);
+            return;
+        }
+
+        // Candidates that have not been checked yet must be checked after resume.
+        int cursor = offset.get() == -1 ? maxId : offset.get();
+        for (List<CheckElement> elements : pending.values()) {
+            for (CheckElement e : elements) {
+                cursor = Math.min(cursor, e.id - 1);
+            }
         }
+
+        Map<String, String> values = new HashMap<>();
+        values.put(KEY_OFFSET, String.valueOf(cursor));
+        values.put(KEY_CHECKED, checked.toString());
+        values.put(KEY_REMOVED, removed.toString());
+        values.put(KEY_START, String.valueOf(start));
+        values.put(KEY_BASE, String.valueOf(base));
+        meta.set(values);
     }
 
-    private long check() {
+    /**
+     * Take one chunk snapshot, called repeatedly by {@link WorkScheduler}.
+     *
+     * @param result snapshots
+     * @return true if the limit is reached or there are no candidates.
+     */
+    private boolean snapshot(List<Snapshot> result) {
         long start = System.nanoTime();
-        int remove = 0;
 
+        Iterator<List<CheckElement>> iterator = pending.values().iterator();
+        if (iterator.hasNext()) {
+            List<CheckElement> elements = iterator.next();
+            iterator.remove();
+            pendingSize.addAndGet(-elements.size());
+
+            CheckElement first = elements.get(0);
+            World world = Bukkit.getWorld(first.world.get());
+            if (world == null) {
+                result.add(new Snapshot(elements, null, 0));
+            } else {
+                // Loads the chunk if it is not loaded, it is the main cost of cleanup.
+                // Protections are not preloaded, they are checked from the snapshot. (the loader would query them again)
+                ChunkSnapshot snapshot = repository.getChunkWithoutPreload(world, first.x >> 4, first.z >> 4).getChunkSnapshot(false, false, false);
+                result.add(new Snapshot(elements, snapshot, world.getMaxHeight()));
+            }
+        }
+
+        used += System.nanoTime() - start;
+        return used >= limit || pending.isEmpty();
+    }
+
+    private void remove(List<CheckElement> elements) {
         // 変数には先にputして値だけすり替える
         AtomicReference<String> w = new AtomicReference<>();
         AtomicInteger x = new AtomicInteger();
@@ -146,33 +304,26 @@ public class ProtectionCleaner implements Runnable {
         AtomicInteger z = new AtomicInteger();
         variable.put("world", w::get).put("x", x::toString).put("y", y::toString).put("z", z::toString);
 
-        while (!queue.isEmpty()) {
-            CheckElement e = queue.remove();
-
+        List<CheckElement> remove = new ArrayList<>(elements.size());
+        for (CheckElement e : elements) {
             String name = e.world.get();
             World world = Bukkit.getWorld(name);
-            if (world == null
-                ? unloaded // ロードされていない世界ならunloadedの値をそのまま = trueなら削除
-                : !protectable.contains(world.getBlockAt(e.x, e.y, e.z).getType())) { // ロードされているのなら保護可能タイプか確認
-                // 削除
-                e.remove();
-                remove++;
-                w.set(name);
-                x.set(e.x);
-                y.set(e.y);
-                z.set(e.z);
-                send(m -> m.removed);
+            // The block may have been placed after the snapshot.
+            if (world != null && world.isChunkLoaded(e.x >> 4, e.z >> 4) &&
+                protectable.contains(world.getBlockAt(e.x, e.y, e.z).getType())) {
+                continue;
             }
 
-            long elapsed = System.nanoTime() - start;
-            if (elapsed >= limit) {
-                removed.getAndAdd(remove);
-                return elapsed;
-            }
+            remove.add(e);
+            w.set(name);
+            x.set(e.x);
+            y.set(e.y);
+            z.set(e.z);
+            send(m -> m.removed);
         }
 
-        removed.getAndAdd(remove);
-        return System.nanoTime() - start;
+        repository.removeAll(remove);
+        removed.getAndAdd(remove.size());
     }
 
     private void send(Function<MessageConfig.CleanupMessage, ComponentParser> mapper) {
@@ -182,7 +333,7 @@ public class ProtectionCleaner implements Runnable {
     }
 
     private boolean finished() {
-        return offset.get() == -1 && queue.isEmpty();
+        return offset.get() == -1 && pendingSize.get() == 0;
     }
 
     public static boolean isRunning() {
@@ -212,4 +363,39 @@ public class ProtectionCleaner implements Runnable {
         }
         return false;
     }
+
+    private final class Snapshot {
+        private final List<CheckElement> elements;
+        // null if world is not loaded.
+        private final ChunkSnapshot snapshot;
+        private final int maxHeight;
+
+        private Snapshot(List<CheckElement> elements, ChunkSnapshot snapshot, int maxHeight) {
+            this.elements = elements;
+            this.snapshot = snapshot;
+            this.maxHeight = maxHeight;
+        }
+
+        /**
+         * Thread safe, does not touch the world.
+         *
+         * @return elements to remove.
+         */
+        private List<CheckElement> check() {
+            if (snapshot == null) {
+                // ロードされていない世界ならunloadedの値をそのまま = trueなら削除
+                return unloaded ? elements : new ArrayList<>(0);
+            }
+
+            List<CheckElement> result = new ArrayList<>(0);
+            for (CheckElement e : elements) {
+                // Outside of the world is always air.
+                if (e.y < 0 || e.y >= maxHeight ||
+                    !protectable.contains(snapshot.getBlockType(e.x & 15, e.y, e.z & 15))) {
+                    result.add(e);
+                }
+            }
+            return result;
+        }
+    }
 }
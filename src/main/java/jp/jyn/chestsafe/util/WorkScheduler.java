@@ -0,0 +1,216 @@
+package jp.jyn.chestsafe.util;
+
+import org.bukkit.Bukkit;
+import org.bukkit.plugin.Plugin;
+import org.bukkit.scheduler.BukkitTask;
+
+import java.lang.reflect.Method;
+import java.util.ArrayDeque;
+import java.util.Queue;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * <p>Run background work on the main thread within a per tick budget.</p>
+ * <p>Queued work is executed little by little every tick in round-robin.
+ * The slice shrinks by half while the tick time (MSPT) exceeds the threshold, and grows back gradually when recovered.</p>
+ * <p>Tick time is taken from the server if available (Paper), otherwise it is estimated from the tick interval.
+ * In that case lag is detected only when the interval exceeds 52ms (= TPS below about 19.2),
+ * the interval jitters around 50ms even if the server is not lagging.</p>
+ * <p>The slice is halved only after the tick time stays over the threshold for several ticks.</p>
+ * <p>Exceptions thrown by work are logged, and the returned future completes exceptionally.</p>
+ */
+public class WorkScheduler implements Runnable {
+    private final static long TICK = TimeUnit.MILLISECONDS.toNanos(50);
+    private final static long TOLERANCE = TimeUnit.MILLISECONDS.toNanos(2);
+    // consecutive ticks over the threshold before shrinking the slice
+    private final static int SUSTAIN = 5;
+
+    // any thread -> main thread
+    private final Queue<Work> submitted = new ConcurrentLinkedQueue<>();
+    // main thread only
+    private final Queue<Work> queue = new ArrayDeque<>();
+
+    private final long budget;
+    private final long minimum;
+    private final long step;
+    private final long threshold;
+    // null if not available (main thread only)
+    private Method tickTime;
+    private final Logger logger;
+    private final BukkitTask task;
+
+    private volatile long slice;
+    private volatile double mspt = 0;
+    private long last = 0;
+    private int lagging = 0;
+
+    public WorkScheduler(Plugin plugin, long budget, long threshold, TimeUnit unit) {
+        this.budget = unit.toNanos(budget);
+        this.minimum = Math.max(1, this.budget / 10);
+        this.step = Math.max(1, this.budget / 20);
+        this.threshold = unit.toNanos(threshold);
+        this.slice = this.budget;
+
+        Method m;
+        try {
+            // Paper only
+            m = Bukkit.getServer().getClass().getMethod("getAverageTickTime");
+        } catch (NoSuchMethodException e) {
+            m = null;
+        }
+        this.tickTime = m;
+        this.logger = plugin.getLogger();
+
+        task = Bukkit.getScheduler().runTaskTimer(plugin, this, 1, 1);
+    }
+
+    /**
+     * <p>Run the work once.</p>
+     *
+     * @param work work
+     * @return Completed after execution.
+     */
+    public CompletableFuture<Void> execute(Runnable work) {
+        return submit(() -> {
+            work.run();
+            return true;
+        });
+    }
+
+    /**
+     * <p>Run the work repeatedly until it returns true.</p>
+     * <p>A unit of work should be small (e.g. one chunk), it is the granularity of the budget.</p>
+     *
+     * @param work work, returns true when finished.
+     * @return Completed after the work is finished.
+     */
+    public CompletableFuture<Void> submit(BooleanSupplier work) {
+        Work w = new Work(work);
+        submitted.add(w);
+        return w.future;
+    }
+
+    @Override
+    public void run() {
+        long start = System.nanoTime();
+        adjust(start);
+
+        Work w;
+        while ((w = submitted.poll()) != null) {
+            queue.add(w);
+        }
+
+        long end = start + slice;
+        boolean first = true;
+        while ((w = queue.poll()) != null) {
+            long now = System.nanoTime();
+            // At least one unit per tick, even if it is over the slice.
+            if (!first && now + w.average > end) {
+                queue.add(w);
+                break;
+            }
+            first = false;
+
+            boolean done;
+            try {
+                done = w.work.getAsBoolean();
+            } catch (Throwable t) {
+                logger.log(Level.WARNING, "Exception in scheduled work", t);
+                w.future.completeExceptionally(t);
+                continue;
+            }
+
+            long cost = System.nanoTime() - now;
+            w.average = w.average == 0 ? cost : (w.average * 7 + cost) / 8;
+            if (done) {
+                w.future.complete(null);
+            } else {
+                queue.add(w);
+            }
+        }
+    }
+
+    private void adjust(long now) {
+        double mspt = 0;
+        if (tickTime != null) {
+            mspt = averageTickTime();
+        }
+        if (tickTime == null) {
+            // 間隔の移動平均 (処理が速ければ50ms)
+            long interval = last == 0 ? TICK : now - last;
+            mspt = this.mspt == 0 ? interval : (this.mspt * 7 + interval) / 8;
+        }
+        last = now;
+        this.mspt = mspt;
+
+        long over = tickTime != null ? threshold : Math.max(threshold, TICK + TOLERANCE);
+        if (mspt > over) {
+            if (++lagging >= SUSTAIN) {
+                lagging = 0;
+                slice = Math.max(minimum, slice / 2);
+            }
+        } else {
+            lagging = 0;
+            if (slice < budget) {
+                slice = Math.min(budget, slice + step);
+            }
+        }
+    }
+
+    private double averageTickTime() {
+        try {
+            return TimeUnit.MILLISECONDS.toNanos(1) * ((Number) tickTime.invoke(Bukkit.getServer())).doubleValue();
+        } catch (ReflectiveOperationException | ClassCastException e) {
+            // It will not succeed next time either, fall back to interval estimation.
+            logger.log(Level.WARNING, "Failed to get tick time, estimated from tick interval instead", e);
+            tickTime = null;
+            return 0;
+        }
+    }
+
+    /**
+     * <p>Get the current tick time used for throttling.</p>
+     *
+     * @return tick time (milliseconds)
+     */
+    public double getMspt() {
+        return mspt / TimeUnit.MILLISECONDS.toNanos(1);
+    }
+
+    /**
+     * <p>Get the current per tick slice.</p>
+     *
+     * @return slice (nanoseconds)
+     */
+    public long getSlice() {
+        return slice;
+    }
+
+    /**
+     * <p>Stop the scheduler, remaining work is cancelled.</p>
+     */
+    public void close() {
+        task.cancel();
+        Work w;
+        while ((w = submitted.poll()) != null || (w = queue.poll()) != null) {
+            w.future.completeExceptionally(new CancellationException("Scheduler closed."));
+        }
+    }
+
+    private final static class Work {
+        private final BooleanSupplier work;
+        private final CompletableFuture<Void> future = new CompletableFuture<>();
+        // moving average of the time per unit (nanoseconds)
+        private long average = 0;
+
+        private Work(BooleanSupplier work) {
+            this.work = work;
+        }
+    }
+}
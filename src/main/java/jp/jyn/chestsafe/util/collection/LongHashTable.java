@@ -0,0 +1,239 @@
+package jp.jyn.chestsafe.util.collection;
+
+import jp.jyn.jbukkitlib.util.PackagePrivate;
+
+import java.util.Arrays;
+import java.util.NoSuchElementException;
+
+/**
+ * <p>Open addressing (linear probing) table of primitive long keys, values are kept by subclasses.</p>
+ * <p>Value arrays have {@link #capacity()} + 1 slots, the value of key 0 (empty marker) is stored in the last slot.</p>
+ */
+@PackagePrivate
+abstract class LongHashTable {
+    private final static float LOAD_FACTOR = 0.5f;
+    private final static long EMPTY = 0;
+
+    private long[] keys;
+    private int mask;
+    private int size = 0;
+    private int threshold;
+    private boolean hasZero = false;
+    // next slot to be scanned by victim()
+    private int hand = 0;
+
+    @PackagePrivate
+    LongHashTable(int expectedSize) {
+        int capacity = Integer.highestOneBit(Math.max(2, (int) (expectedSize / LOAD_FACTOR)) - 1) << 1;
+        allocate(capacity);
+    }
+
+    private void allocate(int capacity) {
+        keys = new long[capacity];
+        mask = capacity - 1;
+        threshold = (int) (capacity * LOAD_FACTOR);
+        hand = 0;
+    }
+
+    private static int hash(long key) {
+        // murmur3 finalizer
+        key ^= key >>> 33;
+        key *= 0xff51afd7ed558ccdL;
+        key ^= key >>> 33;
+        key *= 0xc4ceb9fe1a85ec53L;
+        key ^= key >>> 33;
+        return (int) key;
+    }
+
+    /**
+     * Reallocate value arrays on rehash.
+     *
+     * @param length new {@link #capacity()} + 1
+     * @param moved  old slot -&gt; new slot (-1: empty)
+     */
+    protected abstract void resizeValues(int length, int[] moved);
+
+    protected abstract void moveValue(int from, int to);
+
+    /**
+     * Release the value. (only needed for references)
+     *
+     * @param slot slot
+     */
+    protected void clearValue(int slot) {
+    }
+
+    protected void clearValues() {
+    }
+
+    /**
+     * Find slot of the key.
+     *
+     * @param key key
+     * @return slot, or -1 if not present.
+     */
+    protected final int find(long key) {
+        if (key == EMPTY) {
+            return hasZero ? keys.length : -1;
+        }
+
+        int i = hash(key) & mask;
+        long k;
+        while ((k = keys[i]) != EMPTY) {
+            if (k == key) {
+                return i;
+            }
+            i = (i + 1) & mask;
+        }
+        return -1;
+    }
+
+    /**
+     * Find slot of the key, the key is added if not present.
+     *
+     * @param key key
+     * @return slot
+     */
+    protected final int insert(long key) {
+        if (key == EMPTY) {
+            if (!hasZero) {
+                hasZero = true;
+                size++;
+            }
+            return keys.length;
+        }
+
+        while (true) {
+            int i = hash(key) & mask;
+            long k;
+            while ((k = keys[i]) != EMPTY) {
+                if (k == key) {
+                    return i;
+                }
+                i = (i + 1) & mask;
+            }
+
+            if (size >= threshold) {
+                rehash(keys.length << 1);
+                continue; // slots are changed
+            }
+            keys[i] = key;
+            size++;
+            return i;
+        }
+    }
+
+    /**
+     * Remove the entry in the slot.
+     *
+     * @param slot slot returned by {@link #find(long)}
+     */
+    protected final void removeSlot(int slot) {
+        if (slot == keys.length) {
+            hasZero = false;
+        } else {
+            slot = shift(slot);
+        }
+        clearValue(slot);
+        size--;
+    }
+
+    // backward shift deletion (no tombstone), returns the last hole.
+    private int shift(int hole) {
+        int i = hole;
+        while (true) {
+            i = (i + 1) & mask;
+            long k = keys[i];
+            if (k == EMPTY) {
+                break;
+            }
+
+            int home = hash(k) & mask;
+            // Move if the home of the entry is not between hole(exclusive) and i(inclusive).
+            if (hole <= i ? (hole >= home || home > i) : (hole >= home && home > i)) {
+                keys[hole] = k;
+                moveValue(i, hole);
+                hole = i;
+            }
+        }
+        keys[hole] = EMPTY;
+        return hole;
+    }
+
+    private void rehash(int capacity) {
+        long[] oldKeys = keys;
+        int[] moved = new int[oldKeys.length + 1];
+        allocate(capacity);
+        for (int j = 0; j < oldKeys.length; j++) {
+            long k = oldKeys[j];
+            if (k == EMPTY) {
+                moved[j] = -1;
+                continue;
+            }
+
+            int i = hash(k) & mask;
+            while (keys[i] != EMPTY) {
+                i = (i + 1) & mask;
+            }
+            keys[i] = k;
+            moved[j] = i;
+        }
+        moved[oldKeys.length] = hasZero ? keys.length : -1;
+        resizeValues(capacity + 1, moved);
+    }
+
+    /**
+     * Is the slot used?
+     *
+     * @param slot slot (0 to {@link #capacity()} inclusive)
+     * @return result
+     */
+    protected final boolean occupied(int slot) {
+        return slot == keys.length ? hasZero : keys[slot] != EMPTY;
+    }
+
+    protected final int capacity() {
+        return keys.length;
+    }
+
+    /**
+     * <p>Pick a key to evict.</p>
+     * <p>Slots are scanned from where the previous call stopped, like a clock hand without reference bits.
+     * Keys are placed by hash, so the order is effectively random.</p>
+     *
+     * @return key
+     * @throws NoSuchElementException if empty
+     */
+    public long victim() {
+        if (size == 0) {
+            throw new NoSuchElementException();
+        }
+        for (int n = 0; n < keys.length; n++) {
+            int i = hand;
+            hand = (hand + 1) & mask;
+            if (keys[i] != EMPTY) {
+                return keys[i];
+            }
+        }
+        return EMPTY; // only key 0
+    }
+
+    public boolean containsKey(long key) {
+        return find(key) != -1;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public void clear() {
+        Arrays.fill(keys, EMPTY);
+        clearValues();
+        hasZero = false;
+        size = 0;
+    }
+}
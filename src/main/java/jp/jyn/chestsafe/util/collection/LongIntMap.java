@@ -0,0 +1,83 @@
+package jp.jyn.chestsafe.util.collection;
+
+/**
+ * <p>Open addressing hash map of primitive long to primitive int.</p>
+ * <p>Lookups do not allocate. Not thread-safe.</p>
+ */
+public class LongIntMap extends LongHashTable {
+    private int[] values;
+
+    public LongIntMap() {
+        this(16);
+    }
+
+    public LongIntMap(int expectedSize) {
+        super(expectedSize);
+        values = new int[capacity() + 1];
+    }
+
+    @Override
+    protected void resizeValues(int length, int[] moved) {
+        int[] old = values;
+        values = new int[length];
+        for (int i = 0; i < moved.length; i++) {
+            if (moved[i] != -1) {
+                values[moved[i]] = old[i];
+            }
+        }
+    }
+
+    @Override
+    protected void moveValue(int from, int to) {
+        values[to] = values[from];
+    }
+
+    /**
+     * Get value.
+     *
+     * @param key          key
+     * @param defaultValue value returned if key is not present
+     * @return value
+     */
+    public int get(long key, int defaultValue) {
+        int i = find(key);
+        return i == -1 ? defaultValue : values[i];
+    }
+
+    public void put(long key, int value) {
+        // insert() may reallocate values.
+        int i = insert(key);
+        values[i] = value;
+    }
+
+    /**
+     * Remove value.
+     *
+     * @param key key
+     * @return true if removed
+     */
+    public boolean remove(long key) {
+        int i = find(key);
+        if (i == -1) {
+            return false;
+        }
+        removeSlot(i);
+        return true;
+    }
+
+    /**
+     * Get all values.
+     *
+     * @return values (copy)
+     */
+    public int[] values() {
+        int[] result = new int[size()];
+        int n = 0;
+        for (int i = 0; i <= capacity(); i++) {
+            if (occupied(i)) {
+                result[n++] = values[i];
+            }
+        }
+        return result;
+    }
+}
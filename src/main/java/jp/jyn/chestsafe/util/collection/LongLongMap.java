@@ -0,0 +1,67 @@
+package jp.jyn.chestsafe.util.collection;
+
+/**
+ * <p>Open addressing hash map of primitive long to primitive long.</p>
+ * <p>Lookups do not allocate. Not thread-safe.</p>
+ */
+public class LongLongMap extends LongHashTable {
+    private long[] values;
+
+    public LongLongMap() {
+        this(16);
+    }
+
+    public LongLongMap(int expectedSize) {
+        super(expectedSize);
+        values = new long[capacity() + 1];
+    }
+
+    @Override
+    protected void resizeValues(int length, int[] moved) {
+        long[] old = values;
+        values = new long[length];
+        for (int i = 0; i < moved.length; i++) {
+            if (moved[i] != -1) {
+                values[moved[i]] = old[i];
+            }
+        }
+    }
+
+    @Override
+    protected void moveValue(int from, int to) {
+        values[to] = values[from];
+    }
+
+    /**
+     * Get value.
+     *
+     * @param key          key
+     * @param defaultValue value returned if key is not present
+     * @return value
+     */
+    public long get(long key, long defaultValue) {
+        int i = find(key);
+        return i == -1 ? defaultValue : values[i];
+    }
+
+    public void put(long key, long value) {
+        // insert() may reallocate values.
+        int i = insert(key);
+        values[i] = value;
+    }
+
+    /**
+     * Remove value.
+     *
+     * @param key key
+     * @return true if removed
+     */
+    public boolean remove(long key) {
+        int i = find(key);
+        if (i == -1) {
+            return false;
+        }
+        removeSlot(i);
+        return true;
+    }
+}
@@ -0,0 +1,81 @@
+package jp.jyn.chestsafe.util.collection;
+
+import java.util.Arrays;
+
+/**
+ * <p>Open addressing hash map of primitive long to object.</p>
+ * <p>Lookups do not allocate. Not thread-safe.</p>
+ */
+public class LongObjectMap<V> extends LongHashTable {
+    private Object[] values;
+
+    public LongObjectMap() {
+        this(16);
+    }
+
+    public LongObjectMap(int expectedSize) {
+        super(expectedSize);
+        values = new Object[capacity() + 1];
+    }
+
+    @Override
+    protected void resizeValues(int length, int[] moved) {
+        Object[] old = values;
+        values = new Object[length];
+        for (int i = 0; i < moved.length; i++) {
+            if (moved[i] != -1) {
+                values[moved[i]] = old[i];
+            }
+        }
+    }
+
+    @Override
+    protected void moveValue(int from, int to) {
+        values[to] = values[from];
+    }
+
+    @Override
+    protected void clearValue(int slot) {
+        values[slot] = null;
+    }
+
+    @Override
+    protected void clearValues() {
+        Arrays.fill(values, null);
+    }
+
+    /**
+     * Get value.
+     *
+     * @param key key
+     * @return value, or null if key is not present
+     */
+    @SuppressWarnings("unchecked")
+    public V get(long key) {
+        int i = find(key);
+        return i == -1 ? null : (V) values[i];
+    }
+
+    public void put(long key, V value) {
+        // insert() may reallocate values.
+        int i = insert(key);
+        values[i] = value;
+    }
+
+    /**
+     * Remove value.
+     *
+     * @param key key
+     * @return removed value, or null if key is not present
+     */
+    @SuppressWarnings("unchecked")
+    public V remove(long key) {
+        int i = find(key);
+        if (i == -1) {
+            return null;
+        }
+        V value = (V) values[i];
+        removeSlot(i);
+        return value;
+    }
+}
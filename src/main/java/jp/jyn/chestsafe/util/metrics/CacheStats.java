@@ -0,0 +1,75 @@
+package jp.jyn.chestsafe.util.metrics;
+
+import jp.jyn.jbukkitlib.util.PackagePrivate;
+
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.IntSupplier;
+
+/**
+ * <p>Cache counters.</p>
+ * <p>Negative hit means the cache knows that the value does not exist. (e.g. location is not protected)</p>
+ */
+public class CacheStats {
+    private final LongAdder hit = new LongAdder();
+    private final LongAdder negative = new LongAdder();
+    private final LongAdder miss = new LongAdder();
+    private final LongAdder eviction = new LongAdder();
+    private volatile IntSupplier size = () -> -1;
+
+    @PackagePrivate
+    CacheStats() {
+    }
+
+    public void hit() {
+        hit.increment();
+    }
+
+    public void negative() {
+        negative.increment();
+    }
+
+    public void miss() {
+        miss.increment();
+    }
+
+    public void evict(long count) {
+        eviction.add(count);
+    }
+
+    @PackagePrivate
+    void setSize(IntSupplier size) {
+        this.size = size;
+    }
+
+    public long getHit() {
+        return hit.sum();
+    }
+
+    public long getNegative() {
+        return negative.sum();
+    }
+
+    public long getMiss() {
+        return miss.sum();
+    }
+
+    public long getEviction() {
+        return eviction.sum();
+    }
+
+    /**
+     * @return number of entries, or -1 if unknown.
+     */
+    public int getSize() {
+        return size.getAsInt();
+    }
+
+    /**
+     * @return (hit + negative) / all (0-1)
+     */
+    public double getHitRatio() {
+        long h = getHit() + getNegative();
+        long all = h + getMiss();
+        return all == 0 ? 0 : (double) h / all;
+    }
+}
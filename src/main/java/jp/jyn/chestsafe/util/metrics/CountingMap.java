@@ -0,0 +1,83 @@
+package jp.jyn.chestsafe.util.metrics;
+
+import jp.jyn.jbukkitlib.util.PackagePrivate;
+
+import java.util.AbstractMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+
+/**
+ * Map wrapper that counts {@link #get(Object)} results (except {@link Metrics#peek(Map, Object)}) and evictions of the underlying (size limited) map.
+ */
+@PackagePrivate
+class CountingMap<K, V> extends AbstractMap<K, V> {
+    private final Map<K, V> map;
+    private final CacheStats stats;
+
+    @PackagePrivate
+    CountingMap(Map<K, V> map, CacheStats stats) {
+        this.map = map;
+        this.stats = stats;
+    }
+
+    @Override
+    public V get(Object key) {
+        V value = map.get(key);
+        if (value == null) {
+            stats.miss();
+        } else if (value instanceof Optional && !((Optional<?>) value).isPresent()) {
+            stats.negative();
+        } else {
+            stats.hit();
+        }
+        return value;
+    }
+
+    /**
+     * Get value without counting.
+     *
+     * @param key key
+     * @return value
+     */
+    @PackagePrivate
+    V peek(Object key) {
+        return map.get(key);
+    }
+
+    @Override
+    public V put(K key, V value) {
+        int size = map.size();
+        V old = map.put(key, value);
+        if (old == null && map.size() <= size) {
+            // The eldest entry was evicted to add a new entry.
+            stats.evict(size + 1 - map.size());
+        }
+        return old;
+    }
+
+    @Override
+    public V remove(Object key) {
+        return map.remove(key);
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+        return map.containsKey(key);
+    }
+
+    @Override
+    public int size() {
+        return map.size();
+    }
+
+    @Override
+    public void clear() {
+        map.clear();
+    }
+
+    @Override
+    public Set<Entry<K, V>> entrySet() {
+        return map.entrySet();
+    }
+}
@@ -0,0 +1,137 @@
+package jp.jyn.chestsafe.util.metrics;
+
+import jp.jyn.jbukkitlib.util.PackagePrivate;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * <p>Latency histogram with fixed buckets.</p>
+ * <p>Thread-safe, recording does not allocate.</p>
+ */
+public class Latency {
+    // upper bounds of buckets (nanoseconds), last bucket is +Inf
+    private final static long[] BOUNDS = {
+        TimeUnit.MICROSECONDS.toNanos(100),
+        TimeUnit.MICROSECONDS.toNanos(250),
+        TimeUnit.MICROSECONDS.toNanos(500),
+        TimeUnit.MILLISECONDS.toNanos(1),
+        TimeUnit.MICROSECONDS.toNanos(2500),
+        TimeUnit.MILLISECONDS.toNanos(5),
+        TimeUnit.MILLISECONDS.toNanos(10),
+        TimeUnit.MILLISECONDS.toNanos(25),
+        TimeUnit.MILLISECONDS.toNanos(50),
+        TimeUnit.MILLISECONDS.toNanos(100),
+        TimeUnit.MILLISECONDS.toNanos(250),
+        TimeUnit.MILLISECONDS.toNanos(500),
+        TimeUnit.SECONDS.toNanos(1),
+    };
+    private final static double NANOS_PER_MILLI = TimeUnit.MILLISECONDS.toNanos(1);
+
+    private final LongAdder[] buckets = new LongAdder[BOUNDS.length + 1];
+    private final LongAdder sum = new LongAdder();
+    private final LongAccumulator max = new LongAccumulator(Math::max, 0);
+
+    @PackagePrivate
+    Latency() {
+        for (int i = 0; i < buckets.length; i++) {
+            buckets[i] = new LongAdder();
+        }
+    }
+
+    public void record(long nanos) {
+        int i = 0;
+        while (i < BOUNDS.length && nanos > BOUNDS[i]) {
+            i++;
+        }
+        buckets[i].increment();
+        sum.add(nanos);
+        max.accumulate(nanos);
+    }
+
+    /**
+     * <p>Start measuring, the time is recorded when the timer is closed.</p>
+     * <p>Usage: {@code try (Latency.Timer ignore = latency.start()) { ... }}</p>
+     *
+     * @return timer
+     */
+    public Timer start() {
+        return new Timer();
+    }
+
+    public long count() {
+        long count = 0;
+        for (LongAdder bucket : buckets) {
+            count += bucket.sum();
+        }
+        return count;
+    }
+
+    /**
+     * @return average (milliseconds)
+     */
+    public double average() {
+        long count = count();
+        return count == 0 ? 0 : sum.sum() / NANOS_PER_MILLI / count;
+    }
+
+    /**
+     * @return max (milliseconds)
+     */
+    public double max() {
+        return max.get() / NANOS_PER_MILLI;
+    }
+
+    /**
+     * Get the upper bound of the bucket that contains the percentile.
+     *
+     * @param percentile 0-100
+     * @return percentile (milliseconds), or max if it is over the last bound.
+     */
+    public double percentile(double percentile) {
+        long count = count();
+        long rank = (long) Math.ceil(count * percentile / 100);
+        long c = 0;
+        for (int i = 0; i < BOUNDS.length; i++) {
+            c += buckets[i].sum();
+            if (c >= rank) {
+                return BOUNDS[i] / NANOS_PER_MILLI;
+            }
+        }
+        return max();
+    }
+
+    /**
+     * Write histogram in Prometheus text format.
+     *
+     * @param builder output
+     * @param name    metric name
+     * @param labels  labels (e.g. {@code method="add"})
+     */
+    @PackagePrivate
+    void write(StringBuilder builder, String name, String labels) {
+        long c = 0;
+        for (int i = 0; i < BOUNDS.length; i++) {
+            c += buckets[i].sum();
+            builder.append(name).append("_bucket{").append(labels).append(",le=\"")
+                .append(BOUNDS[i] / 1e9).append("\"} ").append(c).append('\n');
+        }
+        c += buckets[BOUNDS.length].sum();
+        builder.append(name).append("_bucket{").append(labels).append(",le=\"+Inf\"} ").append(c).append('\n');
+        builder.append(name).append("_sum{").append(labels).append("} ").append(sum.sum() / 1e9).append('\n');
+        builder.append(name).append("_count{").append(labels).append("} ").append(c).append('\n');
+    }
+
+    public final class Timer implements AutoCloseable {
+        private final long start = System.nanoTime();
+
+        private Timer() {
+        }
+
+        @Override
+        public void close() {
+            record(System.nanoTime() - start);
+        }
+    }
+}
@@ -0,0 +1,183 @@
+package jp.jyn.chestsafe.util.metrics;
+
+import com.zaxxer.hikari.metrics.IMetricsTracker;
+import com.zaxxer.hikari.metrics.MetricsTrackerFactory;
+import com.zaxxer.hikari.metrics.PoolStats;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.IntSupplier;
+import java.util.function.ToLongFunction;
+
+/**
+ * <p>Cache counters and database latency.</p>
+ * <p>Thread-safe, shown by /chestsafe stats and optionally written in Prometheus text format.</p>
+ */
+public class Metrics {
+    private final Map<String, CacheStats> caches = new ConcurrentHashMap<>();
+    private final Map<String, Latency> latencies = new ConcurrentHashMap<>();
+
+    // connection pool
+    private final Latency poolWait = new Latency();
+    private final LongAdder poolTimeout = new LongAdder();
+    private volatile PoolStats poolStats = null;
+
+    public CacheStats cache(String name) {
+        return caches.computeIfAbsent(name, k -> new CacheStats());
+    }
+
+    public CacheStats cache(String name, IntSupplier size) {
+        CacheStats stats = cache(name);
+        stats.setSize(size);
+        return stats;
+    }
+
+    /**
+     * Count hits and evictions of the cache.
+     *
+     * @param name cache name
+     * @param map  cache
+     * @param <K>  key
+     * @param <V>  value ({@link java.util.Optional#empty()} is counted as negative hit)
+     * @return counting cache
+     */
+    public <K, V> Map<K, V> cache(String name, Map<K, V> map) {
+        return new CountingMap<>(map, cache(name, map::size));
+    }
+
+    /**
+     * Get value without counting, for lookups that are not cache accesses. (e.g. bulk loading)
+     *
+     * @param cache cache returned by {@link #cache(String, Map)}
+     * @param key   key
+     * @param <K>   key
+     * @param <V>   value
+     * @return value
+     */
+    public static <K, V> V peek(Map<K, V> cache, K key) {
+        return cache instanceof CountingMap ? ((CountingMap<K, V>) cache).peek(key) : cache.get(key);
+    }
+
+    public Latency latency(String name) {
+        return latencies.computeIfAbsent(name, k -> new Latency());
+    }
+
+    /**
+     * Measure the latency until the timer is closed.
+     *
+     * @param name name (e.g. id.locationToId)
+     * @return timer
+     */
+    public Latency.Timer time(String name) {
+        return latency(name).start();
+    }
+
+    public Map<String, CacheStats> getCaches() {
+        return new TreeMap<>(caches);
+    }
+
+    public Map<String, Latency> getLatencies() {
+        return new TreeMap<>(latencies);
+    }
+
+    public Latency getPoolWait() {
+        return poolWait;
+    }
+
+    public long getPoolTimeout() {
+        return poolTimeout.sum();
+    }
+
+    /**
+     * @return pool statistics, or null if the pool is not started.
+     */
+    public PoolStats getPoolStats() {
+        return poolStats;
+    }
+
+    /**
+     * Get a factory to record connection pool wait time. (for {@link com.zaxxer.hikari.HikariConfig#setMetricsTrackerFactory(MetricsTrackerFactory)})
+     *
+     * @return factory
+     */
+    public MetricsTrackerFactory hikari() {
+        return (poolName, stats) -> {
+            poolStats = stats;
+            return new IMetricsTracker() {
+                @Override
+                public void recordConnectionAcquiredNanos(long elapsedAcquiredNanos) {
+                    poolWait.record(elapsedAcquiredNanos);
+                }
+
+                @Override
+                public void recordConnectionTimeout() {
+                    poolTimeout.increment();
+                }
+            };
+        };
+    }
+
+    /**
+     * Get all metrics in Prometheus text format.
+     *
+     * @return text
+     */
+    public String toPrometheus() {
+        StringBuilder builder = new StringBuilder();
+        Map<String, CacheStats> caches = getCaches();
+        writeCache(builder, caches, "hits", CacheStats::getHit);
+        writeCache(builder, caches, "negative_hits", CacheStats::getNegative);
+        writeCache(builder, caches, "misses", CacheStats::getMiss);
+        writeCache(builder, caches, "evictions", CacheStats::getEviction);
+        builder.append("# TYPE chestsafe_cache_size gauge\n");
+        caches.forEach((name, stats) -> {
+            if (stats.getSize() >= 0) {
+                builder.append("chestsafe_cache_size{cache=\"").append(name).append("\"} ").append(stats.getSize()).append('\n');
+            }
+        });
+
+        builder.append("# TYPE chestsafe_db_seconds histogram\n");
+        getLatencies().forEach((name, latency) -> latency.write(builder, "chestsafe_db_seconds", "method=\"" + name + "\""));
+
+        builder.append("# TYPE chestsafe_pool_wait_seconds histogram\n");
+        poolWait.write(builder, "chestsafe_pool_wait_seconds", "pool=\"chestsafe\"");
+        builder.append("# TYPE chestsafe_pool_timeouts_total counter\n");
+        builder.append("chestsafe_pool_timeouts_total ").append(poolTimeout.sum()).append('\n');
+        PoolStats stats = poolStats;
+        if (stats != null) {
+            builder.append("# TYPE chestsafe_pool_connections gauge\n");
+            builder.append("chestsafe_pool_connections{state=\"active\"} ").append(stats.getActiveConnections()).append('\n');
+            builder.append("chestsafe_pool_connections{state=\"idle\"} ").append(stats.getIdleConnections()).append('\n');
+            builder.append("chestsafe_pool_connections{state=\"pending\"} ").append(stats.getPendingThreads()).append('\n');
+        }
+        return builder.toString();
+    }
+
+    private static void writeCache(StringBuilder builder, Map<String, CacheStats> caches, String type, ToLongFunction<CacheStats> value) {
+        builder.append("# TYPE chestsafe_cache_").append(type).append("_total counter\n");
+        caches.forEach((name, stats) -> builder.append("chestsafe_cache_").append(type).append("_total{cache=\"")
+            .append(name).append("\"} ").append(value.applyAsLong(stats)).append('\n'));
+    }
+
+    /**
+     * Write metrics in Prometheus text format. (atomically replaced for the textfile collector)
+     *
+     * @param file output
+     */
+    public void dump(File file) {
+        File tmp = new File(file.getPath() + ".tmp");
+        try {
+            Files.write(tmp.toPath(), toPrometheus().getBytes(StandardCharsets.UTF_8));
+            Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+}